@@ -3,6 +3,12 @@ create database if not exists cs4370_mb_platform;
 -- Use the created database.
 use cs4370_mb_platform;
 
+-- Creates the current schema. Databases created by an older version of
+-- this script are upgraded by the migrations in src/main/resources/migrations.sql,
+-- applied when the application starts (see SchemaMigrator). Every change
+-- they make is also part of the tables below, so a new database starts out
+-- current and its migrations are recorded as already in place.
+
 -- Create the user table.
 create table if not exists user (
     userId int auto_increment,
@@ -10,8 +16,15 @@ create table if not exists user (
     password varchar(255) not null,
     firstName varchar(255) not null,
     lastName varchar(255) not null,
+    -- Time of the user's latest post or comment, '1970-01-01' if none.
+    -- Maintained by the write paths. Orders and pages the people list.
+    lastActiveAt datetime not null default '1970-01-01 00:00:00',
     primary key (userId),
     unique (username),
+    index user_last_active (lastActiveAt, userId),
+    -- Serve the name prefix search of the people page.
+    index user_first_name (firstName),
+    index user_last_name (lastName),
     constraint userName_min_length check (char_length(trim(userName)) >= 2),
     constraint firstName_min_length check (char_length(trim(firstName)) >= 2),
     constraint lastName_min_length check (char_length(trim(lastName)) >= 2)
@@ -23,8 +36,11 @@ create table if not exists post (
     userId INT NOT NULL,
     postDate VARCHAR(255) NOT NULL,             
     postText TEXT NOT NULL,
+    createdAt DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
     PRIMARY KEY (postId),
-    FOREIGN KEY (userId) REFERENCES user(userId)
+    FOREIGN KEY (userId) REFERENCES user(userId),
+    -- Serves per author feeds ordered by time with keyset pagination.
+    INDEX post_user_created (userId, createdAt, postId)
 );
 
 -- Create the comment table
@@ -35,6 +51,8 @@ create table if not exists comment (
     commentDate DATETIME DEFAULT CURRENT_TIMESTAMP,
     commentText TEXT NOT NULL,
     PRIMARY KEY (commentId),
+    -- Reads the comments of a post one page at a time, see PostService.
+    INDEX comment_post_date (postId, commentDate, commentId),
     FOREIGN KEY (postId) REFERENCES post(postId) ON DELETE CASCADE,
     FOREIGN KEY (userId) REFERENCES user(userId) ON DELETE CASCADE
 );
@@ -44,6 +62,8 @@ create table if not exists heart (
     postId INT NOT NULL,
     userId INT NOT NULL,
     PRIMARY KEY (postId, userId),
+    -- Loads all hearts of one user, see ViewerStateService.
+    INDEX heart_user (userId, postId),
     FOREIGN KEY (postId) REFERENCES post(postId) ON DELETE CASCADE,
     FOREIGN KEY (userId) REFERENCES user(userId) ON DELETE CASCADE
 );
@@ -53,6 +73,8 @@ create table if not exists bookmark (
     postId INT NOT NULL,
     userId INT NOT NULL,
     PRIMARY KEY (postId, userId),
+    -- Loads all bookmarks of one user, see ViewerStateService and the bookmarks page.
+    INDEX bookmark_user (userId, postId),
     FOREIGN KEY (postId) REFERENCES post(postId) ON DELETE CASCADE,
     FOREIGN KEY (userId) REFERENCES user(userId) ON DELETE CASCADE
 );
@@ -62,6 +84,8 @@ create table if not exists hashtag (
     hashTag VARCHAR(100) NOT NULL,
     postId INT NOT NULL,
     PRIMARY KEY (hashTag, postId),
+    -- Finds the tags of a post, e.g. when the post is deleted.
+    INDEX hashtag_post (postId, hashTag),
     FOREIGN KEY (postId) REFERENCES post(postId) ON DELETE CASCADE
 );
 
@@ -70,7 +94,76 @@ create table if not exists follow (
     followerUserId INT NOT NULL,
     followeeUserId INT NOT NULL,
     PRIMARY KEY (followerUserId, followeeUserId),
+    -- Finds the followers of a user, e.g. to fan a new post out to them.
+    INDEX follow_followee (followeeUserId, followerUserId),
     FOREIGN KEY (followerUserId) REFERENCES user(userId) ON DELETE CASCADE,
     FOREIGN KEY (followeeUserId) REFERENCES user(userId) ON DELETE CASCADE
 );
 
+
+-- Create the post_stats table.
+-- Holds materialized heart and comment counts per post so feed queries
+-- do not have to count the heart and comment tables for every row.
+-- Rows are maintained transactionally by the write paths and rebuilt by
+-- the reconciliation job in PostStatsService.
+create table if not exists post_stats (
+    postId INT NOT NULL,
+    heartsCount INT NOT NULL DEFAULT 0,
+    commentsCount INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (postId),
+    FOREIGN KEY (postId) REFERENCES post(postId) ON DELETE CASCADE
+);
+
+-- Create the timeline table.
+-- Precomputed home feed entries. When a post is created its id is pushed
+-- to every follower of the author (fan-out on write), so the home page is a
+-- single range read on the primary key. Each timeline is trimmed to a fixed
+-- number of entries by TimelineService. Authors with very many followers are
+-- not fanned out; their posts are merged in when the feed is read.
+create table if not exists timeline (
+    userId INT NOT NULL,
+    postId INT NOT NULL,
+    authorUserId INT NOT NULL,
+    createdAt DATETIME NOT NULL,
+    PRIMARY KEY (userId, createdAt, postId),
+    INDEX timeline_user_author (userId, authorUserId),
+    FOREIGN KEY (userId) REFERENCES user(userId) ON DELETE CASCADE,
+    FOREIGN KEY (postId) REFERENCES post(postId) ON DELETE CASCADE,
+    FOREIGN KEY (authorUserId) REFERENCES user(userId) ON DELETE CASCADE
+);
+
+-- Create the timeline_read_author table.
+-- The authors with more followers than the fan-out limit, whose posts are
+-- read on demand instead of fanned out, and since when. When an author
+-- drops back under the limit TimelineService copies the posts made since
+-- then to the followers' timelines.
+create table if not exists timeline_read_author (
+    userId INT NOT NULL,
+    since DATETIME NOT NULL,
+    PRIMARY KEY (userId),
+    FOREIGN KEY (userId) REFERENCES user(userId) ON DELETE CASCADE
+);
+
+-- Create the follow_suggestion table.
+-- The best "who to follow" suggestions of every user, best first, as
+-- computed offline by FollowSuggestionService. The people page reads the
+-- suggestions of a user with one range read on the primary key.
+create table if not exists follow_suggestion (
+    userId INT NOT NULL,
+    position SMALLINT NOT NULL,
+    suggestedUserId INT NOT NULL,
+    PRIMARY KEY (userId, position),
+    FOREIGN KEY (userId) REFERENCES user(userId) ON DELETE CASCADE,
+    FOREIGN KEY (suggestedUserId) REFERENCES user(userId) ON DELETE CASCADE
+);
+
+-- Create the schema_migration table.
+-- One row per migration of migrations.sql that was applied, or found
+-- already in place. appliedAt is null while a migration runs, or after it
+-- stopped part way. Also created by SchemaMigrator if missing.
+create table if not exists schema_migration (
+    version INT NOT NULL,
+    description VARCHAR(255) NOT NULL,
+    appliedAt DATETIME NULL,
+    PRIMARY KEY (version)
+);
@@ -0,0 +1,118 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+import uga.menik.cs4370.components.AuthInterceptor;
+
+/**
+ * Per request cost of the authentication check done by AuthInterceptor.
+ *
+ * legacy* benchmarks go through the former session scoped UserService
+ * proxy. The others use the singleton UserService, which only reads the
+ * user id attribute of the existing session.
+ * *ExistingSession measures an ordinary request of a logged in user.
+ * *NewSession measures the first request of a new session, which used to
+ * construct a UserService and a BCryptPasswordEncoder.
+ *
+ * Run with
+ *   mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="AuthCheckBenchmark"
+ * The gc profiler reports the bytes allocated per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AuthCheckBenchmark {
+
+    private AnnotationConfigWebApplicationContext legacyContext;
+    private LegacySessionUserService legacyProxy;
+    private AuthInterceptor authInterceptor;
+
+    private MockHttpServletRequest legacyRequest;
+    private MockHttpServletRequest request;
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        legacyContext = AuthFixtures.legacyContext();
+        legacyProxy = legacyContext.getBean(LegacySessionUserService.class);
+        authInterceptor = new AuthInterceptor(AuthFixtures.userService());
+
+        legacyRequest = AuthFixtures.requestFor(AuthFixtures.legacyLoggedInSession(legacyProxy));
+        request = AuthFixtures.requestFor(AuthFixtures.loggedInSession());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        legacyContext.close();
+    }
+
+    @Benchmark
+    public boolean legacyExistingSession() {
+        // DispatcherServlet binds every request before the interceptor runs.
+        AuthFixtures.bind(legacyRequest);
+        try {
+            return legacyProxy.isAuthenticated();
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Benchmark
+    public boolean statelessExistingSession() throws Exception {
+        AuthFixtures.bind(request);
+        try {
+            return authInterceptor.preHandle(request, response, null);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Benchmark
+    public boolean legacyNewSession() {
+        MockHttpServletRequest newRequest = AuthFixtures.requestFor(new MockHttpSession());
+        AuthFixtures.bind(newRequest);
+        try {
+            return legacyProxy.isAuthenticated();
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Benchmark
+    public boolean statelessNewSession() throws Exception {
+        MockHttpServletRequest newRequest = AuthFixtures.requestFor(new MockHttpSession());
+        AuthFixtures.bind(newRequest);
+        try {
+            return authInterceptor.preHandle(newRequest, new MockHttpServletResponse(), null);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+}
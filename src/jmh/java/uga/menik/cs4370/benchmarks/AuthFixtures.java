@@ -0,0 +1,91 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uga.menik.cs4370.models.User;
+import uga.menik.cs4370.services.PostService;
+import uga.menik.cs4370.services.UserCache;
+import uga.menik.cs4370.services.UserService;
+
+/**
+ * Builds the old and the new authentication setup outside of a running
+ * application.
+ */
+final class AuthFixtures {
+
+    static final int USER_ID = 1;
+
+    private AuthFixtures() {
+    }
+
+    /**
+     * A web application context holding only the old session scoped
+     * service, so lookups go through a real scoped proxy.
+     */
+    static AnnotationConfigWebApplicationContext legacyContext() {
+        AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext();
+        context.setServletContext(new MockServletContext());
+        context.register(LegacySessionUserService.class);
+        context.refresh();
+        return context;
+    }
+
+    /**
+     * The current singleton UserService. The authentication checks never
+     * touch the database or hash passwords, so neither is set up.
+     */
+    static UserService userService() {
+        UserCache userCache = new UserCache(null, 16);
+        return new UserService(null, new PostService(null, userCache, null, null, null, null,
+                new SimpleMeterRegistry(), 0, 0), userCache, null);
+    }
+
+    /**
+     * Returns a session logged in through the old session scoped service.
+     */
+    static MockHttpSession legacyLoggedInSession(LegacySessionUserService proxy) {
+        MockHttpSession session = new MockHttpSession();
+        MockHttpServletRequest request = requestFor(session);
+        bind(request);
+        try {
+            proxy.logIn(new User(String.valueOf(USER_ID), "Ada", "Lovelace"));
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+        return session;
+    }
+
+    /**
+     * Returns a session logged in the way UserService does it now.
+     */
+    static MockHttpSession loggedInSession() {
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute(UserService.SESSION_USER_ID, USER_ID);
+        return session;
+    }
+
+    static MockHttpServletRequest requestFor(MockHttpSession session) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.setSession(session);
+        return request;
+    }
+
+    /**
+     * Binds the request to the current thread like DispatcherServlet does.
+     */
+    static void bind(MockHttpServletRequest request) {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import uga.menik.cs4370.config.SchemaMigrator;
+
+/**
+ * The database the query path benchmarks run against.
+ *
+ * By default this is a fresh in memory H2 database in MySQL mode, so the
+ * benchmarks run anywhere without setup. To measure against MySQL itself
+ * pass a scratch database, whose tables are dropped and recreated:
+ *   -Dbenchmark.jdbcUrl=jdbc:mysql://localhost:33306/mb_bench?rewriteBatchedStatements=true&useServerPrepStmts=true&cachePrepStmts=true
+ *   -Dbenchmark.jdbcUser=root -Dbenchmark.jdbcPassword=...
+ * The schema always comes from database_setup.sql, followed by the
+ * migrations of migrations.sql.
+ */
+final class BenchmarkDatabase {
+
+    // Tables of database_setup.sql, dependents first.
+    private static final String[] TABLES = {
+        "schema_migration", "follow_suggestion", "timeline_read_author", "timeline", "post_stats", "follow", "hashtag", "bookmark", "heart", "comment", "post", "user"
+    };
+
+    private BenchmarkDatabase() {
+    }
+
+    static HikariDataSource create(String name) throws IOException, SQLException {
+        String jdbcUrl = System.getProperty("benchmark.jdbcUrl",
+                "jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+                        + "NON_KEYWORDS=USER,VALUE;DB_CLOSE_DELAY=-1");
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(System.getProperty("benchmark.jdbcUser", "root"));
+        config.setPassword(System.getProperty("benchmark.jdbcPassword", ""));
+        config.setMaximumPoolSize(16);
+        HikariDataSource dataSource = new HikariDataSource(config);
+
+        try (Connection conn = dataSource.getConnection();
+                Statement stmt = conn.createStatement()) {
+            for (String table : TABLES) {
+                stmt.execute("drop table if exists `" + table + "`");
+            }
+            for (String sql : schemaStatements()) {
+                stmt.execute(sql);
+            }
+        }
+        // As at application startup.
+        new SchemaMigrator(dataSource, 60, 1000).afterPropertiesSet();
+        return dataSource;
+    }
+
+    /**
+     * The create table statements of database_setup.sql.
+     */
+    private static List<String> schemaStatements() throws IOException {
+        String script = Files.readString(Path.of("database_setup.sql"), StandardCharsets.UTF_8);
+        StringBuilder withoutComments = new StringBuilder();
+        for (String line : script.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                withoutComments.append(line).append('\n');
+            }
+        }
+        List<String> statements = new ArrayList<>();
+        for (String statement : withoutComments.toString().split(";")) {
+            String trimmed = statement.trim();
+            if (trimmed.toLowerCase().startsWith("create table")) {
+                statements.add(trimmed);
+            }
+        }
+        return statements;
+    }
+
+}
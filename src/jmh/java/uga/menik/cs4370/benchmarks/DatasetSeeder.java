@@ -0,0 +1,238 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+/**
+ * Fills an empty schema with a synthetic, reproducible dataset.
+ * User ids are 1..users and post ids 1..users * postsPerUser, in
+ * creation order, like the auto increment columns would assign them.
+ * Hashtags are drawn from a vocabulary of TAGS tags with a skewed
+ * distribution, so a few tags are very common and most are rare.
+ */
+final class DatasetSeeder {
+
+    static final int TAGS = 200;
+
+    private static final int BATCH_SIZE = 1000;
+    private static final DateTimeFormatter POST_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("MMM dd, yyyy, hh:mm a");
+    // Placeholder password hash. The benchmarks never log in.
+    private static final String PASSWORD_HASH =
+            "$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z1eoS0Ftz5qlQKpj8ZbDfbSu";
+
+    final int users;
+    final int followsPerUser;
+    final int postsPerUser;
+    final int tagsPerPost;
+    final int heartsPerPost;
+    final int commentsPerPost;
+    final int bookmarksPerUser;
+
+    DatasetSeeder(int users, int followsPerUser, int postsPerUser, int tagsPerPost,
+            int heartsPerPost, int commentsPerPost, int bookmarksPerUser) {
+        this.users = users;
+        this.followsPerUser = Math.min(followsPerUser, users - 1);
+        this.postsPerUser = postsPerUser;
+        this.tagsPerPost = Math.min(tagsPerPost, TAGS);
+        this.heartsPerPost = Math.min(heartsPerPost, users);
+        this.commentsPerPost = commentsPerPost;
+        this.bookmarksPerUser = bookmarksPerUser;
+    }
+
+    int posts() {
+        return users * postsPerUser;
+    }
+
+    /**
+     * Returns the name of a tag, picked with a skewed distribution.
+     */
+    static String tag(Random random) {
+        double skewed = Math.pow(random.nextDouble(), 3);
+        return "tag" + (int) (skewed * TAGS);
+    }
+
+    void seed(DataSource dataSource) throws SQLException {
+        Random random = new Random(42);
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            seedUsers(conn);
+            seedFollows(conn, random);
+            seedPosts(conn, random);
+            seedHearts(conn, random);
+            seedComments(conn, random);
+            seedBookmarks(conn, random);
+            seedLastActive(conn);
+            conn.commit();
+        }
+    }
+
+    private void seedUsers(Connection conn) throws SQLException {
+        String sql = "insert into user (userId, username, password, firstName, lastName) values (?, ?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int userId = 1; userId <= users; userId++) {
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, "user" + userId);
+                pstmt.setString(3, PASSWORD_HASH);
+                pstmt.setString(4, "First" + userId);
+                pstmt.setString(5, "Last" + userId);
+                addBatch(pstmt, userId);
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private void seedFollows(Connection conn, Random random) throws SQLException {
+        String sql = "insert into follow (followerUserId, followeeUserId) values (?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int rows = 0;
+            for (int followerUserId = 1; followerUserId <= users; followerUserId++) {
+                for (int followeeUserId : distinctUserIds(random, followsPerUser, followerUserId)) {
+                    pstmt.setInt(1, followerUserId);
+                    pstmt.setInt(2, followeeUserId);
+                    addBatch(pstmt, ++rows);
+                }
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private void seedPosts(Connection conn, Random random) throws SQLException {
+        String postSql = "insert into post (postId, userId, postDate, postText, createdAt) values (?, ?, ?, ?, ?)";
+        String hashtagSql = "insert into hashtag (hashTag, postId) values (?, ?)";
+        LocalDateTime start = LocalDateTime.now().withNano(0).minusMinutes(posts());
+        List<Set<String>> tagsByPost = new ArrayList<>(posts());
+        try (PreparedStatement pstmt = conn.prepareStatement(postSql)) {
+            for (int postId = 1; postId <= posts(); postId++) {
+                // Posts of all users interleave over time, one per minute.
+                int userId = (postId - 1) % users + 1;
+                LocalDateTime createdAt = start.plusMinutes(postId);
+                Set<String> tags = new HashSet<>();
+                while (tags.size() < tagsPerPost) {
+                    tags.add(tag(random));
+                }
+                tagsByPost.add(tags);
+                StringBuilder text = new StringBuilder("Post number " + postId + " of user " + userId);
+                for (String tag : tags) {
+                    text.append(" #").append(tag);
+                }
+                pstmt.setInt(1, postId);
+                pstmt.setInt(2, userId);
+                pstmt.setString(3, createdAt.format(POST_DATE_FORMAT));
+                pstmt.setString(4, text.toString());
+                pstmt.setObject(5, createdAt);
+                addBatch(pstmt, postId);
+            }
+            pstmt.executeBatch();
+        }
+        // Hashtags after all posts, so no batch refers to a post not yet inserted.
+        try (PreparedStatement pstmt = conn.prepareStatement(hashtagSql)) {
+            int rows = 0;
+            for (int postId = 1; postId <= posts(); postId++) {
+                for (String tag : tagsByPost.get(postId - 1)) {
+                    pstmt.setString(1, tag);
+                    pstmt.setInt(2, postId);
+                    addBatch(pstmt, ++rows);
+                }
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private void seedHearts(Connection conn, Random random) throws SQLException {
+        String sql = "insert into heart (postId, userId) values (?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int rows = 0;
+            for (int postId = 1; postId <= posts(); postId++) {
+                for (int userId : distinctUserIds(random, heartsPerPost, 0)) {
+                    pstmt.setInt(1, postId);
+                    pstmt.setInt(2, userId);
+                    addBatch(pstmt, ++rows);
+                }
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private void seedComments(Connection conn, Random random) throws SQLException {
+        String sql = "insert into comment (postId, userId, commentText) values (?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int rows = 0;
+            for (int postId = 1; postId <= posts(); postId++) {
+                for (int i = 0; i < commentsPerPost; i++) {
+                    pstmt.setInt(1, postId);
+                    pstmt.setInt(2, random.nextInt(users) + 1);
+                    pstmt.setString(3, "Comment " + i + " on post " + postId);
+                    addBatch(pstmt, ++rows);
+                }
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private void seedBookmarks(Connection conn, Random random) throws SQLException {
+        String sql = "insert into bookmark (postId, userId) values (?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int rows = 0;
+            for (int userId = 1; userId <= users; userId++) {
+                Set<Integer> postIds = new HashSet<>();
+                while (postIds.size() < Math.min(bookmarksPerUser, posts())) {
+                    postIds.add(random.nextInt(posts()) + 1);
+                }
+                for (int postId : postIds) {
+                    pstmt.setInt(1, postId);
+                    pstmt.setInt(2, userId);
+                    addBatch(pstmt, ++rows);
+                }
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    // What the post and comment write paths maintain in user.lastActiveAt.
+    private void seedLastActive(Connection conn) throws SQLException {
+        String sql = """
+                update user u set lastActiveAt = greatest(
+                    coalesce((select max(p.createdAt) from post p where p.userId = u.userId), '1970-01-01 00:00:00'),
+                    coalesce((select max(c.commentDate) from comment c where c.userId = u.userId), '1970-01-01 00:00:00'))
+                """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.executeUpdate();
+        }
+    }
+
+    // Returns count distinct user ids, never excludedUserId.
+    private Set<Integer> distinctUserIds(Random random, int count, int excludedUserId) {
+        Set<Integer> userIds = new HashSet<>();
+        while (userIds.size() < count) {
+            int userId = random.nextInt(users) + 1;
+            if (userId != excludedUserId) {
+                userIds.add(userId);
+            }
+        }
+        return userIds;
+    }
+
+    private static void addBatch(PreparedStatement pstmt, int rows) throws SQLException {
+        pstmt.addBatch();
+        if (rows % BATCH_SIZE == 0) {
+            pstmt.executeBatch();
+        }
+    }
+
+}
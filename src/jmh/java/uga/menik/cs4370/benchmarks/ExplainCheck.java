@@ -0,0 +1,221 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.mysql.cj.jdbc.JdbcConnection;
+import com.zaxxer.hikari.HikariDataSource;
+
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryRegistry.NamedQuery;
+
+/**
+ * Runs EXPLAIN on every query of queries.sql against a seeded database,
+ * with the schema of database_setup.sql and migrations.sql, and exits
+ * with status 1 if a query reads a whole table or, on MySQL, sorts or
+ * groups through a temporary table. Every query that does so on purpose
+ * is listed in SCANS_ALLOWED with the reason. An entry that names no
+ * query of queries.sql fails the check too.
+ *
+ * Parameters are bound with plausible values guessed from the SQL around
+ * each ?, e.g. a time for createdAt < ?. List queries are explained with
+ * a list of 4.
+ *
+ * Runs against H2 by default. To check MySQL's plans pass a scratch
+ * database as described in BenchmarkDatabase.
+ *   MySQL  access type ALL or index (a full table or full index scan),
+ *          Extra with Using filesort or Using temporary. Rows of derived
+ *          tables and unions are skipped, their inner queries have rows
+ *          of their own.
+ *   H2     a tableScan, or an index read without a condition, which H2
+ *          prints as the bare index name. H2 does not say whether a sort
+ *          is bounded by an index range, so sorts are only checked on
+ *          MySQL.
+ *
+ * Runs in the verify phase of the benchmark profile, so
+ *   mvn -Pbenchmark verify
+ * fails when a query starts reading whole tables. Run it alone with
+ *   mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=uga.menik.cs4370.benchmarks.ExplainCheck
+ */
+public class ExplainCheck {
+
+    // Query name -> why it may read a whole table.
+    private static final Map<String, String> SCANS_ALLOWED = Map.of(
+            "hashtag-index-load", "startup, loads every hashtag",
+            "follow-graph-load", "startup, loads every follow",
+            "follow-suggestions-activity", "suggestion rebuild, reads every user",
+            "timeline-is-empty", "startup, stops at the first row",
+            "timeline-rebuild", "startup, only on an empty timeline table",
+            "timeline-sizes", "startup, counts every timeline",
+            "timeline-read-authors", "maintenance job, one row per author over the fan-out limit",
+            "post-stats-max-post-id", "reconciliation job, one read of the primary key per run");
+
+    // The access comment of a table without a condition: /* schema.index */
+    // or /* schema.table.tableScan */. With a condition it ends in ": ...".
+    private static final Pattern H2_FULL_READ = Pattern.compile("/\\*\\s*([\\w\"]+)\\.([\\w\"]+?)(\\.tableScan)?\\s*\\*/");
+
+    private static final Pattern LIMIT = Pattern.compile("(?is).*\\b(LIMIT|OFFSET)\\s*$");
+    private static final Pattern LIKE = Pattern.compile("(?is).*\\bLIKE\\s*$");
+    private static final Pattern COMPARED = Pattern.compile("(?is).*?(\\w+)\\s*(=|<|>|<=|>=|!=)\\s*$");
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    public static void main(String[] args) throws Exception {
+        List<String> failures = new ArrayList<>();
+        TreeSet<String> unknown = new TreeSet<>(SCANS_ALLOWED.keySet());
+        try (HikariDataSource dataSource = BenchmarkDatabase.create("explain")) {
+            new DatasetSeeder(2000, 20, 10, 2, 5, 3, 5).seed(dataSource);
+            try (Connection conn = dataSource.getConnection()) {
+                boolean isMySql = conn.isWrapperFor(JdbcConnection.class);
+                analyze(conn, isMySql);
+                Map<String, String> indexTables = isMySql ? Map.of() : h2IndexTables(conn);
+                for (NamedQuery query : QueryRegistry.getQueries()) {
+                    unknown.remove(query.name());
+                    String sql = query.isList() ? query.expand(4) : query.sql();
+                    TreeSet<String> found = isMySql ? explainMySql(conn, sql) : explainH2(conn, sql, indexTables);
+                    String allowed = SCANS_ALLOWED.get(query.name());
+                    String verdict;
+                    if (found.isEmpty()) {
+                        verdict = allowed == null ? "ok" : "ok, allowed to read whole tables: " + allowed;
+                    } else if (allowed != null) {
+                        verdict = "reads " + found + ", allowed: " + allowed;
+                    } else {
+                        verdict = "READS " + found;
+                        failures.add(query.name());
+                    }
+                    System.out.printf("%-30s %s%n", query.name(), verdict);
+                }
+            }
+        }
+        if (!unknown.isEmpty()) {
+            System.out.println("SCANS_ALLOWED names queries that are not in " + QueryRegistry.RESOURCE + ": "
+                    + unknown);
+            System.exit(1);
+        }
+        if (!failures.isEmpty()) {
+            System.out.println("Queries reading whole tables: " + failures);
+            System.exit(1);
+        }
+        System.out.println("Only the queries of SCANS_ALLOWED read whole tables.");
+    }
+
+    // Fresh statistics, so the plans are the ones a loaded database gets.
+    private static void analyze(Connection conn, boolean isMySql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            if (isMySql) {
+                stmt.execute("ANALYZE TABLE user, post, comment, heart, bookmark, hashtag, follow, "
+                        + "post_stats, timeline, timeline_read_author, follow_suggestion");
+            } else {
+                stmt.execute("ANALYZE");
+            }
+        }
+    }
+
+    // Returns "table scan", "table index scan", "table filesort" and
+    // "table temporary" for the tables read that way.
+    private static TreeSet<String> explainMySql(Connection conn, String sql) throws SQLException {
+        TreeSet<String> found = new TreeSet<>();
+        try (PreparedStatement pstmt = explain(conn, sql);
+                ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                String table = rs.getString("table");
+                // Derived tables and unions hold the rows of their inner
+                // queries, which are checked on their own rows.
+                if (table == null || table.startsWith("<")) {
+                    continue;
+                }
+                String type = rs.getString("type");
+                String extra = rs.getString("Extra");
+                if ("ALL".equals(type)) {
+                    found.add(table + " scan");
+                } else if ("index".equals(type)) {
+                    found.add(table + " index scan");
+                }
+                if (extra != null && extra.contains("Using filesort")) {
+                    found.add(table + " filesort");
+                }
+                if (extra != null && extra.contains("Using temporary")) {
+                    found.add(table + " temporary");
+                }
+            }
+        }
+        return found;
+    }
+
+    // Returns "table scan" for the tables read without a condition.
+    private static TreeSet<String> explainH2(Connection conn, String sql, Map<String, String> indexTables)
+            throws SQLException {
+        TreeSet<String> found = new TreeSet<>();
+        try (PreparedStatement pstmt = explain(conn, sql);
+                ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                Matcher matcher = H2_FULL_READ.matcher(rs.getString(1));
+                while (matcher.find()) {
+                    String name = matcher.group(2).replace("\"", "");
+                    String table = matcher.group(3) != null ? name : indexTables.get(name.toLowerCase());
+                    found.add((table == null ? name : table) + " scan");
+                }
+            }
+        }
+        return found;
+    }
+
+    // Index name -> table name, both lowercase.
+    private static Map<String, String> h2IndexTables(Connection conn) throws SQLException {
+        Map<String, String> indexTables = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT INDEX_NAME, TABLE_NAME FROM INFORMATION_SCHEMA.INDEXES")) {
+            while (rs.next()) {
+                indexTables.put(rs.getString(1).toLowerCase(), rs.getString(2).toLowerCase());
+            }
+        }
+        return indexTables;
+    }
+
+    private static PreparedStatement explain(Connection conn, String sql) throws SQLException {
+        PreparedStatement pstmt = conn.prepareStatement("EXPLAIN " + sql);
+        int index = 1;
+        for (int at = sql.indexOf('?'); at >= 0; at = sql.indexOf('?', at + 1)) {
+            pstmt.setObject(index++, guessValue(sql.substring(0, at)));
+        }
+        return pstmt;
+    }
+
+    // A value for the ? that follows before.
+    private static Object guessValue(String before) {
+        if (LIMIT.matcher(before).matches()) {
+            return 20;
+        }
+        if (LIKE.matcher(before).matches()) {
+            return "a%";
+        }
+        Matcher matcher = COMPARED.matcher(before);
+        if (matcher.matches()) {
+            String column = matcher.group(1).toLowerCase();
+            if (column.endsWith("at") || column.equals("commentdate")) {
+                return TIME;
+            }
+            if (column.endsWith("name") || column.equals("password") || column.equals("hashtag")) {
+                return "a";
+            }
+        }
+        return 1;
+    }
+
+}
@@ -0,0 +1,129 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import uga.menik.cs4370.services.FollowGraphService;
+
+/**
+ * Heap retained per follow edge by FollowGraphService, which keeps both
+ * directions of every edge as sorted int arrays, compared with the same
+ * graph in boxed HashMap<Integer, Set<Integer>> adjacency sets.
+ * Every user follows FOLLOWS_PER_USER random other users. The boxed
+ * graph is measured at a tenth of the edges to fit the default heap.
+ *
+ * Run with
+ *   mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=uga.menik.cs4370.benchmarks.FollowGraphFootprint
+ */
+public class FollowGraphFootprint {
+
+    private static final int FOLLOWS_PER_USER = 50;
+
+    private static final int USERS = 200000;
+
+    private static final int BOXED_USERS = USERS / 10;
+
+    // Each measurement is repeated and the median is reported.
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        long primitive = measure(() -> primitiveGraph(USERS));
+        long boxed = measure(() -> boxedGraph(BOXED_USERS));
+
+        long edges = (long) USERS * FOLLOWS_PER_USER;
+        long boxedEdges = (long) BOXED_USERS * FOLLOWS_PER_USER;
+        System.out.printf("FollowGraphService, %d edges: %d MB, %.1f bytes per edge%n",
+                edges, primitive >> 20, (double) primitive / edges);
+        System.out.printf("Boxed adjacency sets, %d edges: %d MB, %.1f bytes per edge%n",
+                boxedEdges, boxed >> 20, (double) boxed / boxedEdges);
+    }
+
+    private static FollowGraphService primitiveGraph(int users) {
+        int edges = users * FOLLOWS_PER_USER;
+        int[] followerIds = new int[edges];
+        int[] followeeIds = new int[edges];
+        int edge = 0;
+        Random random = new Random(42);
+        for (int userId = 1; userId <= users; userId++) {
+            for (int followeeId : followees(random, userId, users)) {
+                followerIds[edge] = userId;
+                followeeIds[edge] = followeeId;
+                edge++;
+            }
+        }
+        FollowGraphService graph = new FollowGraphService(null);
+        graph.replaceAll(followerIds, followeeIds, edges);
+        return graph;
+    }
+
+    private static Map<Integer, Set<Integer>>[] boxedGraph(int users) {
+        Map<Integer, Set<Integer>> followees = new HashMap<>();
+        Map<Integer, Set<Integer>> followers = new HashMap<>();
+        Random random = new Random(42);
+        for (int userId = 1; userId <= users; userId++) {
+            for (int followeeId : followees(random, userId, users)) {
+                followees.computeIfAbsent(userId, id -> new HashSet<>()).add(followeeId);
+                followers.computeIfAbsent(followeeId, id -> new HashSet<>()).add(userId);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        Map<Integer, Set<Integer>>[] graph = new Map[] { followees, followers };
+        return graph;
+    }
+
+    // FOLLOWS_PER_USER distinct random users other than userId.
+    private static int[] followees(Random random, int userId, int users) {
+        int[] ids = new int[FOLLOWS_PER_USER];
+        int count = 0;
+        while (count < FOLLOWS_PER_USER) {
+            int id = 1 + random.nextInt(users);
+            boolean seen = id == userId;
+            for (int i = 0; i < count && !seen; i++) {
+                seen = ids[i] == id;
+            }
+            if (!seen) {
+                ids[count++] = id;
+            }
+        }
+        return ids;
+    }
+
+    // Median live heap while the graph made by factory is reachable.
+    private static long measure(GraphFactory factory) {
+        long[] rounds = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            long before = usedHeapAfterGc();
+            Object graph = factory.create();
+            rounds[i] = usedHeapAfterGc() - before;
+            if (graph == null) {
+                throw new IllegalStateException();
+            }
+        }
+        Arrays.sort(rounds);
+        return rounds[ROUNDS / 2];
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private interface GraphFactory {
+        Object create();
+    }
+
+}
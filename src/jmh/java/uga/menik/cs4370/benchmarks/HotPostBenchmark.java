@@ -0,0 +1,148 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uga.menik.cs4370.models.CommentCursor;
+import uga.menik.cs4370.models.ExpandedPost;
+import uga.menik.cs4370.services.ContentVersionService;
+import uga.menik.cs4370.services.PostService;
+import uga.menik.cs4370.services.PostStatsService;
+import uga.menik.cs4370.services.QueryFanOutService;
+import uga.menik.cs4370.services.ToggleWriteBehindService;
+import uga.menik.cs4370.services.UserCache;
+import uga.menik.cs4370.services.ViewerStateService;
+
+/**
+ * Many viewers loading the same post page at once, as when a post goes
+ * viral. Each call is a random viewer loading the post and its first page
+ * of comments through PostService.
+ *
+ * coalesceTtlMs=0 reads the post and its comments for every view, as
+ * before views shared reads. With a TTL concurrent views share one read.
+ * writesPerSecond bumps the post version that often, as hearts and
+ * comments do, so views after a write read the post again.
+ * The number of views that read the database, waited for a read in flight
+ * or got a finished read are printed at the end.
+ *
+ * Run with
+ *   mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="HotPostBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class HotPostBenchmark {
+
+    private static final String POST_ID = "1";
+    private static final int COMMENTS_PAGE_SIZE = 50;
+
+    @Param({"0", "1000"})
+    public long coalesceTtlMs;
+
+    @Param({"0", "20"})
+    public int writesPerSecond;
+
+    @Param("200")
+    public int commentsPerPost;
+
+    private static final int USERS = 500;
+
+    private HikariDataSource dataSource;
+    private SimpleMeterRegistry meterRegistry;
+    private ContentVersionService contentVersionService;
+    private PostService postService;
+    private QueryFanOutService queryFanOutService;
+    private Thread writer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataSource = BenchmarkDatabase.create("hot_post");
+        new DatasetSeeder(USERS, 10, 1, 1, 5, commentsPerPost, 0).seed(dataSource);
+
+        // Wired the way Spring wires them, with the default settings.
+        meterRegistry = new SimpleMeterRegistry();
+        contentVersionService = new ContentVersionService(65536, 100000, 60);
+        PostStatsService postStatsService = new PostStatsService(dataSource, contentVersionService, 1000);
+        ToggleWriteBehindService toggleWriteBehindService = new ToggleWriteBehindService(dataSource,
+                postStatsService, contentVersionService, 500, 100000, "pending-toggles.spool");
+        ViewerStateService viewerStateService = new ViewerStateService(dataSource, toggleWriteBehindService,
+                5000000, 60);
+        queryFanOutService = new QueryFanOutService(meterRegistry, 4, 32);
+        postService = new PostService(dataSource, new UserCache(dataSource, 10000), viewerStateService,
+                toggleWriteBehindService, queryFanOutService, contentVersionService, meterRegistry,
+                coalesceTtlMs, 10000);
+        postStatsService.reconcile();
+
+        if (load() == null) {
+            throw new IllegalStateException("The post could not be loaded. See the errors above.");
+        }
+
+        if (writesPerSecond > 0) {
+            writer = new Thread(() -> {
+                try {
+                    while (true) {
+                        Thread.sleep(1000 / writesPerSecond);
+                        contentVersionService.postChanged(Integer.parseInt(POST_ID));
+                    }
+                } catch (InterruptedException e) {
+                    // Trial over.
+                }
+            });
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (writer != null) {
+            writer.interrupt();
+        }
+        System.out.printf("%nLoads: executed %.0f, coalesced %.0f, cached %.0f%n",
+                count("executed"), count("coalesced"), count("cached"));
+        queryFanOutService.destroy();
+        dataSource.close();
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.get("microblog.post-page.loads").tag("outcome", outcome).counter().count();
+    }
+
+    @Benchmark
+    public ExpandedPost viewPost() {
+        return load();
+    }
+
+    private ExpandedPost load() {
+        String viewerUserId = String.valueOf(ThreadLocalRandom.current().nextInt(USERS) + 1);
+        return postService.getExpandedPost(POST_ID, viewerUserId, CommentCursor.FIRST_PAGE, COMMENTS_PAGE_SIZE);
+    }
+
+}
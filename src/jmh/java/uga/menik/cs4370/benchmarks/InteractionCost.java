@@ -0,0 +1,199 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.autoconfigure.mustache.MustacheResourceTemplateLoader;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.ModelAndView;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samskivert.mustache.Mustache;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import uga.menik.cs4370.components.AssetManifest;
+import uga.menik.cs4370.components.PostFragmentCache;
+import uga.menik.cs4370.controllers.PeopleController;
+import uga.menik.cs4370.controllers.PostController;
+import uga.menik.cs4370.services.ContentVersionService;
+import uga.menik.cs4370.services.FollowGraphService;
+import uga.menik.cs4370.services.FollowSuggestionService;
+import uga.menik.cs4370.services.PeopleService;
+import uga.menik.cs4370.services.PostService;
+import uga.menik.cs4370.services.PostStatsService;
+import uga.menik.cs4370.services.QueryFanOutService;
+import uga.menik.cs4370.services.TimelineService;
+import uga.menik.cs4370.services.ToggleWriteBehindService;
+import uga.menik.cs4370.services.UserCache;
+import uga.menik.cs4370.services.UserService;
+import uga.menik.cs4370.services.ViewerStateService;
+
+/**
+ * Response bytes and SQL statements of one heart, bookmark or follow
+ * click, through the GET link that redirects to a rerendered page and
+ * through the JSON endpoint that main.js calls.
+ * The redirect is followed the way a browser does and its page is
+ * rendered with the real templates. Statements are counted on the
+ * connections handed out by the pool. Writes queued for the heart and
+ * bookmark write-behind flush are the same either way and not counted.
+ *
+ * Run with
+ *   mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=uga.menik.cs4370.benchmarks.InteractionCost
+ */
+public class InteractionCost {
+
+    private static final AtomicInteger statements = new AtomicInteger();
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final int COMMENTS_PAGE_SIZE = 50;
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = System.out;
+
+        HikariDataSource pool = BenchmarkDatabase.create("interaction_cost");
+        new DatasetSeeder(200, 50, 20, 3, 5, 3, 20).seed(pool);
+        DataSource dataSource = counting(pool);
+
+        // Wired the way Spring wires them, with the default settings.
+        UserCache userCache = new UserCache(dataSource, 10000);
+        ContentVersionService contentVersionService = new ContentVersionService(65536, 100000, 60);
+        PostStatsService postStatsService = new PostStatsService(dataSource, contentVersionService, 1000);
+        ToggleWriteBehindService toggleWriteBehindService = new ToggleWriteBehindService(dataSource,
+                postStatsService, contentVersionService, 500, 100000, "pending-toggles.spool");
+        ViewerStateService viewerStateService = new ViewerStateService(dataSource, toggleWriteBehindService,
+                5000000, 60);
+        QueryFanOutService queryFanOutService = new QueryFanOutService(new SimpleMeterRegistry(), 4, 32);
+        PostService postService = new PostService(dataSource, userCache, viewerStateService,
+                toggleWriteBehindService, queryFanOutService, contentVersionService, new SimpleMeterRegistry(),
+                1000, 10000);
+        FollowGraphService followGraphService = new FollowGraphService(dataSource);
+        FollowSuggestionService followSuggestionService = new FollowSuggestionService(dataSource,
+                followGraphService, 2, 20, 500);
+        TimelineService timelineService = new TimelineService(dataSource, postService, contentVersionService,
+                followGraphService, 800, 5000);
+        PeopleService peopleService = new PeopleService(dataSource, followGraphService);
+        UserService userService = new UserService(dataSource, postService, userCache, null);
+        PostController postController = new PostController(userService, peopleService, postStatsService,
+                postService, viewerStateService, toggleWriteBehindService, contentVersionService, dataSource,
+                COMMENTS_PAGE_SIZE);
+        PeopleController peopleController = new PeopleController(userService, peopleService,
+                timelineService, followGraphService, followSuggestionService, queryFanOutService, dataSource,
+                50, 10);
+        postStatsService.reconcile();
+        followGraphService.afterPropertiesSet();
+        timelineService.initialize();
+        followSuggestionService.rebuild();
+
+        PostFragmentCache postFragmentCache = new PostFragmentCache(contentVersionService, 64L << 20);
+        Mustache.Compiler mustache = Mustache.compiler()
+                .withLoader(new MustacheResourceTemplateLoader("classpath:/templates/", ".mustache"));
+
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute(UserService.SESSION_USER_ID, 1);
+        AuthFixtures.bind(AuthFixtures.requestFor(session));
+        // Caches are warm on a real site.
+        viewerStateService.getMarks("1");
+        postPage(postController);
+        peopleController.webpage(null, null, null);
+
+        out.printf("%-10s %-14s %10s %12s%n", "Click", "Path", "Bytes", "Statements");
+        for (String kind : new String[] {"heart", "bookmark"}) {
+            boolean isHeart = kind.equals("heart");
+            print(out, kind, "GET redirect", () -> {
+                String redirect = isHeart ? postController.addOrRemoveHeart("2", true)
+                        : postController.addOrRemoveBookmark("2", true);
+                return render(mustache, postFragmentCache, redirect, postPage(postController));
+            });
+            print(out, kind, "JSON POST", () -> json(isHeart ? postController.toggleHeart("2", false)
+                    : postController.toggleBookmark("2", false)));
+        }
+        print(out, "follow", "GET redirect", () -> render(mustache, postFragmentCache,
+                peopleController.followUnfollowUser("150", true), peopleController.webpage(null, null, null)));
+        print(out, "follow", "JSON POST", () -> json(peopleController.toggleFollow("150", false)));
+
+        toggleWriteBehindService.flush();
+        pool.close();
+    }
+
+    private static void print(PrintStream out, String kind, String path, Supplier<byte[]> click) {
+        statements.set(0);
+        byte[] response = click.get();
+        out.printf("%-10s %-14s %10d %12d%n", kind, path, response.length, statements.get());
+    }
+
+    // The post page as a first view, without an ETag.
+    private static ModelAndView postPage(PostController postController) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        return postController.webpage("2", null, null,
+                new ServletWebRequest(new MockHttpServletRequest("GET", "/post/2"), response), response);
+    }
+
+    private static byte[] render(Mustache.Compiler mustache, PostFragmentCache postFragmentCache,
+            String redirect, ModelAndView page) {
+        if (!redirect.startsWith("redirect:") || redirect.contains("error")) {
+            throw new IllegalStateException("Click failed: " + redirect);
+        }
+        Map<String, Object> model = page.getModel();
+        // Added to every model by Spring, see PostFragmentCache and AssetManifest.
+        model.put("postFragment", postFragmentCache);
+        model.put("asset", new AssetManifest().asset());
+        return mustache.loadTemplate(page.getViewName()).execute(model).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] json(ResponseEntity<?> response) {
+        try {
+            return objectMapper.writeValueAsBytes(response.getBody());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Counts the statements prepared or created on connections of dataSource.
+    private static DataSource counting(DataSource dataSource) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+                    Object result = invoke(dataSource, method, args);
+                    if (result instanceof Connection conn) {
+                        return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                new Class<?>[] {Connection.class}, (connProxy, connMethod, connArgs) -> {
+                                    String name = connMethod.getName();
+                                    if (name.equals("prepareStatement") || name.equals("createStatement")
+                                            || name.equals("prepareCall")) {
+                                        statements.incrementAndGet();
+                                    }
+                                    return invoke(conn, connMethod, connArgs);
+                                });
+                    }
+                    return result;
+                });
+    }
+
+    private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+}
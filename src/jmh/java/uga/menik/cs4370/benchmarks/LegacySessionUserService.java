@@ -0,0 +1,42 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.web.context.annotation.SessionScope;
+
+import uga.menik.cs4370.models.User;
+
+/**
+ * The state of the former session scoped UserService, kept as the
+ * baseline for the authentication benchmarks.
+ * Spring created one instance, including its own BCryptPasswordEncoder,
+ * per HTTP session and reached it through a scoped proxy.
+ */
+@SessionScope
+public class LegacySessionUserService {
+
+    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+
+    private User loggedInUser = null;
+
+    public void logIn(User user) {
+        loggedInUser = user;
+    }
+
+    public boolean isAuthenticated() {
+        return loggedInUser != null;
+    }
+
+    public User getLoggedInUser() {
+        return loggedInUser;
+    }
+
+    public BCryptPasswordEncoder getPasswordEncoder() {
+        return passwordEncoder;
+    }
+
+}
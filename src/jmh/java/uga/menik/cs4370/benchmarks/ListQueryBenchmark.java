@@ -0,0 +1,138 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryRegistry.NamedQuery;
+
+/**
+ * Loads posts by id lists of random size, as the hashtag search page and
+ * the user cache do, on one connection that is kept open like a pooled one.
+ *
+ * exact prepares the SQL with one ? per id, a different text for every
+ * list size, as before the named queries. bucketed prepares it through
+ * QueryRegistry, which rounds the list up to a power of two, so list
+ * sizes 1 to maxIds share a handful of texts. Statement caches keyed by
+ * SQL text, such as H2's per session query cache or Connector/J's with
+ * cachePrepStmts, then find the parsed statement again.
+ * The distinct texts each mode prepared are printed at the end.
+ *
+ * Run with
+ *   mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="ListQueryBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ListQueryBenchmark {
+
+    private static final String QUERY = "posts-by-ids";
+
+    @Param({"exact", "bucketed"})
+    public String arity;
+
+    @Param("50")
+    public int maxIds;
+
+    private static final int USERS = 200;
+    private static final int POSTS_PER_USER = 10;
+
+    private HikariDataSource dataSource;
+    private Connection conn;
+    private NamedQuery query;
+    private String[] exactSql;
+    private boolean[] prepared;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataSource = BenchmarkDatabase.create("list_query");
+        new DatasetSeeder(USERS, 5, POSTS_PER_USER, 1, 1, 0, 0).seed(dataSource);
+        conn = dataSource.getConnection();
+        query = QueryRegistry.getQueries().stream()
+                .filter(q -> q.name().equals(QUERY))
+                .findFirst()
+                .orElseThrow();
+        // Built up front, so exact pays for preparing, not for the string.
+        exactSql = new String[maxIds + 1];
+        for (int size = 1; size <= maxIds; size++) {
+            exactSql[size] = query.expand(size);
+        }
+        prepared = new boolean[QueryRegistry.bucket(maxIds) + 1];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        int texts = 0;
+        for (boolean isPrepared : prepared) {
+            if (isPrepared) {
+                texts++;
+            }
+        }
+        System.out.printf("%nDistinct SQL texts prepared: %d%n", texts);
+        conn.close();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public int loadPosts() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = 1 + random.nextInt(maxIds);
+        List<Integer> postIds = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            postIds.add(1 + random.nextInt(USERS * POSTS_PER_USER));
+        }
+
+        boolean isBucketed = arity.equals("bucketed");
+        String sql = isBucketed ? QueryRegistry.get(QUERY, size) : exactSql[size];
+        prepared[isBucketed ? QueryRegistry.bucket(size) : size] = true;
+
+        int rows = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            if (isBucketed) {
+                QueryRegistry.bind(pstmt, 1, postIds);
+            } else {
+                int index = 1;
+                for (int postId : postIds) {
+                    pstmt.setInt(index++, postId);
+                }
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+}
@@ -0,0 +1,137 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import uga.menik.cs4370.config.SamplingTurboFilter;
+
+/**
+ * Cost of one per request log line from several request threads at once,
+ * the way the heart toggle handler logs it.
+ *
+ * println is the former System.out.println with string concatenation,
+ * which every thread serializes on. The others log through SLF4J as set
+ * up in logback-spring.xml: an AsyncAppender that never blocks in front
+ * of the console, and SamplingTurboFilter for DEBUG events.
+ * debugDisabled is the production default for request events.
+ * Output goes to a null stream so only the logging itself is measured.
+ *
+ * Run with
+ *   mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="LoggingBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    private final PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+
+    private LoggerContext context;
+    private AsyncAppender async;
+    private Logger disabled;
+    private Logger sampled;
+    private Logger enabled;
+
+    private final String postId = "1234";
+    private final Boolean isAdd = Boolean.TRUE;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d %-5level [%thread] %logger{36} - %msg%n");
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> console = new OutputStreamAppender<>();
+        console.setContext(context);
+        console.setEncoder(encoder);
+        console.setOutputStream(OutputStream.nullOutputStream());
+        console.start();
+
+        async = new AsyncAppender();
+        async.setContext(context);
+        async.setQueueSize(8192);
+        async.setNeverBlock(true);
+        async.addAppender(console);
+        async.start();
+
+        SamplingTurboFilter filter = new SamplingTurboFilter();
+        filter.setLoggerPrefix("benchmark.sampled");
+        filter.setLevel("DEBUG");
+        filter.setKeepOneIn(100);
+        filter.start();
+        context.addTurboFilter(filter);
+
+        disabled = logger("benchmark.disabled", ch.qos.logback.classic.Level.INFO);
+        sampled = logger("benchmark.sampled", ch.qos.logback.classic.Level.DEBUG);
+        enabled = logger("benchmark.enabled", ch.qos.logback.classic.Level.DEBUG);
+    }
+
+    private Logger logger(String name, ch.qos.logback.classic.Level level) {
+        Logger logger = context.getLogger(name);
+        logger.setLevel(level);
+        logger.setAdditive(false);
+        logger.addAppender(async);
+        return logger;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        async.stop();
+    }
+
+    @Benchmark
+    public void println() {
+        out.println("The user is attempting add or remove a heart:");
+        out.println("\tpostId: " + postId);
+        out.println("\tisAdd: " + isAdd);
+    }
+
+    @Benchmark
+    public void debugDisabled() {
+        disabled.debug("Heart toggle postId={} isAdd={}", postId, isAdd);
+    }
+
+    @Benchmark
+    public void debugSampled() {
+        sampled.debug("Heart toggle postId={} isAdd={}", postId, isAdd);
+    }
+
+    @Benchmark
+    public void debugAsync() {
+        enabled.debug("Heart toggle postId={} isAdd={}", postId, isAdd);
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.mustache.MustacheResourceTemplateLoader;
+
+import com.samskivert.mustache.Mustache;
+import com.samskivert.mustache.Template;
+
+import uga.menik.cs4370.components.PostFragmentCache;
+import uga.menik.cs4370.models.Post;
+import uga.menik.cs4370.models.User;
+import uga.menik.cs4370.services.ContentVersionService;
+
+/**
+ * Rendering posts_page.mustache with a page of posts, the template work
+ * of the home, profile and bookmarks pages.
+ *
+ * uncached renders fragments/post.mustache for every post, as before
+ * PostFragmentCache. cached goes through PostFragmentCache with a warm
+ * cache. Each call is the same posts seen by one of several viewers with
+ * different heart and bookmark flags. The page is written to a reused
+ * buffer like a response writer, so its own growth is not counted.
+ *
+ * Run with
+ *   mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="PostRenderBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PostRenderBenchmark {
+
+    private static final int VIEWERS = 8;
+
+    @Param("50")
+    public int postsPerPage;
+
+    private Template postsPage;
+    private final List<Map<String, Object>> uncachedModels = new ArrayList<>();
+    private final List<Map<String, Object>> cachedModels = new ArrayList<>();
+    private final StringWriter out = new StringWriter(1 << 16);
+    private int viewer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Loaded the way Spring Boot loads the application's templates.
+        Mustache.Compiler compiler = Mustache.compiler()
+                .withLoader(new MustacheResourceTemplateLoader("classpath:/templates/", ".mustache"));
+        postsPage = compiler.loadTemplate("posts_page");
+
+        Mustache.Lambda uncached = (frag, writer) -> frag.execute(writer);
+        PostFragmentCache cached = new PostFragmentCache(new ContentVersionService(65536, 100000, 60), 64L << 20);
+
+        Random random = new Random(42);
+        for (int v = 0; v < VIEWERS; v++) {
+            List<Post> posts = new ArrayList<>(postsPerPage);
+            for (int i = 0; i < postsPerPage; i++) {
+                User author = new User(String.valueOf(i % 10 + 1), "First" + i % 10, "Last" + i % 10);
+                posts.add(new Post(String.valueOf(i + 1),
+                        "Post number " + i + " about #databases & <indexes>, with a link to https://example.com/" + i
+                                + " and some more words to reach a typical post length.",
+                        "Oct 18, 2026, 09:" + (10 + i % 50) + " AM", author,
+                        i * 3, i % 7, random.nextBoolean(), random.nextBoolean()));
+            }
+            uncachedModels.add(model(posts, uncached));
+            cachedModels.add(model(posts, cached));
+        }
+        // Warms the fragment cache, and both must render the same page.
+        for (int v = 0; v < VIEWERS; v++) {
+            for (int i = 0; i < 2; i++) {
+                if (!postsPage.execute(cachedModels.get(v)).equals(postsPage.execute(uncachedModels.get(v)))) {
+                    throw new IllegalStateException("The cached page differs for viewer " + v);
+                }
+            }
+        }
+    }
+
+    private static Map<String, Object> model(List<Post> posts, Mustache.Lambda postFragment) {
+        Map<String, Object> model = new HashMap<>();
+        model.put("posts", posts);
+        model.put("postFragment", postFragment);
+        return model;
+    }
+
+    @Benchmark
+    public int uncached() {
+        return render(uncachedModels);
+    }
+
+    @Benchmark
+    public int cached() {
+        return render(cachedModels);
+    }
+
+    private int render(List<Map<String, Object>> models) {
+        viewer = (viewer + 1) % VIEWERS;
+        out.getBuffer().setLength(0);
+        postsPage.execute(models.get(viewer), out);
+        return out.getBuffer().length();
+    }
+
+}
@@ -0,0 +1,330 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.ModelAndView;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uga.menik.cs4370.controllers.HashtagSearchController;
+import uga.menik.cs4370.controllers.HomeController;
+import uga.menik.cs4370.controllers.PostController;
+import uga.menik.cs4370.models.CommentCursor;
+import uga.menik.cs4370.models.FeedCursor;
+import uga.menik.cs4370.models.FeedPage;
+import uga.menik.cs4370.models.FollowableUser;
+import uga.menik.cs4370.models.PeopleCursor;
+import uga.menik.cs4370.models.PeoplePage;
+import uga.menik.cs4370.models.Post;
+import uga.menik.cs4370.services.ContentVersionService;
+import uga.menik.cs4370.services.FollowGraphService;
+import uga.menik.cs4370.services.FollowSuggestionService;
+import uga.menik.cs4370.services.HashtagIndexService;
+import uga.menik.cs4370.services.PeopleService;
+import uga.menik.cs4370.services.PostService;
+import uga.menik.cs4370.services.PostStatsService;
+import uga.menik.cs4370.services.QueryFanOutService;
+import uga.menik.cs4370.services.TimelineService;
+import uga.menik.cs4370.services.ToggleWriteBehindService;
+import uga.menik.cs4370.services.UserCache;
+import uga.menik.cs4370.services.UserService;
+import uga.menik.cs4370.services.ViewerStateService;
+
+/**
+ * The read paths behind the main pages, driven through the real
+ * controllers and services against a seeded database, see
+ * BenchmarkDatabase and DatasetSeeder.
+ *
+ * Every benchmark is measured as throughput and as sampled latency; the
+ * sample mode reports p50 and p99. BenchmarkRunner adds the allocation
+ * rate. Each call is made as a random user of the dataset.
+ *
+ * The dataset is sized with the @Param fields, e.g.
+ *   mvn -Pbenchmark test-compile exec:exec \
+ *       -Dbenchmark.args="QueryPathBenchmark -p users=5000 -p followsPerUser=200"
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryPathBenchmark {
+
+    @Param("500")
+    public int users;
+
+    @Param("50")
+    public int followsPerUser;
+
+    @Param("20")
+    public int postsPerUser;
+
+    @Param("3")
+    public int tagsPerPost;
+
+    @Param("5")
+    public int heartsPerPost;
+
+    @Param("3")
+    public int commentsPerPost;
+
+    @Param("20")
+    public int bookmarksPerUser;
+
+    private static final int PAGE_SIZE = 20;
+    private static final int PEOPLE_PAGE_SIZE = 50;
+    private static final int COMMENTS_PAGE_SIZE = 50;
+
+    private HikariDataSource dataSource;
+    private int posts;
+
+    private HomeController homeController;
+    private HashtagSearchController hashtagSearchController;
+    private PostController postController;
+    private PeopleService peopleService;
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+
+        dataSource = BenchmarkDatabase.create("query_paths");
+        DatasetSeeder seeder = new DatasetSeeder(users, followsPerUser, postsPerUser, tagsPerPost,
+                heartsPerPost, commentsPerPost, bookmarksPerUser);
+        seeder.seed(dataSource);
+        posts = seeder.posts();
+
+        // Wired the way Spring wires them, with the default settings.
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        UserCache userCache = new UserCache(dataSource, 10000);
+        ContentVersionService contentVersionService = new ContentVersionService(65536, 100000, 60);
+        PostStatsService postStatsService = new PostStatsService(dataSource, contentVersionService, 1000);
+        ToggleWriteBehindService toggleWriteBehindService = new ToggleWriteBehindService(dataSource,
+                postStatsService, contentVersionService, 500, 100000, "pending-toggles.spool");
+        ViewerStateService viewerStateService = new ViewerStateService(dataSource, toggleWriteBehindService,
+                5000000, 60);
+        PostService postService = new PostService(dataSource, userCache, viewerStateService,
+                toggleWriteBehindService, new QueryFanOutService(meterRegistry, 4, 32), contentVersionService,
+                meterRegistry, 1000, 10000);
+        FollowGraphService followGraphService = new FollowGraphService(dataSource);
+        TimelineService timelineService = new TimelineService(dataSource, postService, contentVersionService,
+                followGraphService, 800, 5000);
+        HashtagIndexService hashtagIndexService = new HashtagIndexService(dataSource);
+        peopleService = new PeopleService(dataSource, followGraphService);
+        userService = new UserService(dataSource, postService, userCache, null);
+
+        // Startup work done by Spring when the application starts.
+        postStatsService.reconcile();
+        followGraphService.afterPropertiesSet();
+        timelineService.initialize();
+        hashtagIndexService.afterPropertiesSet();
+        FollowSuggestionService followSuggestionService = new FollowSuggestionService(dataSource,
+                followGraphService, 2, 20, 500);
+        followSuggestionService.rebuild();
+        followSuggestionService.destroy();
+
+        homeController = new HomeController(dataSource, userService, timelineService,
+                hashtagIndexService, peopleService, contentVersionService, meterRegistry, PAGE_SIZE);
+        hashtagSearchController = new HashtagSearchController(userService, hashtagIndexService,
+                postService, PAGE_SIZE);
+        postController = new PostController(userService, peopleService, postStatsService,
+                postService, viewerStateService, toggleWriteBehindService, contentVersionService, dataSource,
+                COMMENTS_PAGE_SIZE);
+
+        // The services print and swallow SQL errors. Make sure every path
+        // returns data on this database before measuring it.
+        if (timelineService.getHomeFeed("1", FeedCursor.FIRST_PAGE, PAGE_SIZE).getPosts().isEmpty()
+                || hashtagIndexService.countPosts("tag0") == 0
+                || postService.getExpandedPost("1", "1", CommentCursor.FIRST_PAGE, COMMENTS_PAGE_SIZE) == null
+                || peopleService.getPeoplePage("1", null, PeopleCursor.FIRST_PAGE, PEOPLE_PAGE_SIZE)
+                        .getUsers().isEmpty()
+                || peopleService.getSuggestedUsers("1", 10).isEmpty()
+                || (bookmarksPerUser > 0 && userService.getBookmarkedPosts("1").isEmpty())) {
+            throw new IllegalStateException("A query path returned no data. See the errors above.");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    /**
+     * The users making the calls of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Viewer {
+
+        private final Random random = new Random();
+        // ETag of the last response per user and page, like a browser cache.
+        private final Map<String, String> etags = new HashMap<>();
+        private int users;
+        private int posts;
+        String userId;
+        private MockHttpServletRequest request;
+        private MockHttpServletResponse response;
+
+        @Setup(Level.Trial)
+        public void setUp(QueryPathBenchmark benchmark) {
+            users = benchmark.users;
+            posts = benchmark.posts;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            RequestContextHolder.resetRequestAttributes();
+        }
+
+        /**
+         * Picks a random user and binds a request of their logged in
+         * session, like DispatcherServlet does for a real request.
+         */
+        Viewer next() {
+            int id = random.nextInt(users) + 1;
+            userId = String.valueOf(id);
+            MockHttpSession session = new MockHttpSession();
+            session.setAttribute(UserService.SESSION_USER_ID, id);
+            request = AuthFixtures.requestFor(session);
+            AuthFixtures.bind(request);
+            return this;
+        }
+
+        /**
+         * A first view of a page, without an ETag.
+         */
+        ServletWebRequest firstView() {
+            response = new MockHttpServletResponse();
+            return new ServletWebRequest(request, response);
+        }
+
+        /**
+         * A repeat view of page by the current user, sent with the ETag of
+         * their last response for it.
+         */
+        ServletWebRequest repeatView(String page) {
+            String etag = etags.get(userId + page);
+            if (etag != null) {
+                request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+            }
+            return firstView();
+        }
+
+        /**
+         * Keeps the ETag of the response to a repeat view of page.
+         */
+        void keepEtag(String page) {
+            String etag = response.getHeader(HttpHeaders.ETAG);
+            if (etag != null) {
+                etags.put(userId + page, etag);
+            }
+        }
+
+        MockHttpServletResponse response() {
+            return response;
+        }
+
+        String randomPostId() {
+            return String.valueOf(random.nextInt(posts) + 1);
+        }
+
+        // One of a few popular posts, so that a user views it again.
+        String popularPostId() {
+            return String.valueOf(random.nextInt(Math.min(posts, 20)) + 1);
+        }
+
+        String randomTags() {
+            return "#" + DatasetSeeder.tag(random) + " #" + DatasetSeeder.tag(random);
+        }
+    }
+
+    @Benchmark
+    public FeedPage homeFeed(Viewer viewer) {
+        return homeController.getFollowedUsersPosts(viewer.next().userId, FeedCursor.FIRST_PAGE, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public ModelAndView hashtagSearch(Viewer viewer) {
+        return hashtagSearchController.webpage(viewer.next().randomTags(), null);
+    }
+
+    /**
+     * The home page of a user whose browser has their last copy of it.
+     * Answered with 304 Not Modified unless the feed changed.
+     */
+    @Benchmark
+    public ModelAndView homePageRepeatView(Viewer viewer) {
+        viewer.next();
+        ModelAndView mv = homeController.webpage(null, null, viewer.repeatView("/"), viewer.response());
+        viewer.keepEtag("/");
+        return mv;
+    }
+
+    @Benchmark
+    public ModelAndView postDetail(Viewer viewer) {
+        viewer.next();
+        return postController.webpage(viewer.randomPostId(), null, null, viewer.firstView(), viewer.response());
+    }
+
+    /**
+     * The page of a post the user viewed before, see homePageRepeatView.
+     */
+    @Benchmark
+    public ModelAndView postDetailRepeatView(Viewer viewer) {
+        viewer.next();
+        String postId = viewer.popularPostId();
+        String page = "/post/" + postId;
+        ModelAndView mv = postController.webpage(postId, null, null, viewer.repeatView(page), viewer.response());
+        viewer.keepEtag(page);
+        return mv;
+    }
+
+    @Benchmark
+    public PeoplePage people(Viewer viewer) {
+        return peopleService.getPeoplePage(viewer.next().userId, null, PeopleCursor.FIRST_PAGE, PEOPLE_PAGE_SIZE);
+    }
+
+    @Benchmark
+    public PeoplePage peopleSearch(Viewer viewer) {
+        return peopleService.getPeoplePage(viewer.next().userId, "First1", PeopleCursor.FIRST_PAGE, PEOPLE_PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<FollowableUser> peopleSuggestions(Viewer viewer) {
+        return peopleService.getSuggestedUsers(viewer.next().userId, 10);
+    }
+
+    @Benchmark
+    public List<Post> bookmarks(Viewer viewer) {
+        return userService.getBookmarkedPosts(viewer.next().userId);
+    }
+
+}
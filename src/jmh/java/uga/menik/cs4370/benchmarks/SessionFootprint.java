@@ -0,0 +1,82 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+/**
+ * Heap retained per logged in session, before and after UserService
+ * became a singleton.
+ * Creates many logged in sessions each way and compares the live heap
+ * with the same number of empty sessions.
+ *
+ * Run with
+ *   mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=uga.menik.cs4370.benchmarks.SessionFootprint
+ */
+public class SessionFootprint {
+
+    private static final int SESSIONS = 200000;
+
+    // Each measurement is repeated and the median is reported.
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        AnnotationConfigWebApplicationContext legacyContext = AuthFixtures.legacyContext();
+        LegacySessionUserService legacyProxy = legacyContext.getBean(LegacySessionUserService.class);
+
+        long empty = measure(() -> new MockHttpSession());
+        long legacy = measure(() -> AuthFixtures.legacyLoggedInSession(legacyProxy));
+        long stateless = measure(AuthFixtures::loggedInSession);
+
+        System.out.printf("Sessions: %d%n", SESSIONS);
+        System.out.printf("Session scoped UserService: %d bytes per session%n", (legacy - empty) / SESSIONS);
+        System.out.printf("Session user id attribute:  %d bytes per session%n", (stateless - empty) / SESSIONS);
+        legacyContext.close();
+    }
+
+    // Median live heap while SESSIONS sessions made by factory are reachable.
+    private static long measure(SessionFactory factory) {
+        long[] rounds = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            rounds[i] = measureOnce(factory);
+        }
+        Arrays.sort(rounds);
+        return rounds[ROUNDS / 2];
+    }
+
+    private static long measureOnce(SessionFactory factory) {
+        long before = usedHeapAfterGc();
+        List<MockHttpSession> sessions = new ArrayList<>(SESSIONS);
+        for (int i = 0; i < SESSIONS; i++) {
+            sessions.add(factory.create());
+        }
+        long after = usedHeapAfterGc();
+        if (sessions.size() != SESSIONS) {
+            throw new IllegalStateException();
+        }
+        return after - before;
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private interface SessionFactory {
+        MockHttpSession create();
+    }
+
+}
@@ -0,0 +1,66 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.components;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ModelAttribute;
+
+import com.samskivert.mustache.Mustache;
+
+import uga.menik.cs4370.utility.AssetPipeline;
+
+/**
+ * This class maps the URL of a static file to the URL of its content
+ * hashed copy under /assets/, as written by AssetPipeline at build time.
+ *
+ * Templates go through the asset lambda added to every model below, e.g.
+ * {{#asset}}/css/styles.css{{/asset}}. User resolves avatar paths through
+ * resolve. When the manifest is missing, e.g. when the app is started
+ * from an IDE without the Maven build, every URL resolves to itself and
+ * the files are served from static/ as before.
+ */
+@ControllerAdvice
+public class AssetManifest {
+
+    private static final Map<String, String> urls = load();
+
+    private static final Mustache.Lambda asset = (frag, out) -> out.write(resolve(frag.execute().trim()));
+
+    private static Map<String, String> load() {
+        Map<String, String> urls = new HashMap<>();
+        try (InputStream in = AssetManifest.class.getClassLoader().getResourceAsStream(AssetPipeline.MANIFEST)) {
+            if (in != null) {
+                Properties properties = new Properties();
+                properties.load(in);
+                properties.forEach((from, to) -> urls.put((String) from, (String) to));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return urls;
+    }
+
+    /**
+     * Returns the hashed URL of a static file, or url itself if the file
+     * has none.
+     */
+    public static String resolve(String url) {
+        return urls.getOrDefault(url, url);
+    }
+
+    @ModelAttribute("asset")
+    public Mustache.Lambda asset() {
+        return asset;
+    }
+
+}
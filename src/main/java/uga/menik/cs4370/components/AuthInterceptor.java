@@ -41,11 +41,13 @@ public class AuthInterceptor implements HandlerInterceptor {
     /**
      * This is the overriden method that does the actual redirection
      * if the user is not logged in.
+     * The check only reads the user id stored in the existing session.
+     * It never creates a session.
      */
     @Override
     public boolean preHandle(HttpServletRequest request,
             HttpServletResponse response, Object handler) throws Exception {
-        if (!userService.isAuthenticated()) {
+        if (!userService.isAuthenticated(request)) {
             // Redirect the user to login.
             response.sendRedirect("/login");
             return false;
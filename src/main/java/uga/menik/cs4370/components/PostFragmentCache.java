@@ -0,0 +1,161 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.components;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ModelAttribute;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.samskivert.mustache.Mustache;
+import com.samskivert.mustache.Template;
+
+import uga.menik.cs4370.models.ExpandedPost;
+import uga.menik.cs4370.models.Post;
+import uga.menik.cs4370.services.ContentVersionService;
+
+/**
+ * This class caches the rendered HTML of fragments/post.mustache.
+ * Most of a post's HTML is the same for every viewer. Only the heart and
+ * bookmark buttons depend on the viewer's isHearted and isBookmarked flags.
+ *
+ * A post is rendered once per version (see ContentVersionService). While
+ * rendering, both flag sections record where they sit in the HTML and
+ * what they render to, without writing anything. A view then copies the
+ * shared HTML and puts in the variant of each section that matches the
+ * viewer's flags.
+ *
+ * posts_container.mustache wraps each post in {{#postFragment}}, which
+ * is added to every model by the @ModelAttribute method below. The cache
+ * is bounded by the approximate size of the HTML it holds.
+ */
+@ControllerAdvice
+public class PostFragmentCache implements Mustache.Lambda {
+
+    private enum Flag {
+        HEARTED, BOOKMARKED
+    }
+
+    /**
+     * commentsPage is the comments cursor of an expanded post and null
+     * for a post in a list.
+     */
+    private record Key(int postId, long version, String commentsPage) {
+    }
+
+    /**
+     * A flag section at position at of the shared HTML, rendered as
+     * whenSet when the viewer's flag is set and as whenUnset otherwise.
+     */
+    private record Section(int at, Flag flag, String whenSet, String whenUnset) {
+    }
+
+    /**
+     * A post's HTML without its flag sections, and the counts it shows.
+     */
+    private record RenderedPost(String html, Section[] sections, int heartsCount, int commentsCount) {
+
+        int weight() {
+            int chars = html.length();
+            for (Section section : sections) {
+                chars += section.whenSet().length() + section.whenUnset().length();
+            }
+            // Two bytes per char plus the objects around them.
+            return 2 * chars + 64 * (sections.length + 1);
+        }
+
+        void write(Writer out, boolean isHearted, boolean isBookmarked) throws IOException {
+            int from = 0;
+            for (Section section : sections) {
+                out.write(html, from, section.at() - from);
+                boolean isSet = section.flag() == Flag.HEARTED ? isHearted : isBookmarked;
+                out.write(isSet ? section.whenSet() : section.whenUnset());
+                from = section.at();
+            }
+            out.write(html, from, html.length() - from);
+        }
+    }
+
+    private final ContentVersionService contentVersionService;
+    private final Cache<Key, RenderedPost> cache;
+
+    public PostFragmentCache(ContentVersionService contentVersionService,
+            @Value("${microblog.fragment-cache.maximum-bytes:67108864}") long maximumBytes) {
+        this.contentVersionService = contentVersionService;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((Key key, RenderedPost post) -> post.weight())
+                .recordStats()
+                .build();
+    }
+
+    @ModelAttribute("postFragment")
+    public Mustache.Lambda postFragment() {
+        return this;
+    }
+
+    /**
+     * Writes the post that is the context of frag.
+     */
+    @Override
+    public void execute(Template.Fragment frag, Writer out) throws IOException {
+        if (!(frag.context() instanceof Post post)) {
+            frag.execute(out);
+            return;
+        }
+        int postId = Integer.parseInt(post.getPostId());
+        String commentsPage = post instanceof ExpandedPost expanded ? expanded.getCommentsCursor().encode() : null;
+        Key key = new Key(postId, contentVersionService.getPostVersion(postId), commentsPage);
+        RenderedPost rendered = cache.getIfPresent(key);
+        // The post may have been read before the version was bumped, so
+        // the counts it was rendered with are checked too.
+        if (rendered == null || rendered.heartsCount() != post.getHeartsCount()
+                || rendered.commentsCount() != post.getCommentsCount()) {
+            rendered = render(frag, post);
+            cache.put(key, rendered);
+        }
+        rendered.write(out, post.getHearted(), post.isBookmarked());
+    }
+
+    private static RenderedPost render(Template.Fragment frag, Post post) {
+        StringWriter html = new StringWriter();
+        List<Section> sections = new ArrayList<>(4);
+        // Shadows the post's own flags while rendering.
+        Map<String, Object> flags = Map.of(
+                "isHearted", new FlagSection(Flag.HEARTED, html, sections),
+                "isBookmarked", new FlagSection(Flag.BOOKMARKED, html, sections));
+        frag.execute(flags, html);
+        return new RenderedPost(html.toString(), sections.toArray(new Section[0]),
+                post.getHeartsCount(), post.getCommentsCount());
+    }
+
+    /**
+     * Stands in for a flag in {{#flag}} and {{^flag}} sections. Records
+     * the section's position and content instead of writing it.
+     */
+    private record FlagSection(Flag flag, StringWriter html, List<Section> sections)
+            implements Mustache.InvertibleLambda {
+
+        @Override
+        public void execute(Template.Fragment frag, Writer out) {
+            sections.add(new Section(html.getBuffer().length(), flag, frag.execute(), ""));
+        }
+
+        @Override
+        public void executeInverse(Template.Fragment frag, Writer out) {
+            sections.add(new Section(html.getBuffer().length(), flag, "", frag.execute()));
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * A DataSource that lets at most maxWaiting callers wait for a connection
+ * of the pool at once. The pool bounds the connections in use and how
+ * long a caller waits for one. Nothing bounds how many callers wait, and
+ * with many request threads, or one virtual thread per request, they all
+ * block in the pool until their timeout. Here a caller beyond the limit
+ * fails right away with a SQLTransientConnectionException instead of
+ * adding to the pile.
+ *
+ * A caller counts as waiting while it is in getConnection. One that gets
+ * an idle connection leaves again at once.
+ *
+ * Metrics:
+ *   microblog.datasource.admission.waiting    callers waiting for a connection
+ *   microblog.datasource.admission.rejected   callers turned away
+ * Pool level metrics, including the time to get a connection, are
+ * published by Spring Boot as hikaricp.connections.*.
+ */
+public class BoundedDataSource extends DelegatingDataSource {
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final int maxWaiting;
+
+    private final Counter rejectedCounter;
+
+    public BoundedDataSource(DataSource targetDataSource, int maxWaiting, MeterRegistry meterRegistry) {
+        super(targetDataSource);
+        this.maxWaiting = maxWaiting;
+
+        this.rejectedCounter = Counter.builder("microblog.datasource.admission.rejected")
+                .register(meterRegistry);
+        Gauge.builder("microblog.datasource.admission.waiting", waiting, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        admit();
+        try {
+            return super.getConnection();
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        admit();
+        try {
+            return super.getConnection(username, password);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private void admit() throws SQLException {
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            rejectedCounter.increment();
+            throw new SQLTransientConnectionException("Too many requests waiting for a database connection");
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.config;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Puts a BoundedDataSource and a TimingDataSource in front of the Hikari
+ * pool configured with spring.datasource.hikari.*. Every service gets
+ * the timing one, so connection acquisition time includes the wait for
+ * a connection of the pool.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    public static BeanPostProcessor boundedDataSourcePostProcessor(ObjectProvider<MeterRegistry> meterRegistry,
+            ObjectProvider<QueryStats> queryStats,
+            @Value("${microblog.datasource.max-waiting:100}") int maxWaiting) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource hikari) {
+                    return new TimingDataSource(new BoundedDataSource(hikari, maxWaiting, meterRegistry.getObject()),
+                            queryStats.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+
+}
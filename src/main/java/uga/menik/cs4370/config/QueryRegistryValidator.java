@@ -0,0 +1,148 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.config;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.mysql.cj.conf.PropertyKey;
+import com.mysql.cj.jdbc.JdbcConnection;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryRegistry.NamedQuery;
+import uga.menik.cs4370.utility.QueryScope;
+
+/**
+ * Prepares every query of QueryRegistry once at startup, list queries
+ * with a list of one. With useServerPrepStmts the server parses each
+ * statement, so a query that names a missing table or column, or does
+ * not parse, stops the application before it serves requests. The
+ * parameter count the database reports must match the placeholders.
+ * Runs after SchemaMigrator, so the queries see the migrated schema.
+ * If the database cannot be reached the check is skipped.
+ *
+ * On MySQL it also reads prepStmtCacheSize, the number of statements
+ * Connector/J keeps prepared per connection. The driver does not publish
+ * its cache hits, but a text is only prepared once as long as all texts
+ * in use fit in the cache. They are compared every query stats log
+ * interval and a warning is logged when they no longer fit.
+ *
+ * Metrics:
+ *   microblog.queries.registry.expansions{result=reused|built}  list query lookups that
+ *                                                               found the expanded text or
+ *                                                               built it, not statement cache hits
+ *   microblog.queries.registry.texts                            distinct SQL texts in use
+ *   microblog.queries.statement.cache.size                      prepStmtCacheSize, 0 if unknown
+ */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
+@Component
+@DependsOn("schemaMigrator")
+public class QueryRegistryValidator implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryRegistryValidator.class);
+
+    private final DataSource dataSource;
+
+    // Statements the driver keeps prepared per connection, 0 if unknown.
+    private volatile int statementCacheSize;
+    // Text count of the last warning, so it is logged once per growth.
+    private int warnedTextCount;
+
+    public QueryRegistryValidator(DataSource dataSource, MeterRegistry meterRegistry) {
+        this.dataSource = dataSource;
+
+        FunctionCounter.builder("microblog.queries.registry.expansions", this, v -> QueryRegistry.getHits())
+                .tag("result", "reused")
+                .register(meterRegistry);
+        FunctionCounter.builder("microblog.queries.registry.expansions", this, v -> QueryRegistry.getMisses())
+                .tag("result", "built")
+                .register(meterRegistry);
+        Gauge.builder("microblog.queries.registry.texts", this, v -> QueryRegistry.getTextCount())
+                .register(meterRegistry);
+        Gauge.builder("microblog.queries.statement.cache.size", this, v -> v.statementCacheSize)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        List<String> invalid = new ArrayList<>();
+        try (QueryScope scope = QueryScope.open("query-registry-validate");
+                Connection conn = dataSource.getConnection()) {
+            statementCacheSize = statementCacheSize(conn);
+            for (NamedQuery query : QueryRegistry.getQueries()) {
+                String sql = query.isList() ? query.expand(1) : query.sql();
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    // The parameter count comes from the parsed statement,
+                    // so asking for it makes sure the server parsed it.
+                    int parameters = pstmt.getParameterMetaData().getParameterCount();
+                    int placeholders = (int) sql.chars().filter(c -> c == '?').count();
+                    if (parameters != placeholders) {
+                        invalid.add(query.name() + " v" + query.version() + ": " + parameters
+                                + " parameters for " + placeholders + " placeholders");
+                    }
+                } catch (SQLException e) {
+                    // Class 42 is a syntax error or an unknown table or column.
+                    if (e.getSQLState() == null || !e.getSQLState().startsWith("42")) {
+                        throw e;
+                    }
+                    invalid.add(query.name() + " v" + query.version() + ": " + e.getMessage());
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Could not check the named queries against the database", e);
+            return;
+        }
+        if (!invalid.isEmpty()) {
+            throw new IllegalStateException("Named queries do not match the schema:\n  "
+                    + String.join("\n  ", invalid));
+        }
+        log.info("Named queries checked against the schema: {}", QueryRegistry.getQueries().size());
+        checkStatementCache();
+    }
+
+    /**
+     * Logs a warning when the SQL texts in use no longer fit in the
+     * driver's statement cache, so statements are prepared again and again.
+     */
+    @Scheduled(initialDelayString = "${microblog.query-stats.log-interval-ms:60000}",
+            fixedDelayString = "${microblog.query-stats.log-interval-ms:60000}")
+    public synchronized void checkStatementCache() {
+        int textCount = QueryRegistry.getTextCount();
+        if (statementCacheSize > 0 && textCount > statementCacheSize && textCount > warnedTextCount) {
+            log.warn("{} distinct SQL texts are in use but prepStmtCacheSize is {}. Raise it in the JDBC URL.",
+                    textCount, statementCacheSize);
+            warnedTextCount = textCount;
+        }
+    }
+
+    private static int statementCacheSize(Connection conn) throws SQLException {
+        if (!conn.isWrapperFor(JdbcConnection.class)) {
+            return 0;
+        }
+        JdbcConnection mysql = conn.unwrap(JdbcConnection.class);
+        if (!mysql.getPropertySet().getBooleanProperty(PropertyKey.cachePrepStmts).getValue()) {
+            return 0;
+        }
+        return mysql.getPropertySet().getIntegerProperty(PropertyKey.prepStmtCacheSize).getValue();
+    }
+
+}
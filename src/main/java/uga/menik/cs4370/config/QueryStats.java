@@ -0,0 +1,149 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.config;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per query name statistics recorded by TimingDataSource: statement
+ * count, rows returned or written, statement latency and connection
+ * acquisition time. Latencies are HdrHistograms in microseconds.
+ *
+ * Totals since startup are served at /actuator/queries of the management
+ * port, see QueryStatsEndpoint. Every
+ * log interval a summary of that interval is printed, slowest p99 first.
+ */
+@Component
+public class QueryStats {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryStats.class);
+
+    /**
+     * One line of the summary. Times are in milliseconds.
+     */
+    public record Summary(String query, long statements, long rows,
+            double p50Ms, double p90Ms, double p99Ms, double maxMs,
+            double acquireP50Ms, double acquireP99Ms) {
+    }
+
+    private static final class Stat {
+        final LongAdder statements = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        // Totals since startup, for the endpoint.
+        final ConcurrentHistogram latency = new ConcurrentHistogram(3);
+        final ConcurrentHistogram acquire = new ConcurrentHistogram(3);
+        // Since the last log summary.
+        final Recorder intervalLatency = new Recorder(3);
+        final Recorder intervalAcquire = new Recorder(3);
+        long intervalStatementsLogged;
+        long intervalRowsLogged;
+    }
+
+    private final ConcurrentHashMap<String, Stat> stats = new ConcurrentHashMap<>();
+
+    private Stat stat(String query) {
+        return stats.computeIfAbsent(query, name -> new Stat());
+    }
+
+    /**
+     * Records one executed statement.
+     */
+    public void recordStatement(String query, long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        Stat stat = stat(query);
+        stat.statements.increment();
+        stat.latency.recordValue(micros);
+        stat.intervalLatency.recordValue(micros);
+    }
+
+    /**
+     * Records rows returned by a query or written by an update.
+     */
+    public void recordRows(String query, long rows) {
+        stat(query).rows.add(rows);
+    }
+
+    /**
+     * Records the time getConnection took.
+     */
+    public void recordAcquire(String query, long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        Stat stat = stat(query);
+        stat.acquire.recordValue(micros);
+        stat.intervalAcquire.recordValue(micros);
+    }
+
+    /**
+     * Returns the totals since startup, slowest p99 first.
+     */
+    public List<Summary> getSummaries() {
+        List<Summary> summaries = new ArrayList<>();
+        stats.forEach((query, stat) -> summaries.add(summarize(query, stat.statements.sum(), stat.rows.sum(),
+                stat.latency.copy(), stat.acquire.copy())));
+        summaries.sort(Comparator.comparingDouble(Summary::p99Ms).reversed());
+        return summaries;
+    }
+
+    /**
+     * Prints the statistics of the last interval.
+     */
+    @Scheduled(initialDelayString = "${microblog.query-stats.log-interval-ms:60000}",
+            fixedDelayString = "${microblog.query-stats.log-interval-ms:60000}")
+    public synchronized void logSummary() {
+        List<Summary> summaries = new ArrayList<>();
+        stats.forEach((query, stat) -> {
+            long statements = stat.statements.sum();
+            long rows = stat.rows.sum();
+            Histogram latency = stat.intervalLatency.getIntervalHistogram();
+            Histogram acquire = stat.intervalAcquire.getIntervalHistogram();
+            if (latency.getTotalCount() > 0) {
+                summaries.add(summarize(query, statements - stat.intervalStatementsLogged,
+                        rows - stat.intervalRowsLogged, latency, acquire));
+            }
+            stat.intervalStatementsLogged = statements;
+            stat.intervalRowsLogged = rows;
+        });
+        if (summaries.isEmpty()) {
+            return;
+        }
+        summaries.sort(Comparator.comparingDouble(Summary::p99Ms).reversed());
+        StringBuilder table = new StringBuilder("Query statistics of the last interval:\n");
+        table.append(String.format("  %-24s %10s %10s %9s %9s %9s %9s %11s%n",
+                "query", "statements", "rows", "p50 ms", "p90 ms", "p99 ms", "max ms", "acq p99 ms"));
+        for (Summary summary : summaries) {
+            table.append(String.format("  %-24s %10d %10d %9.2f %9.2f %9.2f %9.2f %11.2f%n",
+                    summary.query(), summary.statements(), summary.rows(), summary.p50Ms(),
+                    summary.p90Ms(), summary.p99Ms(), summary.maxMs(), summary.acquireP99Ms()));
+        }
+        log.info(table.toString());
+    }
+
+    private static Summary summarize(String query, long statements, long rows, Histogram latency,
+            Histogram acquire) {
+        return new Summary(query, statements, rows,
+                millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(90)),
+                millis(latency.getValueAtPercentile(99)), millis(latency.getMaxValue()),
+                millis(acquire.getValueAtPercentile(50)), millis(acquire.getValueAtPercentile(99)));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+}
@@ -0,0 +1,39 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.config;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.autoconfigure.web.server.ConditionalOnManagementPort;
+import org.springframework.boot.actuate.autoconfigure.web.server.ManagementPortType;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Serves the query statistics of TimingDataSource at /actuator/queries.
+ * The statistics name every query and its latencies, so the endpoint is
+ * only there when the actuator runs on a management port of its own,
+ * which application.properties binds to localhost. On the application
+ * port the login check of the pages does not cover the actuator.
+ */
+@Component
+@Endpoint(id = "queries")
+@ConditionalOnManagementPort(ManagementPortType.DIFFERENT)
+public class QueryStatsEndpoint {
+
+    private final QueryStats queryStats;
+
+    public QueryStatsEndpoint(QueryStats queryStats) {
+        this.queryStats = queryStats;
+    }
+
+    @ReadOperation
+    public List<QueryStats.Summary> queries() {
+        return queryStats.getSummaries();
+    }
+
+}
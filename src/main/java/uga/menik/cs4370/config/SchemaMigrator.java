@@ -0,0 +1,380 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.config;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.mysql.cj.jdbc.JdbcConnection;
+
+import uga.menik.cs4370.utility.QueryScope;
+
+/**
+ * Applies the migrations of migrations.sql that the database has not seen
+ * yet, in order, before the application serves requests. Applied versions
+ * are recorded in the schema_migration table, which is created if missing.
+ *
+ * On MySQL a named lock is held while migrating, so instances started at
+ * the same time by mistake do not run a migration twice. The application
+ * is meant to run as a single instance, see ContentVersionService.
+ * A migration that fails stops the application; the ones before it stay
+ * applied and it is retried at the next start. A migration is recorded as
+ * started before its first statement runs, so a retry runs the statements
+ * it did not finish instead of finding the column its first statement
+ * added and skipping the rest. If the database cannot be reached nothing
+ * is migrated.
+ *
+ * An UPDATE that ends in "WHERE key > ? AND key <= ?" fills a column and
+ * is run once per range of backfillBatchSize primary keys, up to the
+ * largest key at the time it starts. Each range commits on its own, so
+ * the rows of the table are never all locked at once.
+ */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
+@Component
+public class SchemaMigrator implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    /**
+     * Classpath location of the migrations.
+     */
+    public static final String RESOURCE = "migrations.sql";
+
+    private static final String LOCK_NAME = "microblog.schema_migration";
+
+    // First line of a migration's doc comment: "* N - description".
+    private static final Pattern HEADER = Pattern.compile("\\*\\s*(\\d+) - (.*)");
+
+    private static final Pattern ADD_INDEX = Pattern.compile(
+            "ALTER TABLE `?(\\w+)`? ADD INDEX `?(\\w+)`?.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern ADD_COLUMN = Pattern.compile(
+            "ALTER TABLE `?(\\w+)`? ADD COLUMN `?(\\w+)`?.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    // A backfill, run per range of the key column, see backfill.
+    private static final Pattern RANGED_UPDATE = Pattern.compile(
+            "UPDATE `?(\\w+)`?.*WHERE (?:\\w+\\.)?`?(\\w+)`? > \\? AND (?:\\w+\\.)?`?\\2`? <= \\?",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern CREATE_TABLE = Pattern.compile(
+            "CREATE TABLE (?:IF NOT EXISTS )?`?(\\w+)`?.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    // MySQL's online DDL clauses, which other databases do not parse.
+    private static final Pattern ONLINE_DDL = Pattern.compile(
+            ",\\s*(ALGORITHM|LOCK)\\s*=\\s*\\w+", Pattern.CASE_INSENSITIVE);
+
+    private static final String createTableSql = """
+            CREATE TABLE IF NOT EXISTS schema_migration (
+                version INT NOT NULL,
+                description VARCHAR(255) NOT NULL,
+                appliedAt DATETIME NULL,
+                PRIMARY KEY (version)
+            )
+            """;
+
+    // appliedAt is null while a migration runs, or after it stopped part way.
+    private static final String appliedSql = "SELECT version, appliedAt FROM schema_migration";
+
+    private static final String recordSql =
+            "INSERT INTO schema_migration (version, description, appliedAt) VALUES (?, ?, ?)";
+
+    private static final String finishSql = "UPDATE schema_migration SET appliedAt = ? WHERE version = ?";
+
+    /**
+     * One migration of migrations.sql, with its statements in order.
+     */
+    public record Migration(int version, String description, List<String> statements) {
+    }
+
+    private final DataSource dataSource;
+
+    // How long to wait for another instance that is migrating.
+    private final int lockTimeoutSeconds;
+
+    // Primary keys per range of a backfill.
+    private final int backfillBatchSize;
+
+    public SchemaMigrator(DataSource dataSource,
+            @Value("${microblog.migrations.lock-timeout-seconds:600}") int lockTimeoutSeconds,
+            @Value("${microblog.migrations.backfill-batch-size:1000}") int backfillBatchSize) {
+        this.dataSource = dataSource;
+        this.lockTimeoutSeconds = lockTimeoutSeconds;
+        this.backfillBatchSize = backfillBatchSize;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        List<Migration> migrations = load();
+        try (QueryScope scope = QueryScope.open("schema-migrate");
+                Connection conn = dataSource.getConnection()) {
+            boolean isMySql = conn.isWrapperFor(JdbcConnection.class);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(createTableSql);
+            }
+            if (isMySql && !namedLock(conn, "SELECT GET_LOCK(?, " + lockTimeoutSeconds + ")")) {
+                throw new IllegalStateException("Another instance kept migrating the schema for more than "
+                        + lockTimeoutSeconds + " seconds");
+            }
+            try {
+                migrate(conn, migrations, isMySql);
+            } finally {
+                if (isMySql) {
+                    namedLock(conn, "SELECT RELEASE_LOCK(?)");
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Could not migrate the schema", e);
+        }
+    }
+
+    private void migrate(Connection conn, List<Migration> migrations, boolean isMySql) throws SQLException {
+        Set<Integer> applied = new HashSet<>();
+        Set<Integer> started = new HashSet<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(appliedSql);
+                ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                (rs.getObject(2) == null ? started : applied).add(rs.getInt(1));
+            }
+        }
+
+        int count = 0;
+        for (Migration migration : migrations) {
+            if (applied.contains(migration.version())) {
+                continue;
+            }
+            count++;
+            boolean isResumed = started.contains(migration.version());
+            if (!isResumed && isInPlace(conn, migration.statements().get(0))) {
+                record(conn, migration, LocalDateTime.now().withNano(0));
+                log.info("Migration {} is already in place: {}", migration.version(), migration.description());
+                continue;
+            }
+            if (!isResumed) {
+                record(conn, migration, null);
+            }
+            long start = System.nanoTime();
+            for (String statement : migration.statements()) {
+                // Only a resumed migration finds some of its own changes.
+                if (isResumed && isInPlace(conn, statement)) {
+                    continue;
+                }
+                String sql = isMySql ? statement : ONLINE_DDL.matcher(statement).replaceAll("");
+                Matcher ranged = RANGED_UPDATE.matcher(sql);
+                try {
+                    if (ranged.matches()) {
+                        backfill(conn, sql, ranged.group(1), ranged.group(2));
+                    } else {
+                        try (Statement stmt = conn.createStatement()) {
+                            stmt.execute(sql);
+                        }
+                    }
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Migration " + migration.version() + " failed: "
+                            + migration.description(), e);
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(finishSql)) {
+                pstmt.setObject(1, LocalDateTime.now().withNano(0));
+                pstmt.setInt(2, migration.version());
+                pstmt.executeUpdate();
+            }
+            log.info("Migration {} {} in {} ms: {}", migration.version(), isResumed ? "resumed and applied" : "applied",
+                    (System.nanoTime() - start) / 1000000, migration.description());
+        }
+        log.info("Schema migrations: {} new, {} in total", count, migrations.size());
+    }
+
+    // Runs a ranged UPDATE over the keys of the table that exist when it
+    // starts. Rows added later are written by the new code already.
+    private void backfill(Connection conn, String sql, String table, String key) throws SQLException {
+        long maxKey = 0;
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT MAX(" + key + ") FROM " + table)) {
+            if (rs.next()) {
+                maxKey = rs.getLong(1);
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (long low = 0; low < maxKey; low += backfillBatchSize) {
+                pstmt.setLong(1, low);
+                pstmt.setLong(2, low + backfillBatchSize);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    private static void record(Connection conn, Migration migration, LocalDateTime appliedAt) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(recordSql)) {
+            pstmt.setInt(1, migration.version());
+            pstmt.setString(2, migration.description());
+            pstmt.setObject(3, appliedAt);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // True if the statement adds a column or an index, or creates a table,
+    // that exists already.
+    private static boolean isInPlace(Connection conn, String statement) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        Matcher matcher = ADD_INDEX.matcher(statement);
+        if (matcher.matches()) {
+            for (String table : spellings(matcher.group(1))) {
+                try (ResultSet rs = metaData.getIndexInfo(conn.getCatalog(), conn.getSchema(), table, false, true)) {
+                    while (rs.next()) {
+                        if (matcher.group(2).equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+        matcher = ADD_COLUMN.matcher(statement);
+        if (matcher.matches()) {
+            for (String table : spellings(matcher.group(1))) {
+                for (String column : spellings(matcher.group(2))) {
+                    try (ResultSet rs = metaData.getColumns(conn.getCatalog(), conn.getSchema(), table, column)) {
+                        if (rs.next()) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+        matcher = CREATE_TABLE.matcher(statement);
+        if (matcher.matches()) {
+            for (String table : spellings(matcher.group(1))) {
+                try (ResultSet rs = metaData.getTables(conn.getCatalog(), conn.getSchema(), table, null)) {
+                    if (rs.next()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Metadata lookups match names exactly, and some databases fold them.
+    private static String[] spellings(String name) {
+        return new String[] { name, name.toLowerCase(), name.toUpperCase() };
+    }
+
+    private static boolean namedLock(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, LOCK_NAME);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the migrations of migrations.sql, in order.
+     */
+    public static List<Migration> load() {
+        try (InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException(RESOURCE + " is not on the classpath");
+            }
+            return parse(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Same layout as queries.sql, see QueryRegistry, except that a
+    // migration runs until the next comment and may have several statements.
+    private static List<Migration> parse(BufferedReader reader) throws IOException {
+        List<Migration> migrations = new ArrayList<>();
+        Matcher header = null;
+        List<String> statements = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("/*")) {
+                if (header != null) {
+                    migrations.add(toMigration(migrations, header, statements, sql));
+                    statements = new ArrayList<>();
+                }
+                boolean isMigration = trimmed.equals("/**");
+                String first = null;
+                while ((line = reader.readLine()) != null && !line.trim().equals("*/")) {
+                    if (first == null) {
+                        first = line.trim();
+                    }
+                }
+                header = null;
+                if (isMigration) {
+                    header = HEADER.matcher(first == null ? "" : first);
+                    if (!header.matches()) {
+                        throw new IllegalStateException("Bad migration header in " + RESOURCE + ": " + first);
+                    }
+                }
+                continue;
+            }
+            if (trimmed.isEmpty() && sql.length() == 0) {
+                continue;
+            }
+            if (header == null) {
+                throw new IllegalStateException("Unexpected line in " + RESOURCE + ": " + trimmed);
+            }
+            sql.append(line).append('\n');
+            if (trimmed.endsWith(";")) {
+                String text = sql.toString().trim();
+                statements.add(text.substring(0, text.length() - 1));
+                sql.setLength(0);
+            }
+        }
+        if (header != null) {
+            migrations.add(toMigration(migrations, header, statements, sql));
+        }
+        return migrations;
+    }
+
+    private static Migration toMigration(List<Migration> migrations, Matcher header, List<String> statements,
+            StringBuilder sql) {
+        int version = Integer.parseInt(header.group(1));
+        if (sql.length() > 0) {
+            throw new IllegalStateException("Migration " + version + " does not end with a semicolon");
+        }
+        if (statements.isEmpty()) {
+            throw new IllegalStateException("Migration " + version + " has no statements");
+        }
+        if (!migrations.isEmpty() && migrations.get(migrations.size() - 1).version() >= version) {
+            throw new IllegalStateException("Migration " + version + " is out of order in " + RESOURCE);
+        }
+        return new Migration(version, header.group(2), List.copyOf(statements));
+    }
+
+}
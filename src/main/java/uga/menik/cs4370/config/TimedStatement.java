@@ -0,0 +1,398 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.config;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+import com.mysql.cj.protocol.Resultset;
+import com.mysql.cj.result.RowList;
+
+import uga.menik.cs4370.utility.QueryScope;
+
+/**
+ * A Statement of TimingDataSource. The execute methods are timed and
+ * recorded in QueryStats under the name of the current QueryScope, along
+ * with the rows they returned or changed. All other calls go straight to
+ * the driver's statement.
+ */
+class TimedStatement<S extends Statement> implements Statement {
+
+    private final Connection connection;
+    protected final S statement;
+    private final QueryStats queryStats;
+
+    TimedStatement(Connection connection, S statement, QueryStats queryStats) {
+        this.connection = connection;
+        this.statement = statement;
+        this.queryStats = queryStats;
+    }
+
+    /**
+     * Records a statement that started at start, in System.nanoTime, and
+     * returns the query name it was recorded under.
+     */
+    protected final String recordStatement(long start) {
+        String query = QueryScope.current();
+        queryStats.recordStatement(query, System.nanoTime() - start);
+        return query;
+    }
+
+    /**
+     * Records the rows of a result set and returns it. Connector/J reads
+     * the whole result during the execute call and knows its size, so the
+     * result set does not have to be wrapped to count rows as they are
+     * read. Other drivers and streamed results record no rows.
+     */
+    protected final ResultSet recordRows(String query, ResultSet resultSet) throws SQLException {
+        if (resultSet != null && resultSet.isWrapperFor(Resultset.class)) {
+            int rows = resultSet.unwrap(Resultset.class).getRows().size();
+            if (rows != RowList.RESULT_SET_SIZE_UNKNOWN) {
+                queryStats.recordRows(query, rows);
+            }
+        }
+        return resultSet;
+    }
+
+    /**
+     * Records the rows an update changed and returns the count.
+     */
+    protected final long recordRows(String query, long updated) {
+        queryStats.recordRows(query, Math.max(updated, 0));
+        return updated;
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        long start = System.nanoTime();
+        ResultSet resultSet = statement.executeQuery(sql);
+        return recordRows(recordStatement(start), resultSet);
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        long start = System.nanoTime();
+        int updated = statement.executeUpdate(sql);
+        recordRows(recordStatement(start), updated);
+        return updated;
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        long start = System.nanoTime();
+        int updated = statement.executeUpdate(sql, autoGeneratedKeys);
+        recordRows(recordStatement(start), updated);
+        return updated;
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        long start = System.nanoTime();
+        int updated = statement.executeUpdate(sql, columnIndexes);
+        recordRows(recordStatement(start), updated);
+        return updated;
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        long start = System.nanoTime();
+        int updated = statement.executeUpdate(sql, columnNames);
+        recordRows(recordStatement(start), updated);
+        return updated;
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql) throws SQLException {
+        long start = System.nanoTime();
+        long updated = statement.executeLargeUpdate(sql);
+        return recordRows(recordStatement(start), updated);
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        long start = System.nanoTime();
+        long updated = statement.executeLargeUpdate(sql, autoGeneratedKeys);
+        return recordRows(recordStatement(start), updated);
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        long start = System.nanoTime();
+        long updated = statement.executeLargeUpdate(sql, columnIndexes);
+        return recordRows(recordStatement(start), updated);
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+        long start = System.nanoTime();
+        long updated = statement.executeLargeUpdate(sql, columnNames);
+        return recordRows(recordStatement(start), updated);
+    }
+
+    // The rows of execute are recorded when its result set is fetched.
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        long start = System.nanoTime();
+        boolean isResultSet = statement.execute(sql);
+        recordStatement(start);
+        return isResultSet;
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        long start = System.nanoTime();
+        boolean isResultSet = statement.execute(sql, autoGeneratedKeys);
+        recordStatement(start);
+        return isResultSet;
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        long start = System.nanoTime();
+        boolean isResultSet = statement.execute(sql, columnIndexes);
+        recordStatement(start);
+        return isResultSet;
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        long start = System.nanoTime();
+        boolean isResultSet = statement.execute(sql, columnNames);
+        recordStatement(start);
+        return isResultSet;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        long start = System.nanoTime();
+        int[] batch = statement.executeBatch();
+        String query = recordStatement(start);
+        for (int updated : batch) {
+            recordRows(query, updated);
+        }
+        return batch;
+    }
+
+    @Override
+    public long[] executeLargeBatch() throws SQLException {
+        long start = System.nanoTime();
+        long[] batch = statement.executeLargeBatch();
+        String query = recordStatement(start);
+        for (long updated : batch) {
+            recordRows(query, updated);
+        }
+        return batch;
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return recordRows(QueryScope.current(), statement.getResultSet());
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : statement.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || statement.isWrapperFor(iface);
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        statement.addBatch(sql);
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        statement.cancel();
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        statement.clearBatch();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        statement.clearWarnings();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        statement.close();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        statement.closeOnCompletion();
+    }
+
+    @Override
+    public String enquoteIdentifier(String identifier, boolean alwaysQuote) throws SQLException {
+        return statement.enquoteIdentifier(identifier, alwaysQuote);
+    }
+
+    @Override
+    public String enquoteLiteral(String val) throws SQLException {
+        return statement.enquoteLiteral(val);
+    }
+
+    @Override
+    public String enquoteNCharLiteral(String val) throws SQLException {
+        return statement.enquoteNCharLiteral(val);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return statement.getFetchDirection();
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return statement.getFetchSize();
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return statement.getGeneratedKeys();
+    }
+
+    @Override
+    public long getLargeMaxRows() throws SQLException {
+        return statement.getLargeMaxRows();
+    }
+
+    @Override
+    public long getLargeUpdateCount() throws SQLException {
+        return statement.getLargeUpdateCount();
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return statement.getMaxFieldSize();
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return statement.getMaxRows();
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        return statement.getMoreResults();
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        return statement.getMoreResults(current);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return statement.getQueryTimeout();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return statement.getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return statement.getResultSetHoldability();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return statement.getResultSetType();
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        return statement.getUpdateCount();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return statement.getWarnings();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return statement.isCloseOnCompletion();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return statement.isClosed();
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return statement.isPoolable();
+    }
+
+    @Override
+    public boolean isSimpleIdentifier(String identifier) throws SQLException {
+        return statement.isSimpleIdentifier(identifier);
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        statement.setCursorName(name);
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        statement.setEscapeProcessing(enable);
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        statement.setFetchDirection(direction);
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        statement.setFetchSize(rows);
+    }
+
+    @Override
+    public void setLargeMaxRows(long max) throws SQLException {
+        statement.setLargeMaxRows(max);
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        statement.setMaxFieldSize(max);
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        statement.setMaxRows(max);
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        statement.setPoolable(poolable);
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        statement.setQueryTimeout(seconds);
+    }
+
+}
@@ -0,0 +1,54 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import uga.menik.cs4370.utility.QueryScope;
+
+/**
+ * A DataSource that times every statement and connection acquisition and
+ * records them in QueryStats under the name of the current QueryScope.
+ * Latency is the time of the execute call. Connector/J reads the whole
+ * result into memory during executeQuery, so it includes the transfer.
+ * The rows of a query are the size of its result, for updates the
+ * affected row count is recorded. See TimedStatement.
+ *
+ * Connections and statements are wrapped in plain delegating classes and
+ * result sets are not wrapped at all, so reading a row costs nothing
+ * extra.
+ */
+public class TimingDataSource extends DelegatingDataSource {
+
+    private final QueryStats queryStats;
+
+    public TimingDataSource(DataSource targetDataSource, QueryStats queryStats) {
+        super(targetDataSource);
+        this.queryStats = queryStats;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = super.getConnection();
+        queryStats.recordAcquire(QueryScope.current(), System.nanoTime() - start);
+        return new TimedConnection(connection, queryStats);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = super.getConnection(username, password);
+        queryStats.recordAcquire(QueryScope.current(), System.nanoTime() - start);
+        return new TimedConnection(connection, queryStats);
+    }
+
+}
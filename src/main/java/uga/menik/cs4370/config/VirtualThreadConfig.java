@@ -0,0 +1,108 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.config;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Runs each web request on its own virtual thread instead of a Tomcat
+ * worker when microblog.web.virtual-threads=true.
+ * Requests spend most of their time blocked on JDBC, so a virtual thread
+ * frees its carrier while it waits and far more requests can be in
+ * flight on the same cores. BoundedDataSource keeps them from piling
+ * onto the connection pool.
+ *
+ * Virtual threads need JDK 21. The executor is looked up reflectively so
+ * the application still builds and runs on JDK 17, where the property
+ * is ignored and Tomcat keeps its platform worker pool.
+ *
+ * A virtual thread that blocks inside a synchronized block pins its
+ * carrier. Pinning is reported by the JDK as the jdk.VirtualThreadPinned
+ * event, which is streamed into the microblog.virtual-threads.pinned timer.
+ */
+@Configuration
+@ConditionalOnProperty(name = "microblog.web.virtual-threads", havingValue = "true")
+public class VirtualThreadConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadExecutorCustomizer() {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        return protocolHandler -> {
+            if (executor != null) {
+                protocolHandler.setExecutor(executor);
+            }
+        };
+    }
+
+    @Bean
+    public PinnedThreadMonitor pinnedThreadMonitor(MeterRegistry meterRegistry) {
+        return new PinnedThreadMonitor(meterRegistry);
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() or null before JDK 21.
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads need JDK 21 or newer, running on {}. Using platform threads.",
+                    Runtime.version());
+            return null;
+        }
+    }
+
+    /**
+     * Streams jdk.VirtualThreadPinned events into a timer and prints the
+     * frame that pinned the carrier.
+     */
+    static class PinnedThreadMonitor implements InitializingBean, DisposableBean {
+
+        private final Timer pinnedTimer;
+        private final RecordingStream stream = new RecordingStream();
+
+        PinnedThreadMonitor(MeterRegistry meterRegistry) {
+            this.pinnedTimer = Timer.builder("microblog.virtual-threads.pinned")
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public void afterPropertiesSet() {
+            // The JDK only reports pins longer than the threshold.
+            stream.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(20)).withStackTrace();
+            stream.onEvent("jdk.VirtualThreadPinned", event -> {
+                pinnedTimer.record(event.getDuration());
+                if (event.getStackTrace() != null && !event.getStackTrace().getFrames().isEmpty()) {
+                    log.warn("Virtual thread pinned for {} ms at {}.{}", event.getDuration().toMillis(),
+                            event.getStackTrace().getFrames().get(0).getMethod().getType().getName(),
+                            event.getStackTrace().getFrames().get(0).getMethod().getName());
+                }
+            });
+            stream.startAsync();
+        }
+
+        @Override
+        public void destroy() {
+            stream.close();
+        }
+    }
+
+}
@@ -5,10 +5,16 @@ This is a project developed by Dr. Menik to give the students an opportunity to
 */
 package uga.menik.cs4370.config;
 
+import java.time.Duration;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.WebContentInterceptor;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
 
 import uga.menik.cs4370.components.AuthInterceptor;
 
@@ -43,8 +49,36 @@ public class WebConfig implements WebMvcConfigurer {
                 // Exclude login and register paths.
                 .excludePathPatterns("/login")
                 .excludePathPatterns("/register")
+                // Static files do not need the session.
                 .excludePathPatterns("/css/**")
-                .excludePathPatterns("/js/**");
+                .excludePathPatterns("/js/**")
+                .excludePathPatterns("/avatars/**")
+                .excludePathPatterns("/assets/**")
+                .excludePathPatterns("/favicon.ico")
+                .excludePathPatterns("/error");
+
+        // Pages with an ETag (see ContentVersionService). Browsers check
+        // them on every view and shared caches must not keep them, as
+        // they differ per logged in user.
+        WebContentInterceptor revalidate = new WebContentInterceptor();
+        revalidate.addCacheMapping(CacheControl.noCache().cachePrivate(),
+                "/", "/post/*", "/profile", "/profile/*", "/bookmarks");
+        registry.addInterceptor(revalidate);
+    }
+
+    /**
+     * Serves the content hashed assets written by AssetPipeline. Their
+     * URL changes with their content, so browsers and shared caches may
+     * keep them for a year without checking back. A precompressed .gz
+     * copy is sent instead when the browser accepts gzip.
+     */
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        registry.addResourceHandler("/assets/**")
+                .addResourceLocations("classpath:/assets/")
+                .setCacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                .resourceChain(true)
+                .addResolver(new EncodedResourceResolver());
     }
 
 }
@@ -7,13 +7,18 @@ package uga.menik.cs4370.controllers;
 
 import java.util.List;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.beans.factory.annotation.Autowired;
+
+import jakarta.servlet.http.HttpServletResponse;
 import uga.menik.cs4370.models.Post;
 import uga.menik.cs4370.utility.Utility;
+import uga.menik.cs4370.services.ContentVersionService;
 import uga.menik.cs4370.services.UserService;
 
 /**
@@ -30,18 +35,34 @@ import uga.menik.cs4370.services.UserService;
 public class BookmarksController {
 
     private final UserService userService;
+    private final ContentVersionService contentVersionService;
 
     @Autowired
-    public BookmarksController(UserService userService) {
+    public BookmarksController(UserService userService, ContentVersionService contentVersionService) {
         this.userService = userService;
+        this.contentVersionService = contentVersionService;
     }
 
 
     /**
      * /bookmarks URL itself is handled by this.
+     * A repeat view of unchanged bookmarks is answered with
+     * 304 Not Modified before they are read. See ContentVersionService.java.
      */
     @GetMapping
-    public ModelAndView webpage() {
+    public ModelAndView webpage(WebRequest request, HttpServletResponse response) {
+        // Versions are read before the bookmarks themselves. The viewer's
+        // version changes with every bookmark toggle and its flush.
+        String userId = userService.getLoggedInUser().getUserId();
+        int viewerUserId = Integer.parseInt(userId);
+        long listVersion = contentVersionService.getViewerVersion(viewerUserId);
+        long changeCount = contentVersionService.getChangeCount();
+        String pageKey = "bookmarks:" + userId;
+        String etag = contentVersionService.pageTag(pageKey, viewerUserId, listVersion);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+
         // posts_page is a mustache template from src/main/resources/templates.
         // ModelAndView class enables initializing one and populating placeholders
         // in the template using Java objects assigned to named properties.
@@ -50,17 +71,24 @@ public class BookmarksController {
         // Following line populates sample data.
         // You should replace it with actual data from the database.
         try {
-            String userId = userService.getLoggedInUser().getUserId();
             List<Post> posts = userService.getBookmarkedPosts(userId);
 
             if (posts.isEmpty()) {
                 mv.addObject("isNoContent", true);
+                // Also what a failed query returns. It must not replace a
+                // good copy in the browser cache.
+                response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
             } else {
                 mv.addObject("posts", posts);
+                etag = contentVersionService.rememberPage(pageKey, viewerUserId, listVersion, changeCount, posts);
+                if (etag != null) {
+                    response.setHeader(HttpHeaders.ETAG, etag);
+                }
             }
 
         } catch (Exception e) {
             mv.addObject("errorMessage", "Failed to load bookmarked posts.");
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
         }
         // If an error occured, you can set the following property with the
         // error message to show the error message to the user.
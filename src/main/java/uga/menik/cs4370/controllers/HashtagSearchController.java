@@ -5,18 +5,14 @@ This is a project developed by Dr. Menik to give the students an opportunity to
 */
 package uga.menik.cs4370.controllers;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
-
-import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -24,24 +20,36 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.ModelAndView;
 
 import uga.menik.cs4370.models.Post;
-import uga.menik.cs4370.models.User;
+import uga.menik.cs4370.services.HashtagIndexService;
+import uga.menik.cs4370.services.PostService;
 import uga.menik.cs4370.services.UserService;
-import uga.menik.cs4370.utility.Utility;
+import uga.menik.cs4370.utility.HashtagParser;
+import uga.menik.cs4370.utility.QueryScope;
 
 /**
  * Handles /hashtagsearch URL and possibly others.
  * At this point no other URLs.
  */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
 @Controller
 @RequestMapping("/hashtagsearch")
 public class HashtagSearchController {
 
+    private static final Logger log = LoggerFactory.getLogger(HashtagSearchController.class);
+
 
-    private final DataSource dataSource;
     private final UserService userService;
-    public HashtagSearchController(DataSource dataSource, UserService userService) {
-        this.dataSource = dataSource;
+    private final HashtagIndexService hashtagIndexService;
+    private final PostService postService;
+    // Number of posts shown per search result page.
+    private final int pageSize;
+    public HashtagSearchController(UserService userService, HashtagIndexService hashtagIndexService,
+            PostService postService, @Value("${microblog.feed.page-size:20}") int pageSize) {
         this.userService = userService;
+        this.hashtagIndexService = hashtagIndexService;
+        this.postService = postService;
+        this.pageSize = pageSize;
     }
 
     /**
@@ -50,82 +58,48 @@ public class HashtagSearchController {
      * In the browser the URL will look something like below:
      * http://localhost:8081/hashtagsearch?hashtags=%23amazing+%23fireworks
      * Note: the value of the hashtags is URL encoded.
+     * Results are paged newest first. The optional before parameter holds
+     * the id of the last post on the previous page.
      */
     @GetMapping
-    public ModelAndView webpage(@RequestParam(name = "hashtags") String hashtags) {
-        System.out.println("User is searching: " + hashtags);
+    public ModelAndView webpage(@RequestParam(name = "hashtags") String hashtags,
+            @RequestParam(name = "before", required = false) Integer before) {
+        log.debug("Hashtag search hashtags={} before={}", hashtags, before);
 
         // See notes on ModelAndView in BookmarksController.java.
         ModelAndView mv = new ModelAndView("posts_page");
 
-        // Following line populates sample data.
-        // You should replace it with actual data from the database.
-
         // Implemented by Jackson
         // Will use a REGEX to split the string of hashtags into individual tags in an array
-        String regex ="[\\s]";
-        String[] hashtagArray = hashtags.split(regex);
-        for(int j = 0; j <hashtagArray.length; j++) {
-            hashtagArray[j] = hashtagArray[j].substring(1);
+        // Tags are normalized the same way as when posts are created. See HashtagParser.java
+        String regex ="[\\s]+";
+        List<String> hashtagList = Arrays.stream(hashtags.trim().split(regex))
+                .map(HashtagParser::normalize)
+                .filter(hashtag -> !hashtag.isEmpty())
+                .distinct()
+                .toList();
+
+        // The posts that carry all searched hashtags are found by intersecting
+        // the posting lists of the in memory index. See HashtagIndexService.java
+        // Only the posts of the requested page are read from the database.
+        int beforePostId = before != null ? before : Integer.MAX_VALUE;
+        List<Integer> postIds = hashtagIndexService.search(hashtagList, beforePostId, pageSize + 1);
+        boolean hasOlderPage = postIds.size() > pageSize;
+        if (hasOlderPage) {
+            postIds = postIds.subList(0, pageSize);
         }
-        // Creating a dynamic SQL query to get posts that contain all hashtags that were searched
-        //
-        String placeholders = String.join(", ", Collections.nCopies(hashtagArray.length, "?"));
-        String hashtagQuery = """
-                SELECT p.postId, p.userId, p.postDate, p.postText, u.username, u.firstName, u.lastName,
-                    (SELECT COUNT(*) FROM heart h WHERE h.postId = p.postId) AS heartsCount,
-                    (SELECT COUNT(*) FROM comment c WHERE c.postId = p.postId) AS commentsCount,
-                    EXISTS (SELECT 1 FROM heart WHERE heart.postId = p.postId AND heart.userId = ?) AS isHearted,
-                    EXISTS (SELECT 1 FROM bookmark WHERE bookmark.postId = p.postId AND bookmark.userId = ?) AS isBookmarked
-                FROM post p
-                JOIN `user` u ON p.userId = u.userId
-                JOIN hashtag h ON p.postId = h.postId
-                WHERE h.hashTag IN (""" + placeholders +") GROUP BY p.postId HAVING COUNT(DISTINCT h.hashtag) = ? ORDER BY p.postDate DESC";
-        
-       
-
-        // List for holding the posts that meet the criteria
-        List<Post> posts = new ArrayList<Post>();
 
         String userId = userService.getLoggedInUser().getUserId();
-
-        try (Connection conn = dataSource.getConnection();
-            PreparedStatement pstmt = conn.prepareStatement(hashtagQuery)) {
-                
-                int index = 1;
-                pstmt.setString(index++, userId);
-                pstmt.setString(index++, userId);
-                for (String hashtag : hashtagArray) {
-                    pstmt.setString(index++, hashtag);
-                }
-                pstmt.setInt(index, hashtagArray.length);
-
-                ResultSet rs = pstmt.executeQuery();
-                while (rs.next()) {
-                    // This part needs to be fixed
-                    User user = new User(
-                        rs.getString("userId"), 
-                        rs.getString("username"), 
-                        rs.getString("firstName"), 
-                        rs.getString("lastName")
-                    );
-
-                    Post post = new Post( 
-                        rs.getString("postId"),
-                        rs.getString("postText"),
-                        rs.getString("postDate"),
-                        user,
-                        rs.getInt("heartsCount"),
-                        rs.getInt("commentsCount"),
-                        rs.getBoolean("isHearted"),
-                        rs.getBoolean("isBookmarked")
-                    );
-                    posts.add(post);
-                }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        } // try-catch
+        List<Post> posts;
+        try (QueryScope scope = QueryScope.open("hashtag-search")) {
+            posts = postService.getPostsByIds(postIds, userId);
+        }
         mv.addObject("posts", posts);
+        if (hasOlderPage) {
+            mv.addObject("olderPostsUrl", "/hashtagsearch?hashtags="
+                    + URLEncoder.encode(hashtags, StandardCharsets.UTF_8)
+                    + "&before=" + postIds.get(postIds.size() - 1));
+        }
 
         // If an error occured, you can set the following property with the
         // error message to show the error message to the user.
@@ -134,7 +108,9 @@ public class HashtagSearchController {
 
         // Enable the following line if you want to show no content message.
         // Do that if your content list is empty.
-        // mv.addObject("isNoContent", true);
+        if (posts.isEmpty()) {
+            mv.addObject("isNoContent", true);
+        }
         
         return mv;
     }
@@ -7,48 +7,84 @@ package uga.menik.cs4370.controllers;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.security.Timestamp;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.sql.DataSource;
 
 
 import java.sql.Connection;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.ModelAndView;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletResponse;
+
+import uga.menik.cs4370.models.FeedCursor;
+import uga.menik.cs4370.models.FeedPage;
 import uga.menik.cs4370.models.Post;
+import uga.menik.cs4370.utility.HashtagParser;
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
 import uga.menik.cs4370.utility.Utility;
+import uga.menik.cs4370.services.ContentVersionService;
+import uga.menik.cs4370.services.HashtagIndexService;
+import uga.menik.cs4370.services.PeopleService;
+import uga.menik.cs4370.services.TimelineService;
 import uga.menik.cs4370.services.UserService;
 import uga.menik.cs4370.models.User;
 /**
  * This controller handles the home page and some of it's sub URLs.
  */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
 @Controller
 @RequestMapping
 public class HomeController {
 
+    private static final Logger log = LoggerFactory.getLogger(HomeController.class);
+
     // setup datasource
     private final DataSource dataSource;
     private final UserService userService;
-    public HomeController(DataSource dataSource, UserService userService) {
+    private final TimelineService timelineService;
+    private final HashtagIndexService hashtagIndexService;
+    private final PeopleService peopleService;
+    private final ContentVersionService contentVersionService;
+    // Number of posts shown per home feed page.
+    private final int pageSize;
+    // Database round trips spent per created post.
+    private final DistributionSummary createPostRoundTrips;
+    public HomeController(DataSource dataSource, UserService userService, TimelineService timelineService,
+            HashtagIndexService hashtagIndexService, PeopleService peopleService,
+            ContentVersionService contentVersionService, MeterRegistry meterRegistry,
+            @Value("${microblog.feed.page-size:20}") int pageSize) {
         this.dataSource = dataSource;
         this.userService = userService;
+        this.timelineService = timelineService;
+        this.hashtagIndexService = hashtagIndexService;
+        this.peopleService = peopleService;
+        this.contentVersionService = contentVersionService;
+        this.pageSize = pageSize;
+        this.createPostRoundTrips = DistributionSummary.builder("microblog.post.create.round.trips")
+                .description("Database round trips per created post")
+                .register(meterRegistry);
     }
     /**
      * This is the specific function that handles the root URL itself.
@@ -56,21 +92,49 @@ public class HomeController {
      * Note that this accepts a URL parameter called error.
      * The value to this parameter can be shown to the user as an error message.
      * See notes in HashtagSearchController.java regarding URL parameters.
+     *
+     * A repeat view of an unchanged feed page is answered with
+     * 304 Not Modified before the feed is read. See ContentVersionService.java.
      */
     @GetMapping
-    public ModelAndView webpage(@RequestParam(name = "error", required = false) String error) {
+    public ModelAndView webpage(@RequestParam(name = "error", required = false) String error,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            WebRequest request, HttpServletResponse response) {
         // get current User
         User user = userService.getLoggedInUser();
-        
+
+        // Versions are read before the feed itself.
+        int userId = Integer.parseInt(user.getUserId());
+        long feedVersion = timelineService.getFeedVersion(userId);
+        long changeCount = contentVersionService.getChangeCount();
+        String pageKey = "home:" + userId + ":" + cursor;
+        String etag = contentVersionService.pageTag(pageKey, userId, feedVersion);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+
         // See notes on ModelAndView in BookmarksController.java.
         ModelAndView mv = new ModelAndView("home_page");
 
         // Following line populates sample data.
         // You should replace it with actual data from the database.
         //List<Post> posts = Utility.createSamplePostsListWithoutComments();
-        List<Post> posts = getFollowedUsersPosts(user.getUserId());
+        FeedPage page = getFollowedUsersPosts(user.getUserId(), FeedCursor.decode(cursor), pageSize);
 
-        mv.addObject("posts", posts);
+        mv.addObject("posts", page.getPosts());
+        if (page.getPosts().isEmpty()) {
+            // Also what a failed feed query returns. It must not replace
+            // a good copy in the browser cache.
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        } else {
+            etag = contentVersionService.rememberPage(pageKey, userId, feedVersion, changeCount, page.getPosts());
+            if (etag != null) {
+                response.setHeader(HttpHeaders.ETAG, etag);
+            }
+        }
+        if (page.getNextCursor() != null) {
+            mv.addObject("olderPostsUrl", "/?cursor=" + page.getNextCursor().encode());
+        }
 
         // If an error occured, you can set the following property with the
         // error message to show the error message to the user.
@@ -95,7 +159,7 @@ public class HomeController {
      */
     @PostMapping("/createpost")
     public String createPost(@RequestParam(name = "posttext") String postText) {
-        System.out.println("User is creating post: " + postText);
+        log.debug("Create post length={}", postText.length());
 
         // Redirect the user if the post creation is a success.
         // return "redirect:/";
@@ -103,48 +167,81 @@ public class HomeController {
         // Implementation by Jackson
         User user = userService.getLoggedInUser();
         // Queries
-        String insertQuery = "INSERT INTO post (userId, postDate, postText) VALUES (?, ?, ?)";
-        String fetchPostIdQuery = "SELECT LAST_INSERT_ID()";
-        String insertHashtagQuery = "INSERT INTO hashtag (hashTag, postId) VALUES (?, ?)";
+        String insertQuery = QueryRegistry.get("post-insert");
+        String insertHashtagQuery = QueryRegistry.get("hashtag-insert");
+        // Distinct, normalized tags. Duplicates would violate the hashtag primary key.
+        List<String> hashtags = extractHashtags(postText);
+        // postDate is the display string, createdAt is the sort key.
+        LocalDateTime createdAt = LocalDateTime.now().withNano(0);
+        String uploadTime = createdAt.format(DateTimeFormatter.ofPattern("MMM dd, yyyy, hh:mm a"));
+        // Counts the calls below that go to the database server.
+        int roundTrips = 0;
+        // Id of the committed post, -1 if the post was not created.
+        int postId = -1;
         // Connect to database
-        try (Connection conn = dataSource.getConnection();
-            // Create a prepared statement to send to DB
-            PreparedStatement pstmt = conn.prepareStatement(insertQuery)) {
+        try (QueryScope scope = QueryScope.open("create-post");
+                Connection conn = dataSource.getConnection()) {
+            // The post and all of its hashtags commit together.
+            conn.setAutoCommit(false);
+            roundTrips++;
+            // Create a prepared statement to send to DB.
+            // The generated post id comes back with the insert itself.
+            try (PreparedStatement pstmt = conn.prepareStatement(insertQuery, Statement.RETURN_GENERATED_KEYS)) {
                 pstmt.setString(1, user.getUserId());
-                String uploadTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("MMM dd, yyyy, hh:mm a"));
                 pstmt.setString(2, uploadTime);
                 pstmt.setString(3, postText);
-                int rowsAffected = pstmt.executeUpdate();
-                // If upload successful then enter if
-                if (rowsAffected > 0) {
-                    // Get the post ID from the new post so we can make FK to hashtag
-                    int postId = -1;
-                    try (PreparedStatement idStmt = conn.prepareStatement(fetchPostIdQuery)) {
-                        ResultSet rs = idStmt.executeQuery();
-                        if (rs.next()) {
-                            postId = rs.getInt(1);
-                        }
+                pstmt.setObject(4, createdAt);
+                pstmt.executeUpdate();
+                roundTrips++;
+
+                // Get the post ID from the new post so we can make FK to hashtag
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        postId = keys.getInt(1);
                     }
-                    if (postId > 0) {
-                         // Extract the hashtags and then put them into the hashtag table
-                        List<String> hashtags = extractHashtags(postText);
+                }
+                if (postId > 0) {
+                    // Put the hashtags into the hashtag table with one batch.
+                    // With rewriteBatchedStatements the driver sends it as one multi row insert.
+                    if (!hashtags.isEmpty()) {
                         try (PreparedStatement hashtagStmt = conn.prepareStatement(insertHashtagQuery)) {
                             for (String hashtag : hashtags) {
                                 hashtagStmt.setString(1, hashtag);
                                 hashtagStmt.setInt(2, postId);
-                                hashtagStmt.executeUpdate();
+                                hashtagStmt.addBatch();
                             }
-                        } catch (SQLException e) {
-                            e.printStackTrace();
+                            hashtagStmt.executeBatch();
+                            roundTrips++;
                         }
-                        return "redirect:/";
                     }
-                   
+                    // Keeps the people page ordering current.
+                    peopleService.touchLastActive(conn, user.getUserId(), createdAt);
+                    roundTrips++;
+                    conn.commit();
+                    roundTrips++;
+                    createPostRoundTrips.record(roundTrips);
+                } else {
+                    conn.rollback();
                 }
-                
             } catch (SQLException e) {
-                e.printStackTrace();
-            };
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            log.error("Failed to create a post", e);
+            postId = -1;
+        }
+
+        if (postId > 0) {
+            int authorUserId = Integer.parseInt(user.getUserId());
+            contentVersionService.authorPosted(authorUserId);
+            // Push the post to the followers' timelines and the hashtag index.
+            // Runs after the connection above is back in the pool, as the
+            // fan-out takes a connection of its own.
+            timelineService.onPostCreated(authorUserId, postId, createdAt);
+            hashtagIndexService.addPost(postId, hashtags);
+            return "redirect:/";
+        }
         // Redirect the user with an error message if there was an error.
         String message = URLEncoder.encode("Failed to create the post. Please try again.",
                 StandardCharsets.UTF_8);
@@ -154,68 +251,20 @@ public class HomeController {
     /**
      * Function to extract hashtags from the postText
      * @param postText - The text from the post to be parsed through
-     * @return Array list containing all the hashtag text
+     * @return List containing the distinct, normalized hashtag text. See HashtagParser.java
      */
     public List<String> extractHashtags(String postText) {
-        Pattern hashtagPat = Pattern.compile("#(\\S+)");
-        Matcher mat = hashtagPat.matcher(postText);
-        List<String> hashtags = new ArrayList<String>();
-        while (mat.find()) {
-            //System.out.println(mat.group(1));
-            hashtags.add(mat.group(1));
-        }
-        return hashtags;
+        return HashtagParser.extract(postText);
     }
 
-    public List<Post> getFollowedUsersPosts(String userId) {
-        List<Post> posts = new ArrayList<Post>();
-
-        String query = """
-                SELECT p.postId, p.postText, p.postDate, u.userId, u.username, u.firstName, u.lastName,
-                    (SELECT COUNT(*) FROM heart h WHERE h.postId = p.postId) AS heartsCount,
-                    (SELECT COUNT(*) FROM comment c WHERE c.postId = p.postId) AS commentsCount,
-                    EXISTS (SELECT 1 FROM heart h WHERE h.postId = p.postId AND h.userId = ?) AS isHearted,
-                    EXISTS (SELECT 1 FROM bookmark b WHERE b.postId = p.postId AND b.userId = ?) AS isBookmarked
-                FROM post p
-                JOIN follow f ON p.userId = f.followeeUserId
-                JOIN user u ON p.userId = u.userId
-                WHERE f.followerUserId = ?
-                ORDER BY p.postDate DESC
-                """;
-
-                try (Connection conn = dataSource.getConnection();
-                    PreparedStatement pstmt = conn.prepareStatement(query)) {
-                        pstmt.setString(1, userId);
-                        pstmt.setString(2, userId);
-                        pstmt.setString(3, userId);
-
-                        ResultSet rs = pstmt.executeQuery();
-
-                        while (rs.next()) {
-                            User postUser = new User(
-                                rs.getString("userId"), 
-                                rs.getString("firstName"), 
-                                rs.getString("lastName")
-                            );
-
-                            Post post = new Post( 
-                                rs.getString("postId"),
-                                rs.getString("postText"),
-                                rs.getString("postDate"),
-                                postUser,
-                                rs.getInt("heartsCount"),
-                                rs.getInt("commentsCount"),
-                                rs.getBoolean("isHearted"),
-                                rs.getBoolean("isBookmarked")
-                            );
-                            posts.add(post);
-
-                        }
-                    } catch (SQLException e) {
-                        e.printStackTrace();
-                    }
-
-        return posts;
+    /**
+     * Returns one page of posts made by the users that userId follows,
+     * newest first, starting right after the given cursor.
+     * The page is read from the user's precomputed timeline.
+     * See TimelineService.java.
+     */
+    public FeedPage getFollowedUsersPosts(String userId, FeedCursor cursor, int limit) {
+        return timelineService.getHomeFeed(userId, cursor, limit);
     }
 
 }
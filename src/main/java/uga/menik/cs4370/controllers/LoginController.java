@@ -8,6 +8,7 @@ package uga.menik.cs4370.controllers;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -77,6 +78,11 @@ public class LoginController {
             String message = URLEncoder.encode("Authentication failed. Please try again.",
                     StandardCharsets.UTF_8);
             return "redirect:/login?error=" + message;
+        } catch (RejectedExecutionException e) {
+            // Too many logins are being checked right now.
+            String message = URLEncoder.encode("The server is busy. Please try again in a moment.",
+                    StandardCharsets.UTF_8);
+            return "redirect:/login?error=" + message;
         }
 
         if (isAuthenticated) {
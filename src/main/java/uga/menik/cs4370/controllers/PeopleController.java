@@ -1,4 +1,3 @@
-// pushing works
 /**
 Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
 
@@ -12,41 +11,80 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.ModelAndView;
 
 import uga.menik.cs4370.models.FollowableUser;
+import uga.menik.cs4370.models.PeopleCursor;
+import uga.menik.cs4370.models.PeoplePage;
+import uga.menik.cs4370.models.ToggleState;
 import uga.menik.cs4370.models.User;
+import uga.menik.cs4370.services.FollowGraphService;
+import uga.menik.cs4370.services.FollowSuggestionService;
 import uga.menik.cs4370.services.PeopleService;
+import uga.menik.cs4370.services.QueryFanOutService;
+import uga.menik.cs4370.services.TimelineService;
 import uga.menik.cs4370.services.UserService;
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
 import uga.menik.cs4370.utility.Utility;
 
 /**
  * Handles /people URL and its sub URL paths.
  */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
 @Controller
 @RequestMapping("/people")
 public class PeopleController {
 
+    private static final Logger log = LoggerFactory.getLogger(PeopleController.class);
+
     // Inject UserService and PeopleService instances.
     // See LoginController.java to see how to do this.
     // Hint: Add a constructor with @Autowired annotation.
     private final UserService userService;
     private final PeopleService peopleService;
+    private final TimelineService timelineService;
+    private final FollowGraphService followGraphService;
+    private final FollowSuggestionService followSuggestionService;
+    private final QueryFanOutService queryFanOutService;
     private final DataSource dataSource;
-
-    public PeopleController (UserService userService, PeopleService peopleService, DataSource dataSource) {
+    // Number of users per people page.
+    private final int pageSize;
+    // Number of suggested users above the first page.
+    private final int suggestionsShown;
+
+    public PeopleController (UserService userService, PeopleService peopleService,
+            TimelineService timelineService, FollowGraphService followGraphService,
+            FollowSuggestionService followSuggestionService, QueryFanOutService queryFanOutService,
+            DataSource dataSource,
+            @Value("${microblog.people.page-size:50}") int pageSize,
+            @Value("${microblog.people.suggestions-shown:10}") int suggestionsShown) {
         this.userService = userService;
         this.peopleService = peopleService;
+        this.timelineService = timelineService;
+        this.followGraphService = followGraphService;
+        this.followSuggestionService = followSuggestionService;
+        this.queryFanOutService = queryFanOutService;
         this.dataSource = dataSource;
+        this.pageSize = pageSize;
+        this.suggestionsShown = suggestionsShown;
     }
     /**
      * Serves the /people web page.
@@ -56,18 +94,41 @@ public class PeopleController {
      * See notes in HashtagSearchController.java regarding URL parameters.
      */
     @GetMapping
-    public ModelAndView webpage(@RequestParam(name = "error", required = false) String error) {
+    public ModelAndView webpage(@RequestParam(name = "error", required = false) String error,
+            @RequestParam(name = "q", required = false) String namePrefix,
+            @RequestParam(name = "cursor", required = false) String cursor) {
         // See notes on ModelAndView in BookmarksController.java.
         ModelAndView mv = new ModelAndView("people_page");
 
-        // Following line populates sample data.
-        // You should replace it with actual data from the database.
-        // Use the PeopleService instance to find followable users.
+        // One page of the other users, optionally filtered by a name prefix.
         // Use UserService to access logged in userId to exclude.
         User loggedInUser = userService.getLoggedInUser();
         String userId = loggedInUser.getUserId();
-        List<FollowableUser> followableUsers = peopleService.getAllUsersExceptCurrent(userId);
-        mv.addObject("users", followableUsers);
+        // Suggestions top the first page when not searching. They are read
+        // at the same time as the page, see QueryFanOutService.java
+        boolean isSuggesting = cursor == null && (namePrefix == null || namePrefix.isBlank());
+        CompletableFuture<List<FollowableUser>> suggestionsFuture = isSuggesting
+                ? queryFanOutService.supply(() -> peopleService.getSuggestedUsers(userId, suggestionsShown))
+                : CompletableFuture.completedFuture(List.of());
+        PeoplePage page = peopleService.getPeoplePage(userId, namePrefix, PeopleCursor.decode(cursor), pageSize);
+        mv.addObject("users", page.getUsers());
+
+        List<FollowableUser> suggestedUsers = suggestionsFuture.join();
+        if (!suggestedUsers.isEmpty()) {
+            mv.addObject("suggestedUsers", suggestedUsers);
+            mv.addObject("hasSuggestions", true);
+        }
+        // Mustache fails on a null variable, so an empty search box gets "".
+        mv.addObject("namePrefix", namePrefix == null ? "" : namePrefix);
+
+        // Link to the next page, keeping the search.
+        if (page.getNextCursor() != null) {
+            String nextPageUrl = "/people?cursor=" + page.getNextCursor().encode();
+            if (namePrefix != null && !namePrefix.isBlank()) {
+                nextPageUrl += "&q=" + URLEncoder.encode(namePrefix, StandardCharsets.UTF_8);
+            }
+            mv.addObject("nextPageUrl", nextPageUrl);
+        }
 
         // If an error occured, you can set the following property with the
         // error message to show the error message to the user.
@@ -75,9 +136,10 @@ public class PeopleController {
         String errorMessage = error;
         mv.addObject("errorMessage", errorMessage);
 
-        // Enable the following line if you want to show no content message.
-        // Do that if your content list is empty.
-        // mv.addObject("isNoContent", true);
+        // Show the no content message if nobody matched.
+        if (page.getUsers().isEmpty()) {
+            mv.addObject("isNoContent", true);
+        }
         
         return mv;
     }
@@ -95,9 +157,7 @@ public class PeopleController {
     @GetMapping("{userId}/follow/{isFollow}")
     public String followUnfollowUser(@PathVariable("userId") String userId,
             @PathVariable("isFollow") Boolean isFollow) {
-        System.out.println("User is attempting to follow/unfollow a user:");
-        System.out.println("\tuserId: " + userId);
-        System.out.println("\tisFollow: " + isFollow);
+        log.debug("Follow toggle userId={} isFollow={}", userId, isFollow);
 
         // Redirect the user if the comment adding is a success.
         // return "redirect:/people";
@@ -112,29 +172,11 @@ public class PeopleController {
             return "redirect:/people?error=" + errorMessage;
         }
 
-        // Connect to DB
-        try (Connection conn = dataSource.getConnection()) {
-            if (isFollow) {
-                // Following a user
-                String followQuery = "INSERT INTO follow (followerUserId, followeeUserId) VALUES (?, ?)";
-                try (PreparedStatement pstmt = conn.prepareStatement(followQuery)) {
-                    pstmt.setString(1, loggedInUserId);
-                    pstmt.setString(2, userId);
-                    pstmt.executeUpdate();
-                }
-
-            } else {
-                // Unfollow a user
-                String unfollowQuery = "DELETE FROM follow WHERE followerUserId = ? AND followeeUserId = ?";
-                try (PreparedStatement pstmt = conn.prepareStatement(unfollowQuery)) {
-                    pstmt.setString(1, loggedInUserId);
-                    pstmt.setString(2, userId);
-                    pstmt.executeUpdate();
-                } 
-            }
+        try {
+            setFollowing(loggedInUserId, userId, isFollow);
             return "redirect:/people";
-        } catch (SQLException e) {
-            e.printStackTrace();
+        } catch (SQLException | NumberFormatException e) {
+            log.error("Failed to (un)follow userId={}", userId, e);
         }
 
         // Redirect the user with an error message if there was an error.
@@ -143,4 +185,59 @@ public class PeopleController {
         return "redirect:/people?error=" + message;
     }
 
+    /**
+     * Follows or unfollows a user from main.js without reloading the page.
+     * Responds with the new state, e.g. {"active":true}.
+     */
+    @PostMapping("{userId}/follow/{isFollow}")
+    @ResponseBody
+    public ResponseEntity<ToggleState> toggleFollow(@PathVariable("userId") String userId,
+            @PathVariable("isFollow") Boolean isFollow) {
+        String loggedInUserId = userService.getLoggedInUser().getUserId();
+        if (loggedInUserId.equals(userId)) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            setFollowing(loggedInUserId, userId, isFollow);
+        } catch (SQLException | NumberFormatException e) {
+            log.error("Failed to (un)follow userId={}", userId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+        return ResponseEntity.ok(new ToggleState(isFollow, null));
+    }
+
+    private void setFollowing(String loggedInUserId, String userId, boolean isFollow) throws SQLException {
+        int followerUserId = Integer.parseInt(loggedInUserId);
+        int followeeUserId = Integer.parseInt(userId);
+        // Nothing to write, e.g. a repeated click. See FollowGraphService.java
+        if (followGraphService.isFollowing(followerUserId, followeeUserId) == isFollow) {
+            return;
+        }
+        // Connect to DB
+        try (QueryScope scope = QueryScope.open("follow-toggle");
+                Connection conn = dataSource.getConnection()) {
+            // Following or unfollowing a user
+            String query = QueryRegistry.get(isFollow ? "follow-insert" : "follow-delete");
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, loggedInUserId);
+                pstmt.setString(2, userId);
+                pstmt.executeUpdate();
+            }
+        }
+
+        // The timeline updates take connections of their own, so they run
+        // after the one above is back in the pool.
+        if (isFollow) {
+            followGraphService.follow(followerUserId, followeeUserId);
+            followSuggestionService.onFollowChanged(followerUserId);
+            // Bring the followee's recent posts into the home feed.
+            timelineService.onFollow(followerUserId, followeeUserId);
+        } else {
+            followGraphService.unfollow(followerUserId, followeeUserId);
+            followSuggestionService.onFollowChanged(followerUserId);
+            // Drop the followee's posts from the home feed.
+            timelineService.onUnfollow(followerUserId, followeeUserId);
+        }
+    }
+
 }
@@ -9,53 +9,82 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-<<<<<<< HEAD
-import java.util.*;
-=======
-import java.util.ArrayList;
+import java.time.LocalDateTime;
 import java.util.List;
->>>>>>> 0907557 (profile stuff)
 
 import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.ModelAndView;
 
-import com.mysql.cj.x.protobuf.MysqlxPrepare.Prepare;
-
-<<<<<<< HEAD
-import uga.menik.cs4370.models.Comment;
-=======
-import uga.menik.cs4370.models.BasicPost;
->>>>>>> 0907557 (profile stuff)
+import jakarta.servlet.http.HttpServletResponse;
+import uga.menik.cs4370.models.CommentCursor;
 import uga.menik.cs4370.models.ExpandedPost;
+import uga.menik.cs4370.models.ToggleState;
 import uga.menik.cs4370.models.User;
+import uga.menik.cs4370.services.ContentVersionService;
 import uga.menik.cs4370.services.PeopleService;
+import uga.menik.cs4370.services.PostService;
+import uga.menik.cs4370.services.PostStatsService;
+import uga.menik.cs4370.services.ToggleWriteBehindService;
+import uga.menik.cs4370.services.ToggleWriteBehindService.Kind;
+import uga.menik.cs4370.services.ToggleWriteBehindService.Outcome;
 import uga.menik.cs4370.services.UserService;
+import uga.menik.cs4370.services.ViewerStateService;
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
 import uga.menik.cs4370.utility.Utility;
 
 /**
  * Handles /post URL and its sub urls.
  */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
 @Controller
 @RequestMapping("/post")
 public class PostController {
 
+    private static final Logger log = LoggerFactory.getLogger(PostController.class);
+
     private final UserService userService;
     private final PeopleService peopleService;
+    private final PostStatsService postStatsService;
+    private final PostService postService;
+    private final ViewerStateService viewerStateService;
+    private final ToggleWriteBehindService toggleWriteBehindService;
+    private final ContentVersionService contentVersionService;
     private final DataSource dataSource;
-
-    public PostController (UserService userService, PeopleService peopleService, DataSource dataSource) {
+    // Number of comments shown per post page.
+    private final int commentsPageSize;
+
+    public PostController (UserService userService, PeopleService peopleService,
+            PostStatsService postStatsService, PostService postService,
+            ViewerStateService viewerStateService, ToggleWriteBehindService toggleWriteBehindService,
+            ContentVersionService contentVersionService, DataSource dataSource,
+            @Value("${microblog.post.comments-page-size:50}") int commentsPageSize) {
         this.userService = userService;
         this.peopleService = peopleService;
+        this.postStatsService = postStatsService;
+        this.postService = postService;
+        this.viewerStateService = viewerStateService;
+        this.toggleWriteBehindService = toggleWriteBehindService;
+        this.contentVersionService = contentVersionService;
         this.dataSource = dataSource;
+        this.commentsPageSize = commentsPageSize;
     }
 
     /**
@@ -67,106 +96,50 @@ public class PostController {
      * The above URL assigns 1 to postId.
      * 
      * See notes from HomeController.java regardig error URL parameter.
+     *
+     * Comments are shown one page at a time. The comments parameter holds
+     * the cursor of the page, see CommentCursor.java.
+     *
+     * A repeat view of an unchanged post is answered with 304 Not Modified
+     * before the post is read. See ContentVersionService.java.
      */
     @GetMapping("/{postId}")
     public ModelAndView webpage(@PathVariable("postId") String postId,
-            @RequestParam(name = "error", required = false) String error) {
-        System.out.println("The user is attempting to view post with id: " + postId);
+            @RequestParam(name = "error", required = false) String error,
+            @RequestParam(name = "comments", required = false) String comments,
+            WebRequest request, HttpServletResponse response) {
+        log.debug("View post postId={}", postId);
+        String userId = userService.getLoggedInUser().getUserId();
+
+        // Versions are read before the post itself.
+        int viewerUserId = Integer.parseInt(userId);
+        try {
+            int id = Integer.parseInt(postId);
+            String etag = contentVersionService.tag(viewerUserId,
+                    contentVersionService.getPostVersion(id), contentVersionService.getViewerVersion(viewerUserId));
+            if (request.checkNotModified(etag)) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            // Not a post id. Shown as no content below.
+        }
         // See notes on ModelAndView in BookmarksController.java.
         ModelAndView mv = new ModelAndView("posts_page");
 
         // Following line populates sample data.
         // You should replace it with actual data from the database.
-<<<<<<< HEAD
-=======
-        System.out.println("Calling getPostsOrderedByDate for userId: " + postId); 
-        List<BasicPost> posts = getPostsOrderedByDate(postId);
-        mv.addObject("posts", posts);
->>>>>>> 0907557 (profile stuff)
-
-        String postQuery = """
-                SELECT p.postId, p.userId, p.postDate, p.postText, u.username, u.firstName, u.lastName,
-                    (SELECT COUNT(*) FROM heart WHERE heart.postId = p.postId) AS heartsCount,
-                    (SELECT COUNT(*) FROM comment WHERE comment.postId = p.postId) AS commentsCount,
-                    EXISTS (SELECT 1 FROM heart WHERE heart.postId = p.postId AND heart.userId = ?) AS isHearted,
-                    EXISTS (SELECT 1 FROM bookmark WHERE bookmark.postId = p.postId AND bookmark.userId = ?) AS isBookmarked
-                FROM post p
-                JOIN user u ON p.userId = u.userId
-                WHERE p.postId = ?
-            """;
-
-        String commentQuery = """
-                SELECT c.commentId, c.commentText, c.commentDate, u.userId, u.userName, u.firstName, u.lastName
-                FROM comment c
-                JOIN user u ON c.userId = u.userId
-                WHERE c.postId = ?
-                ORDER BY c.commentDate ASC
-            """;
-
-        ExpandedPost expandedPost = null;
-
-        try (Connection conn = dataSource.getConnection();
-        PreparedStatement postStmt = conn.prepareStatement(postQuery);
-        PreparedStatement commentStmt = conn.prepareStatement(commentQuery)) {
-
-            String userId = userService.getLoggedInUser().getUserId();
-
-            // setting params for post
-            postStmt.setString(1, userId);
-            postStmt.setString(2, userId);
-            postStmt.setString(3, postId);
-
-            ResultSet postRs = postStmt.executeQuery();
-
-            if (postRs.next()) {
-                User user = new User(
-                    postRs.getString("userId"), 
-                    postRs.getString("firstName"), 
-                    postRs.getString("lastName")
-                );
-
-                // fetch comments
-                commentStmt.setString(1, postId);
-                ResultSet commentRs = commentStmt.executeQuery();
-                List<Comment> comments = new ArrayList<Comment>();
-
-                while (commentRs.next()) {
-                    User commentUser = new User(
-                        commentRs.getString("userId"), 
-                        commentRs.getString("firstName"), 
-                        commentRs.getString("lastName")
-                    );
-
-                    Comment comment = new Comment (
-                        commentRs.getString("commentId"),
-                        commentRs.getString("commentText"),
-                        commentRs.getString("commentDate"),
-                        commentUser
-                    );
-                    comments.add(comment);
-                }
 
-                // Construct the whole post
-                expandedPost = new ExpandedPost(
-                    postRs.getString("postId"),
-                    postRs.getString("postText"),
-                    postRs.getString("postDate"),
-                    user,
-                    postRs.getInt("heartsCount"),
-                    postRs.getInt("commentsCount"),
-                    postRs.getBoolean("isHearted"),
-                    postRs.getBoolean("isBookmarked"),
-                    comments
-                );
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        // The post, a page of its comments and all of their authors. See PostService.java
+        ExpandedPost expandedPost = postService.getExpandedPost(postId, userId,
+                CommentCursor.decode(comments), commentsPageSize);
 
         if (expandedPost != null) {
             mv.addObject("posts", List.of(expandedPost));
         } else {
             mv.addObject("isNoContent", true);
+            // Also what a failed query returns. It must not replace a good
+            // copy in the browser cache.
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
         }
         // If an error occured, you can set the following property with the
         // error message to show the error message to the user.
@@ -181,54 +154,6 @@ public class PostController {
         return mv;
     }
 
-    private List<BasicPost> getPostsOrderedByDate(String userId) {
-        List<BasicPost> posts = new ArrayList<>();
-        System.out.println("Inside getPostsOrderedByDate method"); 
-        // Simplified query to fetch post details
-        String sql = "SELECT p.postId, p.content, p.postDate, p.userId, u.firstName, u.lastName " +
-                     "FROM posts p " +
-                     "JOIN users u ON p.userId = u.userId " +
-                     "WHERE p.userId = ? ORDER BY p.postDate DESC";
-    
-        System.out.println("SQL Query: " + sql);  // Log the query
-    System.out.println("User ID: " + userId);  // Log the userId passed to the query
-
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, userId);
-    
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    // Get user details
-                    String postUserId = rs.getString("userId");
-                    String firstName = rs.getString("firstName");
-                    String lastName = rs.getString("lastName");
-                    User user = new User(postUserId, firstName, lastName);
-    
-                    // Get post details
-                    String postId = rs.getString("postId");
-                    String content = rs.getString("content");
-                    String postDate = rs.getString("postDate");
-    
-                    // Create BasicPost object and add to the list
-                    BasicPost post = new BasicPost(postId, content, postDate, user);
-                    posts.add(post);
-
-                    System.out.println("Post ID: " + postId);
-                    System.out.println("Content: " + content);
-                    System.out.println("Post Date: " + postDate);
-                    System.out.println("User: " + firstName + " " + lastName);
-                    System.out.println("-----");
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-    
-        return posts;
-    }
-    
-    
     /**
      * Handles comments added on posts.
      * See comments on webpage function to see how path variables work here.
@@ -238,30 +163,42 @@ public class PostController {
     @PostMapping("/{postId}/comment")
     public String postComment(@PathVariable("postId") String postId,
             @RequestParam(name = "comment") String comment) {
-        System.out.println("The user is attempting add a comment:");
-        System.out.println("\tpostId: " + postId);
-        System.out.println("\tcomment: " + comment);
+        log.debug("Add comment postId={} length={}", postId, comment.length());
 
         // Redirect the user if the comment adding is a success.
         // return "redirect:/post/" + postId;
 
         // Implementation by Jackson
         String userId = userService.getLoggedInUser().getUserId();
-        String commentQuery = "INSERT INTO comment (postId, userId, commentDate, commentText) VALUES (?, ?, NOW(), ?)";
-
-        try (Connection conn = dataSource.getConnection();
-            PreparedStatement pstmt = conn.prepareStatement(commentQuery)) {
-
-            pstmt.setString(1, postId);
-            pstmt.setString(2, userId);
-            pstmt.setString(3, comment);
-
-            int rowsAffected = pstmt.executeUpdate();
-            if (rowsAffected > 0) {
-                return "redirect:/post/" + postId; // Success: Redirect to the post
+        String commentQuery = QueryRegistry.get("comment-insert");
+        LocalDateTime commentDate = LocalDateTime.now().withNano(0);
+
+        try (QueryScope scope = QueryScope.open("create-comment");
+                Connection conn = dataSource.getConnection()) {
+            // The comment and its counter update commit together.
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(commentQuery)) {
+                pstmt.setString(1, postId);
+                pstmt.setString(2, userId);
+                pstmt.setObject(3, commentDate);
+                pstmt.setString(4, comment);
+
+                int rowsAffected = pstmt.executeUpdate();
+                if (rowsAffected > 0) {
+                    postStatsService.adjustCommentsCount(conn, postId, rowsAffected);
+                    // Keeps the people page ordering current.
+                    peopleService.touchLastActive(conn, userId, commentDate);
+                    conn.commit();
+                    contentVersionService.postChanged(Integer.parseInt(postId));
+                    return "redirect:/post/" + postId; // Success: Redirect to the post
+                }
+                conn.rollback();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            log.error("Failed to add a comment to postId={}", postId, e);
         }
         // Redirect the user with an error message if there was an error.
         String message = URLEncoder.encode("Failed to post the comment. Please try again.",
@@ -278,36 +215,63 @@ public class PostController {
     @GetMapping("/{postId}/heart/{isAdd}")
     public String addOrRemoveHeart(@PathVariable("postId") String postId,
             @PathVariable("isAdd") Boolean isAdd) {
-        System.out.println("The user is attempting add or remove a heart:");
-        System.out.println("\tpostId: " + postId);
-        System.out.println("\tisAdd: " + isAdd);
+        log.debug("Heart toggle postId={} isAdd={}", postId, isAdd);
 
         // Redirect the user if the comment adding is a success.
         // return "redirect:/post/" + postId;
 
         //Implementation by Miroslav
         String userId = userService.getLoggedInUser().getUserId();
-        String sql;
 
-        try (Connection conn = dataSource.getConnection()) {
-            if (isAdd) {
-                sql = "INSERT IGNORE INTO heart (postId, userId) VALUES (?, ?)";
-            } else {
-                sql = "DELETE FROM heart WHERE postId = ? AND userId = ?";
+        try {
+            if (toggleHeart(userId, Integer.parseInt(postId), isAdd) == Outcome.QUEUED) {
+                return "redirect:/post/" + postId;
             }
+        } catch (NumberFormatException e) {
+            log.warn("Heart toggle with invalid postId={}", postId);
+        }
+        String message = URLEncoder.encode("Failed to (un)like the post. Please try again.", StandardCharsets.UTF_8);
+        return "redirect:/post/" + postId + "?error=" + message;
+    }
 
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, postId);
-                stmt.setString(2, userId);
-                stmt.executeUpdate();
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            String message = URLEncoder.encode("Failed to (un)like the post. Please try again.", StandardCharsets.UTF_8);
-            return "redirect:/post/" + postId + "?error=" + message;
+    /**
+     * Likes or unlikes a post from main.js without reloading the page.
+     * Responds with the new state and hearts count of the post, e.g.
+     * {"active":true,"count":6}.
+     */
+    @PostMapping("/{postId}/heart/{isAdd}")
+    @ResponseBody
+    public ResponseEntity<ToggleState> toggleHeart(@PathVariable("postId") String postId,
+            @PathVariable("isAdd") Boolean isAdd) {
+        String userId = userService.getLoggedInUser().getUserId();
+        int id;
+        try {
+            id = Integer.parseInt(postId);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        Outcome outcome = toggleHeart(userId, id, isAdd);
+        if (outcome != Outcome.QUEUED) {
+            return ResponseEntity.status(toStatus(outcome)).build();
         }
+        return ResponseEntity.ok(new ToggleState(isAdd, postService.getHeartsCount(id)));
+    }
 
-        return "redirect:/post/" + postId;
+    private Outcome toggleHeart(String userId, int postId, boolean isAdd) {
+        // The heart row and the hearts counter are written by the next
+        // flush of the write-behind queue.
+        boolean wasHearted = viewerStateService.getMarks(userId).isHearted(postId);
+        Outcome outcome = toggleWriteBehindService.toggle(Kind.HEART, Integer.parseInt(userId), postId, isAdd,
+                wasHearted);
+        if (outcome != Outcome.QUEUED) {
+            return outcome;
+        }
+        // Keep the cached heart flags of the viewer current.
+        viewerStateService.setHearted(userId, String.valueOf(postId), isAdd);
+        // After the change is visible, see ContentVersionService.java.
+        contentVersionService.postChanged(postId);
+        contentVersionService.viewerChanged(Integer.parseInt(userId));
+        return outcome;
     }
 
     /**
@@ -319,9 +283,7 @@ public class PostController {
     @GetMapping("/{postId}/bookmark/{isAdd}")
     public String addOrRemoveBookmark(@PathVariable("postId") String postId,
             @PathVariable("isAdd") Boolean isAdd) {
-        System.out.println("The user is attempting add or remove a bookmark:");
-        System.out.println("\tpostId: " + postId);
-        System.out.println("\tisAdd: " + isAdd);
+        log.debug("Bookmark toggle postId={} isAdd={}", postId, isAdd);
 
         // Redirect the user if the comment adding is a success.
         // return "redirect:/post/" + postId;
@@ -330,28 +292,12 @@ public class PostController {
         User loggedInUser = userService.getLoggedInUser();
         String userId = loggedInUser.getUserId();
 
-        //connect to DB
-        try (Connection conn = dataSource.getConnection()) {
-            if (isAdd) {
-                //Adding a bookmark
-                String addBookmarkQuery = "INSERT IGNORE INTO bookmark (postId, userId) VALUES (?, ?)";
-                try (PreparedStatement pstmt = conn.prepareStatement(addBookmarkQuery)) {
-                    pstmt.setString(1, postId);
-                    pstmt.setString(2, userId);
-                    pstmt.executeUpdate();
-                }
-            } else {
-                // Removing a bookmark
-                String removeBookmarkQuery = "DELETE FROM bookmark WHERE postId = ? and userid = ?";
-                try (PreparedStatement pstmt = conn.prepareStatement(removeBookmarkQuery)) {
-                    pstmt.setString(1, postId);
-                    pstmt.setString(2, userId);
-                    pstmt.executeUpdate();
-                }
-            } // ifelse
-            return "redirect:/post/" + postId;
-        } catch (SQLException e) {
-            e.printStackTrace();
+        try {
+            if (toggleBookmark(userId, Integer.parseInt(postId), isAdd) == Outcome.QUEUED) {
+                return "redirect:/post/" + postId;
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Bookmark toggle with invalid postId={}", postId);
         }// trycatch
         // Redirect the user with an error message if there was an error.
         String message = URLEncoder.encode("Failed to (un)bookmark the post. Please try again.",
@@ -359,4 +305,45 @@ public class PostController {
         return "redirect:/post/" + postId + "?error=" + message;
     }
 
-}
\ No newline at end of file
+    /**
+     * Bookmarks or unbookmarks a post from main.js without reloading the
+     * page. Responds with the new state, e.g. {"active":true}.
+     */
+    @PostMapping("/{postId}/bookmark/{isAdd}")
+    @ResponseBody
+    public ResponseEntity<ToggleState> toggleBookmark(@PathVariable("postId") String postId,
+            @PathVariable("isAdd") Boolean isAdd) {
+        String userId = userService.getLoggedInUser().getUserId();
+        try {
+            Outcome outcome = toggleBookmark(userId, Integer.parseInt(postId), isAdd);
+            if (outcome != Outcome.QUEUED) {
+                return ResponseEntity.status(toStatus(outcome)).build();
+            }
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(new ToggleState(isAdd, null));
+    }
+
+    private Outcome toggleBookmark(String userId, int postId, boolean isAdd) {
+        // The bookmark row is written by the next flush of the
+        // write-behind queue.
+        boolean wasBookmarked = viewerStateService.getMarks(userId).isBookmarked(postId);
+        Outcome outcome = toggleWriteBehindService.toggle(Kind.BOOKMARK, Integer.parseInt(userId), postId, isAdd,
+                wasBookmarked);
+        if (outcome != Outcome.QUEUED) {
+            return outcome;
+        }
+        // Keep the cached bookmark flags of the viewer current.
+        viewerStateService.setBookmarked(userId, String.valueOf(postId), isAdd);
+        contentVersionService.viewerChanged(Integer.parseInt(userId));
+        return outcome;
+    }
+
+    // 503 if the write-behind queue is full or the post could not be
+    // looked up.
+    private static HttpStatus toStatus(Outcome outcome) {
+        return outcome == Outcome.NO_SUCH_POST ? HttpStatus.NOT_FOUND : HttpStatus.SERVICE_UNAVAILABLE;
+    }
+
+}
@@ -7,14 +7,20 @@ package uga.menik.cs4370.controllers;
 
 import java.util.List;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.ModelAndView;
 
+import jakarta.servlet.http.HttpServletResponse;
 import uga.menik.cs4370.models.Post;
+import uga.menik.cs4370.services.ContentVersionService;
 import uga.menik.cs4370.services.UserService;
 import uga.menik.cs4370.utility.Utility;
 
@@ -25,16 +31,20 @@ import uga.menik.cs4370.utility.Utility;
 @RequestMapping("/profile")
 public class ProfileController {
 
+    private static final Logger log = LoggerFactory.getLogger(ProfileController.class);
+
     // UserService has user login and registration related functions.
     private final UserService userService;
+    private final ContentVersionService contentVersionService;
 
     /**
      * See notes in AuthInterceptor.java regarding how this works 
      * through dependency injection and inversion of control.
      */
     @Autowired
-    public ProfileController(UserService userService) {
+    public ProfileController(UserService userService, ContentVersionService contentVersionService) {
         this.userService = userService;
+        this.contentVersionService = contentVersionService;
     }
 
     /**
@@ -42,9 +52,9 @@ public class ProfileController {
      * This serves the webpage that shows posts of the logged in user.
      */
     @GetMapping
-    public ModelAndView profileOfLoggedInUser() {
-        System.out.println("User is attempting to view profile of the logged in user.");
-        return profileOfSpecificUser(userService.getLoggedInUser().getUserId());
+    public ModelAndView profileOfLoggedInUser(WebRequest request, HttpServletResponse response) {
+        log.debug("View own profile");
+        return profileOfSpecificUser(userService.getLoggedInUser().getUserId(), request, response);
     }
 
     /**
@@ -52,11 +62,31 @@ public class ProfileController {
      * This serves the webpage that shows posts of a speific user given by userId.
      * See comments in PeopleController.java in followUnfollowUser function regarding 
      * how path variables work.
+     *
+     * A repeat view of an unchanged profile is answered with
+     * 304 Not Modified before the posts are read. See ContentVersionService.java.
      */
     @GetMapping("/{userId}")
-    public ModelAndView profileOfSpecificUser(@PathVariable("userId") String userId) {
-        System.out.println("User is attempting to view profile: " + userId);
-        
+    public ModelAndView profileOfSpecificUser(@PathVariable("userId") String userId,
+            WebRequest request, HttpServletResponse response) {
+        log.debug("View profile userId={}", userId);
+
+        // Versions are read before the posts themselves. The list of posts
+        // only changes when the user posts.
+        int viewerUserId = Integer.parseInt(userService.getLoggedInUser().getUserId());
+        long listVersion = -1;
+        long changeCount = contentVersionService.getChangeCount();
+        String pageKey = "profile:" + userId;
+        try {
+            listVersion = contentVersionService.getAuthorVersion(Integer.parseInt(userId));
+            String etag = contentVersionService.pageTag(pageKey, viewerUserId, listVersion);
+            if (etag != null && request.checkNotModified(etag)) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            // Not a user id. Shown as an empty profile below.
+        }
+
         // See notes on ModelAndView in BookmarksController.java.
         ModelAndView mv = new ModelAndView("posts_page");
 
@@ -65,6 +95,16 @@ public class ProfileController {
         //List<Post> posts = Utility.createSamplePostsListWithoutComments();
         List<Post> posts = userService.getPostsByUserId(userId);
         mv.addObject("posts", posts);
+        if (posts.isEmpty()) {
+            // Also what a failed query returns. It must not replace a good
+            // copy in the browser cache.
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        } else {
+            String etag = contentVersionService.rememberPage(pageKey, viewerUserId, listVersion, changeCount, posts);
+            if (etag != null) {
+                response.setHeader(HttpHeaders.ETAG, etag);
+            }
+        }
 
         // If an error occured, you can set the following property with the
         // error message to show the error message to the user.
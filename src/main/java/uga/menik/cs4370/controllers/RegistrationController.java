@@ -17,6 +17,7 @@ import uga.menik.cs4370.services.UserService;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.concurrent.RejectedExecutionException;
 
 @Controller
 @RequestMapping("/register")
@@ -86,6 +87,11 @@ public class RegistrationController {
                         .encode("Registration failed. Please try again.", "UTF-8");
                 return "redirect:/register?error=" + message;
             }
+        } catch (RejectedExecutionException e) {
+            // Too many passwords are being hashed right now.
+            String message = URLEncoder
+                    .encode("The server is busy. Please try again in a moment.", "UTF-8");
+            return "redirect:/register?error=" + message;
         } catch (Exception e) {
             // If the registration fails redirect to registration page with a message.
             String message = URLEncoder
@@ -0,0 +1,99 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.models;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * Position in the comments of a post ordered by (commentDate, commentId),
+ * oldest first. Works like FeedCursor: a page query returns the comments
+ * strictly after the cursor, so every page costs the same no matter how
+ * many comments come before it.
+ */
+public class CommentCursor {
+
+    /**
+     * Cursor that comes before every comment. Used to request the first page.
+     */
+    public static final CommentCursor FIRST_PAGE =
+            new CommentCursor(LocalDateTime.of(1000, 1, 1, 0, 0, 0), 0);
+
+    /**
+     * Date of the last comment on the previous page.
+     */
+    private final LocalDateTime commentDate;
+
+    /**
+     * Id of the last comment on the previous page. Breaks ties between
+     * comments made in the same second.
+     */
+    private final int commentId;
+
+    /**
+     * Constructs a CommentCursor pointing right after the given comment.
+     *
+     * @param commentDate the date of the comment
+     * @param commentId   the unique identifier of the comment
+     */
+    public CommentCursor(LocalDateTime commentDate, int commentId) {
+        this.commentDate = commentDate;
+        this.commentId = commentId;
+    }
+
+    /**
+     * Returns the date of the last comment on the previous page.
+     *
+     * @return the comment date
+     */
+    public LocalDateTime getCommentDate() {
+        return commentDate;
+    }
+
+    /**
+     * Returns the id of the last comment on the previous page.
+     *
+     * @return the comment ID
+     */
+    public int getCommentId() {
+        return commentId;
+    }
+
+    /**
+     * Encodes the cursor into an opaque token that can be put in a URL.
+     *
+     * @return the encoded cursor
+     */
+    public String encode() {
+        String raw = commentDate.toEpochSecond(ZoneOffset.UTC) + ":" + commentId;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token produced by encode.
+     * Missing or malformed tokens decode to the first page.
+     *
+     * @param token the encoded cursor, possibly null
+     * @return the decoded cursor
+     */
+    public static CommentCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return FIRST_PAGE;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            long epochSecond = Long.parseLong(raw.substring(0, separator));
+            int commentId = Integer.parseInt(raw.substring(separator + 1));
+            return new CommentCursor(LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC), commentId);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return FIRST_PAGE;
+        }
+    }
+}
@@ -18,6 +18,16 @@ public class ExpandedPost extends Post {
      */
     private final List<Comment> comments;
 
+    /**
+     * Position of the comments on this page.
+     */
+    private final CommentCursor commentsCursor;
+
+    /**
+     * Cursor of the next page of comments. Null if this is the last page.
+     */
+    private final CommentCursor nextCommentsCursor;
+
     /**
      * Constructs an ExpandedPost with specified details including a list of comments.
      *
@@ -32,8 +42,31 @@ public class ExpandedPost extends Post {
      * @param comments      the list of comments made on the post
      */
     public ExpandedPost(String postId, String content, String postDate, User user, int heartsCount, int commentsCount, boolean isHearted, boolean isBookmarked, List<Comment> comments) {
+        this(postId, content, postDate, user, heartsCount, commentsCount, isHearted, isBookmarked, comments,
+                CommentCursor.FIRST_PAGE, null);
+    }
+
+    /**
+     * Constructs an ExpandedPost with one page of its comments.
+     *
+     * @param postId             the unique identifier of the post
+     * @param content            the text content of the post
+     * @param postDate           the creation date of the post
+     * @param user               the user who created the post
+     * @param heartsCount        the number of hearts (likes) the post has received
+     * @param commentsCount      the number of comments made on the post
+     * @param isHearted          indicates whether the post is hearted by the current user
+     * @param isBookmarked       indicates whether the post is bookmarked by the current user
+     * @param comments           the comments on this page
+     * @param commentsCursor     the cursor the comments on this page start after
+     * @param nextCommentsCursor the cursor of the next page of comments or null if there is none
+     */
+    public ExpandedPost(String postId, String content, String postDate, User user, int heartsCount, int commentsCount, boolean isHearted, boolean isBookmarked, List<Comment> comments,
+            CommentCursor commentsCursor, CommentCursor nextCommentsCursor) {
         super(postId, content, postDate, user, heartsCount, commentsCount, isHearted, isBookmarked);
         this.comments = comments;
+        this.commentsCursor = commentsCursor;
+        this.nextCommentsCursor = nextCommentsCursor;
         this.isShowComents = true;
     }
 
@@ -45,4 +78,23 @@ public class ExpandedPost extends Post {
     public List<Comment> getComments() {
         return List.copyOf(comments);
     }
+
+    /**
+     * Returns the cursor the comments on this page start after.
+     *
+     * @return the comments cursor
+     */
+    public CommentCursor getCommentsCursor() {
+        return commentsCursor;
+    }
+
+    /**
+     * Returns the encoded cursor of the next page of comments, used in
+     * the "More comments" link.
+     *
+     * @return the encoded cursor or null if this is the last page
+     */
+    public String getMoreCommentsCursor() {
+        return nextCommentsCursor == null ? null : nextCommentsCursor.encode();
+    }
 }
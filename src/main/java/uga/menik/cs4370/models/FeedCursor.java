@@ -0,0 +1,99 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.models;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * Position in a feed ordered by (createdAt DESC, postId DESC).
+ * A page query returns the rows strictly after the cursor, so the
+ * database work per page does not depend on how deep the page is.
+ * The cursor travels to the browser as an opaque URL safe token.
+ */
+public class FeedCursor {
+
+    /**
+     * Cursor that comes before every post. Used to request the first page.
+     */
+    public static final FeedCursor FIRST_PAGE =
+            new FeedCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Integer.MAX_VALUE);
+
+    /**
+     * Creation time of the last post on the previous page.
+     */
+    private final LocalDateTime createdAt;
+
+    /**
+     * Id of the last post on the previous page. Breaks ties between
+     * posts created in the same second.
+     */
+    private final int postId;
+
+    /**
+     * Constructs a FeedCursor pointing right after the given post.
+     *
+     * @param createdAt the creation time of the post
+     * @param postId    the unique identifier of the post
+     */
+    public FeedCursor(LocalDateTime createdAt, int postId) {
+        this.createdAt = createdAt;
+        this.postId = postId;
+    }
+
+    /**
+     * Returns the creation time of the last post on the previous page.
+     *
+     * @return the creation time
+     */
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Returns the id of the last post on the previous page.
+     *
+     * @return the post ID
+     */
+    public int getPostId() {
+        return postId;
+    }
+
+    /**
+     * Encodes the cursor into an opaque token that can be put in a URL.
+     *
+     * @return the encoded cursor
+     */
+    public String encode() {
+        String raw = createdAt.toEpochSecond(ZoneOffset.UTC) + ":" + postId;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token produced by encode.
+     * Missing or malformed tokens decode to the first page.
+     *
+     * @param token the encoded cursor, possibly null
+     * @return the decoded cursor
+     */
+    public static FeedCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return FIRST_PAGE;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            long epochSecond = Long.parseLong(raw.substring(0, separator));
+            int postId = Integer.parseInt(raw.substring(separator + 1));
+            return new FeedCursor(LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC), postId);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return FIRST_PAGE;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.models;
+
+import java.util.List;
+
+/**
+ * One fixed size page of a feed and the cursor of the page after it.
+ */
+public class FeedPage {
+
+    /**
+     * Posts on this page, newest first.
+     */
+    private final List<Post> posts;
+
+    /**
+     * Cursor of the next (older) page. Null if this is the last page.
+     */
+    private final FeedCursor nextCursor;
+
+    /**
+     * Constructs a FeedPage.
+     *
+     * @param posts      the posts on this page
+     * @param nextCursor the cursor of the next page or null if there is none
+     */
+    public FeedPage(List<Post> posts, FeedCursor nextCursor) {
+        this.posts = posts;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Returns the posts on this page.
+     *
+     * @return the posts
+     */
+    public List<Post> getPosts() {
+        return posts;
+    }
+
+    /**
+     * Returns the cursor of the next page.
+     *
+     * @return the next cursor or null if this is the last page
+     */
+    public FeedCursor getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.models;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * Position in the people list ordered by (lastActiveAt DESC, userId DESC).
+ * Works like FeedCursor: a page query returns the users strictly after
+ * the cursor, so every page costs the same no matter how deep it is.
+ */
+public class PeopleCursor {
+
+    /**
+     * Cursor that comes before every user. Used to request the first page.
+     */
+    public static final PeopleCursor FIRST_PAGE =
+            new PeopleCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Integer.MAX_VALUE);
+
+    /**
+     * Last activity time of the last user on the previous page.
+     */
+    private final LocalDateTime lastActiveAt;
+
+    /**
+     * Id of the last user on the previous page. Breaks ties between users
+     * last active in the same second, including users never active.
+     */
+    private final int userId;
+
+    /**
+     * Constructs a PeopleCursor pointing right after the given user.
+     *
+     * @param lastActiveAt the last activity time of the user
+     * @param userId       the unique identifier of the user
+     */
+    public PeopleCursor(LocalDateTime lastActiveAt, int userId) {
+        this.lastActiveAt = lastActiveAt;
+        this.userId = userId;
+    }
+
+    /**
+     * Returns the last activity time of the last user on the previous page.
+     *
+     * @return the last activity time
+     */
+    public LocalDateTime getLastActiveAt() {
+        return lastActiveAt;
+    }
+
+    /**
+     * Returns the id of the last user on the previous page.
+     *
+     * @return the user ID
+     */
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * Encodes the cursor into an opaque token that can be put in a URL.
+     *
+     * @return the encoded cursor
+     */
+    public String encode() {
+        String raw = lastActiveAt.toEpochSecond(ZoneOffset.UTC) + ":" + userId;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token produced by encode.
+     * Missing or malformed tokens decode to the first page.
+     *
+     * @param token the encoded cursor, possibly null
+     * @return the decoded cursor
+     */
+    public static PeopleCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return FIRST_PAGE;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            long epochSecond = Long.parseLong(raw.substring(0, separator));
+            int userId = Integer.parseInt(raw.substring(separator + 1));
+            return new PeopleCursor(LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC), userId);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return FIRST_PAGE;
+        }
+    }
+}
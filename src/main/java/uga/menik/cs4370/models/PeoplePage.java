@@ -0,0 +1,53 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.models;
+
+import java.util.List;
+
+/**
+ * One fixed size page of the people list and the cursor of the page after it.
+ */
+public class PeoplePage {
+
+    /**
+     * Users on this page, most recently active first.
+     */
+    private final List<FollowableUser> users;
+
+    /**
+     * Cursor of the next page. Null if this is the last page.
+     */
+    private final PeopleCursor nextCursor;
+
+    /**
+     * Constructs a PeoplePage.
+     *
+     * @param users      the users on this page
+     * @param nextCursor the cursor of the next page or null if there is none
+     */
+    public PeoplePage(List<FollowableUser> users, PeopleCursor nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Returns the users on this page.
+     *
+     * @return the users
+     */
+    public List<FollowableUser> getUsers() {
+        return users;
+    }
+
+    /**
+     * Returns the cursor of the next page.
+     *
+     * @return the next cursor or null if this is the last page
+     */
+    public PeopleCursor getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,55 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The state of a heart, bookmark or follow after a toggle.
+ * Returned as JSON by the toggle endpoints, e.g. {"active":true,"count":6}.
+ */
+public class ToggleState {
+
+    /**
+     * Whether the post is now hearted / bookmarked or the user followed.
+     */
+    private final boolean active;
+
+    /**
+     * The new hearts count of the post. Null for toggles without a count.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Integer count;
+
+    /**
+     * Constructs a ToggleState.
+     *
+     * @param active whether the toggle is now on
+     * @param count  the new count or null if the toggle has none
+     */
+    public ToggleState(boolean active, Integer count) {
+        this.active = active;
+        this.count = count;
+    }
+
+    /**
+     * Returns whether the toggle is now on.
+     *
+     * @return true if on
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Returns the new count.
+     *
+     * @return the count or null if the toggle has none
+     */
+    public Integer getCount() {
+        return count;
+    }
+}
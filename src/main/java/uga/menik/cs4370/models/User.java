@@ -5,6 +5,8 @@ This is a project developed by Dr. Menik to give the students an opportunity to
 */
 package uga.menik.cs4370.models;
 
+import uga.menik.cs4370.components.AssetManifest;
+
 /**
  * Represents a user of the micro blogging platform.
  */
@@ -59,11 +61,12 @@ public class User {
 
     /**
      * Given a userId generate a valid avatar path.
+     * The path is the avatar's content hashed URL when there is one (see AssetManifest).
      */
     private static String getAvatarPath(String userId) {
         int fileNo = (userId.hashCode() % 20) + 1;
         String avatarFileName = String.format("avatar_%d.png", fileNo);
-        return "/avatars/" + avatarFileName;
+        return AssetManifest.resolve("/avatars/" + avatarFileName);
     }
 
     /**
@@ -0,0 +1,187 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.services;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import uga.menik.cs4370.models.Post;
+
+/**
+ * This service keeps version counters that let the post, profile,
+ * bookmarks and home pages answer a repeat view with 304 Not Modified
+ * without running their queries.
+ *
+ * There are four kinds of counters. A post's counter is bumped by a
+ * comment or heart on it. A viewer's counter is bumped by the viewer's
+ * own hearts and bookmarks. An author's counter is bumped by each new
+ * post of the author. A feed counter is the high-water mark of a user's
+ * home feed and is bumped by TimelineService when followee posts arrive
+ * or follows change. Counters live in fixed size arrays indexed by id, so
+ * two ids can share a slot. That only makes a page look changed when it
+ * is not.
+ *
+ * A page's ETag is built from the counters it depends on plus a random
+ * instance id, so tags from before a restart or from another instance
+ * never match. Callers must read the counters before the page's data and
+ * writers must bump them after their change is visible. A page built
+ * between the two then carries an older tag and is simply sent again on
+ * the next view.
+ *
+ * The counters are only bumped by writes made through this instance. A
+ * write on another instance behind the same load balancer would leave
+ * this instance answering 304 with a stale page, so the application must
+ * run as a single instance. The pending toggles of
+ * ToggleWriteBehindService and the timeline sizes of TimelineService are
+ * kept in memory too and have the same requirement.
+ *
+ * The heart and comment counts on a list page change with the counters of
+ * every post on it. Which posts that are is only known after the list
+ * query, so each list page remembers the ids it showed together with the
+ * list version they were read at. A page is tagged only while the
+ * remembered ids are still current. The first view of a page is tagged
+ * from the posts it showed, unless a post or viewer counter was bumped
+ * while it was built.
+ */
+@Service
+public class ContentVersionService {
+
+    /**
+     * The post ids a list page showed and the list version they were read at.
+     */
+    private record PageIds(long listVersion, int[] postIds) {
+    }
+
+    private final String instanceId = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36);
+
+    private final AtomicLongArray postVersions;
+    private final AtomicLongArray viewerVersions;
+    private final AtomicLongArray authorVersions;
+    private final AtomicLongArray feedVersions;
+    private final int slotMask;
+    // Bumps of post and viewer counters, any slot.
+    private final AtomicLong changeCount = new AtomicLong();
+
+    private final Cache<String, PageIds> pages;
+
+    public ContentVersionService(@Value("${microblog.etag.version-slots:65536}") int versionSlots,
+            @Value("${microblog.etag.maximum-pages:100000}") long maximumPages,
+            @Value("${microblog.etag.expire-after-access-minutes:60}") long expireAfterAccessMinutes) {
+        // A power of two, so a slot is id & slotMask.
+        int slots = Integer.highestOneBit(Math.max(versionSlots, 1));
+        this.slotMask = slots - 1;
+        this.postVersions = new AtomicLongArray(slots);
+        this.viewerVersions = new AtomicLongArray(slots);
+        this.authorVersions = new AtomicLongArray(slots);
+        this.feedVersions = new AtomicLongArray(slots);
+        this.pages = Caffeine.newBuilder()
+                .maximumSize(maximumPages)
+                .expireAfterAccess(Duration.ofMinutes(expireAfterAccessMinutes))
+                .build();
+    }
+
+    public void postChanged(int postId) {
+        postVersions.incrementAndGet(postId & slotMask);
+        changeCount.incrementAndGet();
+    }
+
+    public void viewerChanged(int userId) {
+        viewerVersions.incrementAndGet(userId & slotMask);
+        changeCount.incrementAndGet();
+    }
+
+    public void authorPosted(int userId) {
+        authorVersions.incrementAndGet(userId & slotMask);
+    }
+
+    public void feedChanged(int userId) {
+        feedVersions.incrementAndGet(userId & slotMask);
+    }
+
+    public long getPostVersion(int postId) {
+        return postVersions.get(postId & slotMask);
+    }
+
+    public long getViewerVersion(int userId) {
+        return viewerVersions.get(userId & slotMask);
+    }
+
+    public long getAuthorVersion(int userId) {
+        return authorVersions.get(userId & slotMask);
+    }
+
+    public long getFeedVersion(int userId) {
+        return feedVersions.get(userId & slotMask);
+    }
+
+    /**
+     * Returns how often any post or viewer counter was bumped. A list page
+     * reads it before its data and passes it to rememberPage.
+     */
+    public long getChangeCount() {
+        return changeCount.get();
+    }
+
+    /**
+     * Returns a weak ETag for a viewer and the given counter values.
+     */
+    public String tag(int viewerUserId, long... versions) {
+        StringBuilder tag = new StringBuilder("W/\"").append(instanceId).append('-').append(viewerUserId);
+        for (long version : versions) {
+            tag.append('-').append(version);
+        }
+        return tag.append('"').toString();
+    }
+
+    /**
+     * Returns the weak ETag of a list page for a viewer, or null if the
+     * page was not shown at this list version yet.
+     * listVersion is the version of whatever decides which posts the page
+     * lists. It must be read before this call.
+     */
+    public String pageTag(String pageKey, int viewerUserId, long listVersion) {
+        PageIds page = pages.getIfPresent(pageKey);
+        if (page == null || page.listVersion() != listVersion) {
+            return null;
+        }
+        return tag(viewerUserId, listVersion, page.postIds());
+    }
+
+    /**
+     * Remembers which posts a list page showed, read at listVersion, and
+     * returns the page's weak ETag. Returns null if a post or viewer
+     * counter was bumped since changeCount was read, because the counters
+     * may then be newer than the posts that were shown.
+     */
+    public String rememberPage(String pageKey, int viewerUserId, long listVersion, long changeCount,
+            List<? extends Post> posts) {
+        int[] postIds = new int[posts.size()];
+        for (int i = 0; i < postIds.length; i++) {
+            postIds[i] = Integer.parseInt(posts.get(i).getPostId());
+        }
+        pages.put(pageKey, new PageIds(listVersion, postIds));
+        String etag = tag(viewerUserId, listVersion, postIds);
+        return this.changeCount.get() == changeCount ? etag : null;
+    }
+
+    private String tag(int viewerUserId, long listVersion, int[] postIds) {
+        long postsVersion = 0;
+        for (int postId : postIds) {
+            postsVersion += getPostVersion(postId);
+        }
+        return tag(viewerUserId, listVersion, getViewerVersion(viewerUserId), postsVersion);
+    }
+
+}
@@ -0,0 +1,275 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.services;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Service;
+
+import com.mysql.cj.jdbc.JdbcConnection;
+
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
+
+/**
+ * This service keeps the whole follow graph in memory, so follow state
+ * is answered without querying the follow table.
+ * Each user has a sorted array of primitive followee ids and one of
+ * follower ids, found by user id in an array of arrays. isFollowing is a
+ * binary search and counts are array lengths.
+ *
+ * The graph is loaded from the follow table at startup. PeopleController
+ * updates it after its follow and unfollow statements succeed. An
+ * adjacency array is never changed after it is published: a write copies
+ * it with the id added or removed and puts the copy in place, so readers
+ * need no locking. Writes are rare and take one lock, so two writes never
+ * replace the same array at once.
+ */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
+@Service
+public class FollowGraphService implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(FollowGraphService.class);
+
+    private static final int[] NONE = new int[0];
+
+    private final DataSource dataSource;
+
+    // userId -> sorted followee ids and userId -> sorted follower ids.
+    // Null entries mean none. Replaced as a whole when a larger user id
+    // shows up.
+    private volatile AtomicReferenceArray<int[]> followees = new AtomicReferenceArray<>(0);
+    private volatile AtomicReferenceArray<int[]> followers = new AtomicReferenceArray<>(0);
+
+    private final Object writeLock = new Object();
+
+    public FollowGraphService(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Loads the graph from the follow table.
+     * Runs before the web server accepts requests.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        int[] followerIds = new int[1024];
+        int[] followeeIds = new int[1024];
+        int edges = 0;
+        try (QueryScope scope = QueryScope.open("follow-graph-load");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("follow-graph-load"))) {
+            // Stream the rows, see HashtagIndexService.
+            if (conn.isWrapperFor(JdbcConnection.class)) {
+                pstmt.setFetchSize(Integer.MIN_VALUE);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (edges == followerIds.length) {
+                        followerIds = Arrays.copyOf(followerIds, edges * 2);
+                        followeeIds = Arrays.copyOf(followeeIds, edges * 2);
+                    }
+                    followerIds[edges] = rs.getInt(1);
+                    followeeIds[edges] = rs.getInt(2);
+                    edges++;
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Failed to load the follow graph", e);
+            return;
+        }
+        replaceAll(followerIds, followeeIds, edges);
+        log.info("Follow graph loaded. Users: {}, edges: {}", followees.length(), edges);
+    }
+
+    /**
+     * Replaces the graph with the first edges pairs of followerIds and
+     * followeeIds. The pairs must be distinct, as in the follow table.
+     */
+    public void replaceAll(int[] followerIds, int[] followeeIds, int edges) {
+        int maxUserId = -1;
+        for (int i = 0; i < edges; i++) {
+            maxUserId = Math.max(maxUserId, Math.max(followerIds[i], followeeIds[i]));
+        }
+        AtomicReferenceArray<int[]> loadedFollowees = build(followerIds, followeeIds, edges, maxUserId + 1);
+        AtomicReferenceArray<int[]> loadedFollowers = build(followeeIds, followerIds, edges, maxUserId + 1);
+        synchronized (writeLock) {
+            followees = loadedFollowees;
+            followers = loadedFollowers;
+        }
+    }
+
+    // Groups the edges by from and sorts each group, two passes over the edges.
+    private static AtomicReferenceArray<int[]> build(int[] from, int[] to, int edges, int users) {
+        int[] counts = new int[users];
+        for (int i = 0; i < edges; i++) {
+            counts[from[i]]++;
+        }
+        int[][] lists = new int[users][];
+        for (int userId = 0; userId < users; userId++) {
+            lists[userId] = counts[userId] == 0 ? null : new int[counts[userId]];
+            counts[userId] = 0;
+        }
+        for (int i = 0; i < edges; i++) {
+            lists[from[i]][counts[from[i]]++] = to[i];
+        }
+        AtomicReferenceArray<int[]> result = new AtomicReferenceArray<>(users);
+        for (int userId = 0; userId < users; userId++) {
+            if (lists[userId] != null) {
+                Arrays.sort(lists[userId]);
+                result.set(userId, lists[userId]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if followerUserId follows followeeUserId.
+     */
+    public boolean isFollowing(int followerUserId, int followeeUserId) {
+        return Arrays.binarySearch(get(followees, followerUserId), followeeUserId) >= 0;
+    }
+
+    /**
+     * Returns the ids of the users userId follows, sorted.
+     * The array is shared and must not be changed.
+     */
+    public int[] getFollowees(int userId) {
+        return get(followees, userId);
+    }
+
+    /**
+     * Returns the ids of the followers of userId, sorted.
+     * The array is shared and must not be changed.
+     */
+    public int[] getFollowers(int userId) {
+        return get(followers, userId);
+    }
+
+    public int getFolloweeCount(int userId) {
+        return get(followees, userId).length;
+    }
+
+    public int getFollowerCount(int userId) {
+        return get(followers, userId).length;
+    }
+
+    /**
+     * Returns one more than the largest user id in the graph.
+     */
+    public int getUserIdBound() {
+        return followees.length();
+    }
+
+    /**
+     * Returns the ids of the users with more than limit followers.
+     */
+    public Set<Integer> getUsersWithMoreFollowersThan(int limit) {
+        AtomicReferenceArray<int[]> lists = followers;
+        Set<Integer> userIds = new HashSet<>();
+        for (int userId = 0; userId < lists.length(); userId++) {
+            int[] ids = lists.get(userId);
+            if (ids != null && ids.length > limit) {
+                userIds.add(userId);
+            }
+        }
+        return userIds;
+    }
+
+    /**
+     * Records a follow that was written to the follow table.
+     */
+    public void follow(int followerUserId, int followeeUserId) {
+        synchronized (writeLock) {
+            ensureCapacity(Math.max(followerUserId, followeeUserId) + 1);
+            followees.set(followerUserId, with(get(followees, followerUserId), followeeUserId));
+            followers.set(followeeUserId, with(get(followers, followeeUserId), followerUserId));
+        }
+    }
+
+    /**
+     * Records an unfollow that was written to the follow table.
+     */
+    public void unfollow(int followerUserId, int followeeUserId) {
+        synchronized (writeLock) {
+            if (followerUserId < followees.length()) {
+                followees.set(followerUserId, without(get(followees, followerUserId), followeeUserId));
+            }
+            if (followeeUserId < followers.length()) {
+                followers.set(followeeUserId, without(get(followers, followeeUserId), followerUserId));
+            }
+        }
+    }
+
+    private static int[] get(AtomicReferenceArray<int[]> lists, int userId) {
+        if (userId < 0 || userId >= lists.length()) {
+            return NONE;
+        }
+        int[] ids = lists.get(userId);
+        return ids == null ? NONE : ids;
+    }
+
+    // Called with writeLock held.
+    private void ensureCapacity(int users) {
+        if (users <= followees.length()) {
+            return;
+        }
+        int length = Math.max(users, followees.length() + (followees.length() >> 1));
+        followees = grown(followees, length);
+        followers = grown(followers, length);
+    }
+
+    private static AtomicReferenceArray<int[]> grown(AtomicReferenceArray<int[]> lists, int length) {
+        AtomicReferenceArray<int[]> result = new AtomicReferenceArray<>(length);
+        for (int i = 0; i < lists.length(); i++) {
+            result.set(i, lists.get(i));
+        }
+        return result;
+    }
+
+    // A copy of ids with id added, or ids itself if it is there already.
+    private static int[] with(int[] ids, int id) {
+        int position = Arrays.binarySearch(ids, id);
+        if (position >= 0) {
+            return ids;
+        }
+        int insertAt = -position - 1;
+        int[] copy = new int[ids.length + 1];
+        System.arraycopy(ids, 0, copy, 0, insertAt);
+        copy[insertAt] = id;
+        System.arraycopy(ids, insertAt, copy, insertAt + 1, ids.length - insertAt);
+        return copy;
+    }
+
+    // A copy of ids without id, or null if none are left.
+    private static int[] without(int[] ids, int id) {
+        int position = Arrays.binarySearch(ids, id);
+        if (position < 0) {
+            return ids.length == 0 ? null : ids;
+        }
+        if (ids.length == 1) {
+            return null;
+        }
+        int[] copy = new int[ids.length - 1];
+        System.arraycopy(ids, 0, copy, 0, position);
+        System.arraycopy(ids, position + 1, copy, position, ids.length - position - 1);
+        return copy;
+    }
+
+}
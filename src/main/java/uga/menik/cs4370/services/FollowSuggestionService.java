@@ -0,0 +1,334 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.services;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.mysql.cj.jdbc.JdbcConnection;
+
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
+
+/**
+ * This service computes "who to follow" suggestions offline and stores
+ * the best ones of every user in the follow_suggestion table, so the
+ * people page reads them with one primary key range read.
+ *
+ * A user is suggested the friends of friends they do not follow yet,
+ * i.e. the users followed by the users they follow. Candidates are ranked
+ * by the number of such shared connections, weighed by how recently the
+ * candidate posted or commented.
+ *
+ * The batch walks the follow graph held by FollowGraphService instead of
+ * reading the follow table. The users are split into ranges on a
+ * fork/join pool, and each range of batch-size users is computed and
+ * written in its own transaction. Every user is recomputed at startup and
+ * then every rebuild-interval-ms. In between, refresh recomputes only the
+ * users whose friends of friends changed since the last run: a user who
+ * followed or unfollowed someone and that user's followers.
+ */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
+@Service
+public class FollowSuggestionService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(FollowSuggestionService.class);
+
+    // A candidate active today counts fully, one inactive for a very long
+    // time counts half. The difference halves every ACTIVITY_HALF_LIFE_DAYS.
+    private static final double ACTIVITY_HALF_LIFE_DAYS = 30;
+    private static final float MIN_ACTIVITY_WEIGHT = 0.5f;
+
+    private final DataSource dataSource;
+    private final FollowGraphService followGraphService;
+    private final ForkJoinPool pool;
+    // Suggestions kept per user.
+    private final int perUser;
+    // Users computed and written per transaction.
+    private final int batchSize;
+
+    // Users to recompute with the next refresh.
+    private final Set<Integer> changedUserIds = ConcurrentHashMap.newKeySet();
+
+    // The startup run may overlap a scheduled one.
+    private final Object runLock = new Object();
+
+    public FollowSuggestionService(DataSource dataSource, FollowGraphService followGraphService,
+            @Value("${microblog.suggestions.parallelism:2}") int parallelism,
+            @Value("${microblog.suggestions.per-user:20}") int perUser,
+            @Value("${microblog.suggestions.batch-size:500}") int batchSize) {
+        this.dataSource = dataSource;
+        this.followGraphService = followGraphService;
+        this.pool = new ForkJoinPool(parallelism);
+        this.perUser = perUser;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Records that followerUserId followed or unfollowed someone.
+     * Must be called after FollowGraphService was updated.
+     */
+    public void onFollowChanged(int followerUserId) {
+        changedUserIds.add(followerUserId);
+        // The followees of followerUserId are friends of friends of its followers.
+        for (int userId : followGraphService.getFollowers(followerUserId)) {
+            changedUserIds.add(userId);
+        }
+    }
+
+    /**
+     * Recomputes the suggestions of every user. Also picks up changes in
+     * activity, which refresh does not track.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${microblog.suggestions.rebuild-interval-ms:86400000}",
+            fixedDelayString = "${microblog.suggestions.rebuild-interval-ms:86400000}")
+    public void rebuild() {
+        // Follows from here on are recomputed by the next refresh, as the
+        // run may have passed their users already.
+        changedUserIds.clear();
+        int[] userIds = new int[Math.max(followGraphService.getUserIdBound() - 1, 0)];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = i + 1;
+        }
+        run("rebuild", userIds);
+    }
+
+    /**
+     * Recomputes the suggestions of the users recorded by onFollowChanged.
+     */
+    @Scheduled(initialDelayString = "${microblog.suggestions.refresh-interval-ms:600000}",
+            fixedDelayString = "${microblog.suggestions.refresh-interval-ms:600000}")
+    public void refresh() {
+        int[] userIds = new int[changedUserIds.size()];
+        int count = 0;
+        for (Iterator<Integer> it = changedUserIds.iterator(); it.hasNext() && count < userIds.length;) {
+            userIds[count++] = it.next();
+            it.remove();
+        }
+        if (count == 0) {
+            return;
+        }
+        userIds = Arrays.copyOf(userIds, count);
+        // Neighbouring users share a batch.
+        Arrays.sort(userIds);
+        run("refresh", userIds);
+    }
+
+    private void run(String kind, int[] userIds) {
+        synchronized (runLock) {
+            long startedAt = System.nanoTime();
+            float[] activityWeights;
+            try {
+                activityWeights = loadActivityWeights();
+            } catch (SQLException e) {
+                log.error("Follow suggestions {} failed", kind, e);
+                requeue(userIds, 0, userIds.length);
+                return;
+            }
+            LongAdder suggestions = new LongAdder();
+            pool.invoke(new SuggestionTask(userIds, 0, userIds.length, activityWeights, suggestions));
+            log.info("Follow suggestions {} finished. Users: {}, suggestions: {}, took {} ms",
+                    kind, userIds.length, suggestions.sum(), (System.nanoTime() - startedAt) / 1_000_000);
+        }
+    }
+
+    // userId -> weight of the user's activity, between MIN_ACTIVITY_WEIGHT and 1.
+    private float[] loadActivityWeights() throws SQLException {
+        long today = LocalDate.now().toEpochDay();
+        float[] weights = new float[Math.max(followGraphService.getUserIdBound(), 1)];
+        Arrays.fill(weights, MIN_ACTIVITY_WEIGHT);
+        try (QueryScope scope = QueryScope.open("follow-suggestions-activity");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("follow-suggestions-activity"))) {
+            // Stream the rows, see HashtagIndexService.
+            if (conn.isWrapperFor(JdbcConnection.class)) {
+                pstmt.setFetchSize(Integer.MIN_VALUE);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int userId = rs.getInt(1);
+                    if (userId >= weights.length) {
+                        continue;
+                    }
+                    LocalDateTime lastActiveAt = rs.getObject(2, LocalDateTime.class);
+                    long idleDays = Math.max(today - lastActiveAt.toLocalDate().toEpochDay(), 0);
+                    weights[userId] = MIN_ACTIVITY_WEIGHT + (1 - MIN_ACTIVITY_WEIGHT)
+                            * (float) Math.pow(0.5, idleDays / ACTIVITY_HALF_LIFE_DAYS);
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Computes and writes the suggestions of userIds[from, to), split in
+     * halves until a part holds at most batchSize users.
+     */
+    private final class SuggestionTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] userIds;
+        private final int from;
+        private final int to;
+        private final float[] activityWeights;
+        private final LongAdder suggestions;
+
+        SuggestionTask(int[] userIds, int from, int to, float[] activityWeights, LongAdder suggestions) {
+            this.userIds = userIds;
+            this.from = from;
+            this.to = to;
+            this.activityWeights = activityWeights;
+            this.suggestions = suggestions;
+        }
+
+        @Override
+        protected void compute() {
+            if (from == to) {
+                return;
+            }
+            if (to - from > batchSize) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SuggestionTask(userIds, from, middle, activityWeights, suggestions),
+                        new SuggestionTask(userIds, middle, to, activityWeights, suggestions));
+                return;
+            }
+            // Shared connections per candidate, and the candidates seen.
+            int[] sharedCounts = new int[activityWeights.length];
+            int[] candidates = new int[activityWeights.length];
+            int[][] suggested = new int[to - from][];
+            for (int i = from; i < to; i++) {
+                suggested[i - from] = suggest(userIds[i], activityWeights, sharedCounts, candidates);
+            }
+            try {
+                write(userIds, from, to, suggested);
+            } catch (SQLException e) {
+                log.error("Failed to write the follow suggestions of {} users, retrying with the next refresh",
+                        to - from, e);
+                requeue(userIds, from, to);
+                return;
+            }
+            for (int[] ids : suggested) {
+                suggestions.add(ids.length);
+            }
+        }
+
+    }
+
+    /**
+     * Returns the best perUser suggestions for userId, best first.
+     * sharedCounts must be all zero and is left that way.
+     */
+    private int[] suggest(int userId, float[] activityWeights, int[] sharedCounts, int[] candidates) {
+        int[] followees = followGraphService.getFollowees(userId);
+        int candidateCount = 0;
+        for (int followeeId : followees) {
+            for (int candidateId : followGraphService.getFollowees(followeeId)) {
+                // Users that joined after the run started wait for the next one.
+                if (candidateId < sharedCounts.length && sharedCounts[candidateId]++ == 0) {
+                    candidates[candidateCount++] = candidateId;
+                }
+            }
+        }
+
+        int[] best = new int[perUser];
+        float[] bestScores = new float[perUser];
+        int size = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            int candidateId = candidates[i];
+            float score = sharedCounts[candidateId] * activityWeights[candidateId];
+            sharedCounts[candidateId] = 0;
+            if (candidateId == userId || Arrays.binarySearch(followees, candidateId) >= 0) {
+                continue;
+            }
+            if (size == perUser && !isBetter(score, candidateId, bestScores[size - 1], best[size - 1])) {
+                continue;
+            }
+            // Insertion into the sorted best list, dropping its last entry when full.
+            int position = size < perUser ? size++ : perUser - 1;
+            while (position > 0 && isBetter(score, candidateId, bestScores[position - 1], best[position - 1])) {
+                best[position] = best[position - 1];
+                bestScores[position] = bestScores[position - 1];
+                position--;
+            }
+            best[position] = candidateId;
+            bestScores[position] = score;
+        }
+        return Arrays.copyOf(best, size);
+    }
+
+    // Higher scores first, then lower user ids so runs are repeatable.
+    private static boolean isBetter(float score, int userId, float otherScore, int otherUserId) {
+        return score > otherScore || (score == otherScore && userId < otherUserId);
+    }
+
+    // Replaces the suggestions of userIds[from, to) in one transaction.
+    private void write(int[] userIds, int from, int to, int[][] suggested) throws SQLException {
+        try (QueryScope scope = QueryScope.open("follow-suggestions-write");
+                Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        QueryRegistry.get("follow-suggestions-delete", to - from))) {
+                    QueryRegistry.bind(pstmt, 1, Arrays.stream(userIds, from, to).boxed().toList());
+                    pstmt.executeUpdate();
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("follow-suggestions-insert"))) {
+                    for (int i = from; i < to; i++) {
+                        int[] ids = suggested[i - from];
+                        for (int position = 0; position < ids.length; position++) {
+                            pstmt.setInt(1, userIds[i]);
+                            pstmt.setInt(2, position);
+                            pstmt.setInt(3, ids[position]);
+                            pstmt.addBatch();
+                        }
+                    }
+                    pstmt.executeBatch();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void requeue(int[] userIds, int from, int to) {
+        for (int i = from; i < to; i++) {
+            changedUserIds.add(userIds[i]);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdown();
+    }
+
+}
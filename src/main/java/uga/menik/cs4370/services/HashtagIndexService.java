@@ -0,0 +1,239 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.services;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Service;
+
+import com.mysql.cj.jdbc.JdbcConnection;
+
+import uga.menik.cs4370.utility.HashtagParser;
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
+
+/**
+ * This service keeps an in memory inverted index from hashtag to the ids
+ * of the posts that carry it.
+ * Each tag maps to a posting list: a sorted array of primitive post ids.
+ * The index is loaded from the hashtag table at startup and updated by
+ * HomeController.createPost after a post commits.
+ * A search for several tags intersects the posting lists, smallest list
+ * first, so only the ids of one result page need to be hydrated from the
+ * database.
+ */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
+@Service
+public class HashtagIndexService implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(HashtagIndexService.class);
+
+    private final DataSource dataSource;
+
+    // Normalized tag -> posting list. Posting lists are never changed after
+    // they are published, so readers need no locking.
+    private final ConcurrentHashMap<String, PostingList> index = new ConcurrentHashMap<>();
+
+    public HashtagIndexService(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Loads the index from the hashtag table.
+     * Runs before the web server accepts requests.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        Map<String, PostingList> loaded = new HashMap<>();
+        int entries = 0;
+        try (QueryScope scope = QueryScope.open("hashtag-index-load");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("hashtag-index-load"))) {
+            // Stream the rows instead of buffering the whole table in the driver.
+            // Integer.MIN_VALUE is Connector/J's streaming switch; other
+            // drivers reject a negative fetch size.
+            if (conn.isWrapperFor(JdbcConnection.class)) {
+                pstmt.setFetchSize(Integer.MIN_VALUE);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String hashtag = HashtagParser.normalize(rs.getString("hashTag"));
+                    if (hashtag.isEmpty()) {
+                        continue;
+                    }
+                    loaded.compute(hashtag, (tag, list) -> PostingList.with(list, rsInt(rs)));
+                    entries++;
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Failed to load the hashtag index", e);
+        }
+        loaded.forEach((tag, list) -> index.merge(tag, list, PostingList::union));
+        log.info("Hashtag index loaded. Tags: {}, entries: {}", index.size(), entries);
+    }
+
+    // Reads postId inside the compute lambda, which cannot throw SQLException.
+    private static int rsInt(ResultSet rs) {
+        try {
+            return rs.getInt("postId");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Adds a committed post to the posting lists of its (normalized) hashtags.
+     */
+    public void addPost(int postId, List<String> hashtags) {
+        for (String hashtag : hashtags) {
+            index.compute(hashtag, (tag, list) -> PostingList.with(list, postId));
+        }
+    }
+
+    /**
+     * Returns up to limit ids of posts that carry every one of the given
+     * normalized hashtags, newest (highest id) first, all lower than beforePostId.
+     * Post ids are assigned in creation order, so id order is time order.
+     */
+    public List<Integer> search(List<String> hashtags, int beforePostId, int limit) {
+        List<PostingList> lists = new ArrayList<>(hashtags.size());
+        for (String hashtag : hashtags) {
+            PostingList list = index.get(hashtag);
+            if (list == null) {
+                // One tag without posts empties the intersection.
+                return List.of();
+            }
+            lists.add(list);
+        }
+        if (lists.isEmpty()) {
+            return List.of();
+        }
+        // Drive the intersection with the shortest list and probe the others.
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        PostingList driver = lists.get(0);
+
+        List<Integer> result = new ArrayList<>(limit);
+        int position = driver.indexBefore(beforePostId);
+        while (position >= 0 && result.size() < limit) {
+            int postId = driver.get(position);
+            boolean inAll = true;
+            for (int i = 1; i < lists.size() && inAll; i++) {
+                inAll = lists.get(i).contains(postId);
+            }
+            if (inAll) {
+                result.add(postId);
+            }
+            position--;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of posts carrying the normalized hashtag.
+     */
+    public int countPosts(String hashtag) {
+        PostingList list = index.get(hashtag);
+        return list == null ? 0 : list.size();
+    }
+
+    /**
+     * Immutable view of a sorted array of post ids.
+     * Appending a larger id writes into spare capacity past the end of the
+     * view and returns a new, longer view of the same array. Views handed
+     * out earlier never look past their own size, so they are unaffected.
+     */
+    static final class PostingList {
+
+        private final int[] ids;
+        private final int size;
+
+        private PostingList(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        /**
+         * Returns a list holding the ids of list plus postId.
+         * Must only be called for the latest version of a list, which the
+         * ConcurrentHashMap.compute calls above guarantee.
+         */
+        static PostingList with(PostingList list, int postId) {
+            if (list == null) {
+                int[] ids = new int[4];
+                ids[0] = postId;
+                return new PostingList(ids, 1);
+            }
+            int[] ids = list.ids;
+            int size = list.size;
+            if (size > 0 && ids[size - 1] >= postId) {
+                // Out of order or duplicate id, e.g. from posts committed concurrently.
+                int position = Arrays.binarySearch(ids, 0, size, postId);
+                if (position >= 0) {
+                    return list;
+                }
+                int insertAt = -position - 1;
+                int[] copy = new int[Math.max(size + 1, ids.length)];
+                System.arraycopy(ids, 0, copy, 0, insertAt);
+                copy[insertAt] = postId;
+                System.arraycopy(ids, insertAt, copy, insertAt + 1, size - insertAt);
+                return new PostingList(copy, size + 1);
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            ids[size] = postId;
+            return new PostingList(ids, size + 1);
+        }
+
+        /**
+         * Returns the union of two lists.
+         */
+        static PostingList union(PostingList a, PostingList b) {
+            PostingList result = a;
+            for (int i = 0; i < b.size; i++) {
+                result = with(result, b.ids[i]);
+            }
+            return result;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int position) {
+            return ids[position];
+        }
+
+        boolean contains(int postId) {
+            return Arrays.binarySearch(ids, 0, size, postId) >= 0;
+        }
+
+        /**
+         * Returns the position of the largest id lower than postId, or -1.
+         */
+        int indexBefore(int postId) {
+            int position = Arrays.binarySearch(ids, 0, size, postId);
+            return position >= 0 ? position - 1 : -position - 2;
+        }
+    }
+
+}
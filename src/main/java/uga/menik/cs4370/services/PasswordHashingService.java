@@ -0,0 +1,146 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.services;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * This service runs BCrypt password hashing on a small dedicated pool.
+ * BCrypt is deliberately slow. Running it on Tomcat worker threads lets
+ * a burst of logins occupy every worker and stall all other pages.
+ * Here at most concurrency hashes run at once and at most queue-depth
+ * more may wait. Any further request is rejected right away with a
+ * RejectedExecutionException, which the login and registration pages
+ * show as a "try again" message.
+ *
+ * Metrics:
+ *   microblog.password.hash           timer, tagged operation=encode|matches
+ *   microblog.password.queue.depth    hashes waiting for a pool thread
+ *   microblog.password.active         hashes currently running
+ *   microblog.password.rejected       requests turned away while saturated
+ */
+@Service
+public class PasswordHashingService implements DisposableBean {
+
+    private final BCryptPasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    // Longest time a request thread waits for its hash, queueing included.
+    private final long timeoutMs;
+
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejectedCounter;
+
+    public PasswordHashingService(MeterRegistry meterRegistry,
+            @Value("${microblog.password.bcrypt-strength:10}") int strength,
+            @Value("${microblog.password.concurrency:2}") int concurrency,
+            @Value("${microblog.password.queue-depth:16}") int queueDepth,
+            @Value("${microblog.password.timeout-ms:5000}") long timeoutMs) {
+        this.passwordEncoder = new BCryptPasswordEncoder(strength);
+        this.timeoutMs = timeoutMs;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueDepth),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.encodeTimer = Timer.builder("microblog.password.hash")
+                .tag("operation", "encode")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.matchesTimer = Timer.builder("microblog.password.hash")
+                .tag("operation", "matches")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("microblog.password.rejected")
+                .register(meterRegistry);
+        Gauge.builder("microblog.password.queue.depth", executor, e -> e.getQueue().size())
+                .register(meterRegistry);
+        Gauge.builder("microblog.password.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Hashes a new password with the configured cost factor.
+     * Throws RejectedExecutionException if the pool is saturated.
+     */
+    public String encode(String rawPassword) {
+        return run(() -> encodeTimer.record(() -> passwordEncoder.encode(rawPassword)));
+    }
+
+    /**
+     * Checks a password against a stored hash.
+     * Throws RejectedExecutionException if the pool is saturated.
+     */
+    public boolean matches(String rawPassword, String storedHash) {
+        return run(() -> matchesTimer.record(() -> passwordEncoder.matches(rawPassword, storedHash)));
+    }
+
+    /**
+     * Returns true if the stored hash was made with a lower cost factor
+     * than the configured one and should be replaced after the next
+     * successful login. Cheap, it only reads the hash prefix.
+     */
+    public boolean needsRehash(String storedHash) {
+        return passwordEncoder.upgradeEncoding(storedHash);
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw e;
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejectedCounter.increment();
+            throw new RejectedExecutionException("Password hashing timed out.", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for password hashing.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+}
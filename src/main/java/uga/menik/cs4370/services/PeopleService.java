@@ -6,6 +6,8 @@ This is a project developed by Dr. Menik to give the students an opportunity to
 package uga.menik.cs4370.services;
 
 import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -15,97 +17,171 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import uga.menik.cs4370.models.FollowableUser;
+import uga.menik.cs4370.models.PeopleCursor;
+import uga.menik.cs4370.models.PeoplePage;
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
 import uga.menik.cs4370.utility.Utility;
 
 /**
  * This service contains people related functions.
  */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
 @Service
 public class PeopleService {
+
+    private static final Logger log = LoggerFactory.getLogger(PeopleService.class);
     // setup datasource
     private final DataSource dataSource;
-    public PeopleService(DataSource dataSource) {
+    private final FollowGraphService followGraphService;
+    public PeopleService(DataSource dataSource, FollowGraphService followGraphService) {
         this.dataSource = dataSource;
+        this.followGraphService = followGraphService;
     }
+
     /**
-     * This function should query and return all users that 
-     * are followable. The list should not contain the user 
-     * with id userIdToExclude.
+     * Stored as user.lastActiveAt for users that never posted or commented.
+     * A real value instead of NULL keeps (lastActiveAt, userId) a plain
+     * keyset for paging.
      */
-    public List<FollowableUser> getFollowableUsers(String userIdToExclude) {
-        List<FollowableUser> followableUsers = new ArrayList<>();
-        // Write an SQL query to find the users that are not the current user.
-        String query = "SELECT userId, firstName, lastName FROM user WHERE userId != ?";
-        // Run the query with a datasource.
-        // See UserService.java to see how to inject DataSource instance and
-        // use it to run a query.
-        try (Connection conn = dataSource.getConnection();
-            PreparedStatement statement = conn.prepareStatement(query)) {
-                statement.setString(1, userIdToExclude);
-                try (ResultSet rs = statement.executeQuery()) {
-                    while (rs.next()) {
-                        String userId = rs.getString("userId");
-                        String firstName = rs.getString("firstName");
-                        String lastName = rs.getString("lastName");
-                        followableUsers.add(new FollowableUser(userId, firstName, lastName, false, "Mar 10, 2025"));
-                    }
-                } // try
-            }
-        catch (SQLException e) {
-            e.printStackTrace();
-        } // try catch
-        // Use the query result to create a list of followable users.
-        // See UserService.java to see how to access rows and their attributes
-        // from the query result.
-        // Check the following createSampleFollowableUserList function to see 
-        // how to create a list of FollowableUsers.
-
-        // Replace the following line and return the list you created.
-        return followableUsers;
+    public static final LocalDateTime NEVER_ACTIVE = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private static final DateTimeFormatter LAST_ACTIVE_FORMAT =
+            DateTimeFormatter.ofPattern("MMM dd, yyyy, hh:mm a");
+
+    /**
+     * One row of the people query before the follow state is known.
+     */
+    private record PersonRow(int userId, String firstName, String lastName, LocalDateTime lastActiveAt) {
     }
 
-    /** Used to get a list of all users that are not the current one
-     * @param - String loggedInUserId
-     * @return - List of users who are not the current one
+    /**
+     * Records activity of a user. Must be called with the connection of
+     * the transaction that writes the post or comment.
      */
-    public List<FollowableUser> getAllUsersExceptCurrent(String loggedInUserId) {
+    public void touchLastActive(Connection conn, String userId, LocalDateTime activeAt) throws SQLException {
+        // GREATEST keeps the newer value if transactions commit out of order.
+        try (PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("touch-last-active"))) {
+            pstmt.setObject(1, activeAt);
+            pstmt.setString(2, userId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Used to get one page of the users that are not the current one,
+     * most recently active first.
+     * If namePrefix is not blank only users whose first or last name
+     * starts with it are listed.
+     * The page is read from the user_last_active index after the cursor, so
+     * a page costs the same regardless of the number of users. The follow
+     * state comes from FollowGraphService.
+     */
+    public PeoplePage getPeoplePage(String loggedInUserId, String namePrefix, PeopleCursor cursor, int limit) {
+        boolean isSearch = namePrefix != null && !namePrefix.isBlank();
+        String query = QueryRegistry.get(isSearch ? "people-search" : "people-list");
+
         List<FollowableUser> users = new ArrayList<FollowableUser>();
+        PeopleCursor nextCursor = null;
+
+        try (QueryScope scope = QueryScope.open("people-list");
+                Connection conn = dataSource.getConnection()) {
+            List<PersonRow> rows = new ArrayList<>();
+
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                int index = 1;
+                pstmt.setString(index++, loggedInUserId);
+                pstmt.setObject(index++, cursor.getLastActiveAt());
+                pstmt.setObject(index++, cursor.getLastActiveAt());
+                pstmt.setInt(index++, cursor.getUserId());
+                if (isSearch) {
+                    String pattern = escapeLike(namePrefix.trim()) + "%";
+                    pstmt.setString(index++, pattern);
+                    pstmt.setString(index++, pattern);
+                }
+                // One extra row tells whether there is a next page.
+                pstmt.setInt(index++, limit + 1);
 
-        String query = """
-            SELECT u.userId, u.username, u.firstName, u.lastName,
-                EXISTS (SELECT 1 FROM follow f WHERE f.followerUserId = ? AND f.followeeUserId = u.userId) AS isFollowed,
-                COALESCE((SELECT MAX(p.postDate) FROM post p WHERE p.userId = u.userId), 'Never') AS lastActiveDate
-            FROM `user` u
-            WHERE userId != ?
-            ORDER BY lastActiveDate DESC, firstName, lastName
-        """;
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new PersonRow(
+                            rs.getInt("userId"),
+                            rs.getString("firstName"),
+                            rs.getString("lastName"),
+                            rs.getObject("lastActiveAt", LocalDateTime.class)
+                        ));
+                    }
+                }
+            }
 
-        try (Connection conn = dataSource.getConnection();
-            PreparedStatement pstmt = conn.prepareStatement(query)) {
+            if (rows.size() > limit) {
+                rows = rows.subList(0, limit);
+                PersonRow last = rows.get(limit - 1);
+                nextCursor = new PeopleCursor(last.lastActiveAt(), last.userId());
+            }
 
-                pstmt.setString(1, loggedInUserId);
-                pstmt.setString(2, loggedInUserId);
+            int followerUserId = Integer.parseInt(loggedInUserId);
+            for (PersonRow row : rows) {
+                users.add(new FollowableUser(
+                    String.valueOf(row.userId()),
+                    row.firstName(),
+                    row.lastName(),
+                    followGraphService.isFollowing(followerUserId, row.userId()),
+                    NEVER_ACTIVE.equals(row.lastActiveAt()) ? "Never" : row.lastActiveAt().format(LAST_ACTIVE_FORMAT)
+                ));
+            }
+        } catch (SQLException e) {
+            log.error("Failed to load a people page for userId={}", loggedInUserId, e);
+        }
 
-                ResultSet rs = pstmt.executeQuery();
+        return new PeoplePage(users, nextCursor);
+    }
 
+    /**
+     * Used to get the "who to follow" suggestions of a user, best first.
+     * They are computed offline by FollowSuggestionService, so this is one
+     * range read on the follow_suggestion primary key. Users followed since
+     * the suggestions were computed are left out.
+     */
+    public List<FollowableUser> getSuggestedUsers(String loggedInUserId, int limit) {
+        List<FollowableUser> users = new ArrayList<FollowableUser>();
+        int followerUserId = Integer.parseInt(loggedInUserId);
+        try (QueryScope scope = QueryScope.open("people-suggestions");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("people-suggestions"))) {
+            pstmt.setInt(1, followerUserId);
+            pstmt.setInt(2, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    users.add(new FollowableUser( 
-                        rs.getString("userId"),
+                    int userId = rs.getInt("userId");
+                    if (followGraphService.isFollowing(followerUserId, userId)) {
+                        continue;
+                    }
+                    LocalDateTime lastActiveAt = rs.getObject("lastActiveAt", LocalDateTime.class);
+                    users.add(new FollowableUser(
+                        String.valueOf(userId),
                         rs.getString("firstName"),
                         rs.getString("lastName"),
-                        rs.getBoolean("isFollowed"),
-                        rs.getString("lastActiveDate")
+                        false,
+                        NEVER_ACTIVE.equals(lastActiveAt) ? "Never" : lastActiveAt.format(LAST_ACTIVE_FORMAT)
                     ));
                 }
-
+            }
         } catch (SQLException e) {
-            e.printStackTrace();
+            log.error("Failed to load the suggested users of userId={}", loggedInUserId, e);
         }
-
         return users;
     }
 
+    // Makes LIKE treat % and _ in user input literally.
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
 }
@@ -0,0 +1,433 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.services;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import uga.menik.cs4370.models.Comment;
+import uga.menik.cs4370.models.CommentCursor;
+import uga.menik.cs4370.models.ExpandedPost;
+import uga.menik.cs4370.models.Post;
+import uga.menik.cs4370.models.User;
+import uga.menik.cs4370.services.ViewerStateService.ViewerMarks;
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
+
+/**
+ * This service builds Post objects from feed query results and loads
+ * single posts with their comments.
+ * Feed queries select the author's userId instead of joining the user
+ * table. The authors of a whole page are resolved at once through the
+ * shared UserCache. Whether the viewer hearted or bookmarked them comes
+ * from ViewerStateService instead of per row EXISTS subqueries.
+ * Heart counts include hearts still waiting in ToggleWriteBehindService.
+ *
+ * Concurrent views of the same post page share one database read of the
+ * post and its comments, which do not depend on the viewer. The first
+ * view reads them and the others wait for its result, which is kept for
+ * a short time after it arrives. A read is only shared by views that saw
+ * the same post version in ContentVersionService, so every write that
+ * bumps the version, including the viewer's own comment or heart, is
+ * followed by a fresh read. The viewer's flags are applied to each view.
+ *
+ * Metrics:
+ *   microblog.post-page.loads{outcome=executed}   views that read the database
+ *   microblog.post-page.loads{outcome=coalesced}  views that waited for a read in flight
+ *   microblog.post-page.loads{outcome=cached}     views served from a read that had finished
+ */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
+@Service
+public class PostService {
+
+    private static final Logger log = LoggerFactory.getLogger(PostService.class);
+
+    /**
+     * One row of a feed query before its author is resolved.
+     * Feed queries must select postId, userId, postText, postDate,
+     * createdAt, heartsCount and commentsCount.
+     */
+    public record PostRow(int postId, int userId, String postText, String postDate,
+            LocalDateTime createdAt, int heartsCount, int commentsCount) {
+    }
+
+    /**
+     * One row of a comment query before its author is resolved.
+     */
+    private record CommentRow(String commentId, String commentText, String commentDate,
+            LocalDateTime createdAt, int userId) {
+    }
+
+    /**
+     * A page of a post as read at a post version. commentsCursor is the
+     * encoded cursor and limit the number of comments read.
+     */
+    private record PostPageKey(String postId, long postVersion, String commentsCursor, int limit) {
+    }
+
+    /**
+     * The viewer independent rows of a post page.
+     */
+    private record PostPageRows(PostRow post, List<CommentRow> comments) {
+    }
+
+    private final DataSource dataSource;
+    private final UserCache userCache;
+    private final ViewerStateService viewerStateService;
+    private final ToggleWriteBehindService toggleWriteBehindService;
+    private final QueryFanOutService queryFanOutService;
+    private final ContentVersionService contentVersionService;
+
+    // Post page reads in flight or finished less than coalesce-ttl-ms ago.
+    // Null if coalescing is turned off.
+    private final AsyncCache<PostPageKey, PostPageRows> postPages;
+
+    private final Counter executedLoads;
+    private final Counter coalescedLoads;
+    private final Counter cachedLoads;
+
+    public PostService(DataSource dataSource, UserCache userCache, ViewerStateService viewerStateService,
+            ToggleWriteBehindService toggleWriteBehindService, QueryFanOutService queryFanOutService,
+            ContentVersionService contentVersionService, MeterRegistry meterRegistry,
+            @Value("${microblog.post-page.coalesce-ttl-ms:1000}") long coalesceTtlMs,
+            @Value("${microblog.post-page.coalesce-maximum-size:10000}") long coalesceMaximumSize) {
+        this.dataSource = dataSource;
+        this.userCache = userCache;
+        this.viewerStateService = viewerStateService;
+        this.toggleWriteBehindService = toggleWriteBehindService;
+        this.queryFanOutService = queryFanOutService;
+        this.contentVersionService = contentVersionService;
+        this.postPages = coalesceTtlMs <= 0 ? null : Caffeine.newBuilder()
+                .maximumSize(coalesceMaximumSize)
+                .expireAfterWrite(Duration.ofMillis(coalesceTtlMs))
+                .buildAsync();
+
+        this.executedLoads = Counter.builder("microblog.post-page.loads").tag("outcome", "executed")
+                .register(meterRegistry);
+        this.coalescedLoads = Counter.builder("microblog.post-page.loads").tag("outcome", "coalesced")
+                .register(meterRegistry);
+        this.cachedLoads = Counter.builder("microblog.post-page.loads").tag("outcome", "cached")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reads every remaining row of a feed query.
+     */
+    public List<PostRow> readRows(ResultSet rs) throws SQLException {
+        List<PostRow> rows = new ArrayList<>();
+        while (rs.next()) {
+            rows.add(new PostRow(
+                rs.getInt("postId"),
+                rs.getInt("userId"),
+                rs.getString("postText"),
+                rs.getString("postDate"),
+                rs.getObject("createdAt", LocalDateTime.class),
+                rs.getInt("heartsCount"),
+                rs.getInt("commentsCount")
+            ));
+        }
+        return rows;
+    }
+
+    /**
+     * Turns rows into posts as seen by viewerUserId. All authors are resolved
+     * with one cache lookup and the heart and bookmark flags with one
+     * ViewerStateService lookup. Rows whose author no longer exists are skipped.
+     */
+    public List<Post> toPosts(List<PostRow> rows, String viewerUserId) {
+        Set<Integer> authorIds = new HashSet<>();
+        Set<Integer> postIds = new HashSet<>();
+        for (PostRow row : rows) {
+            authorIds.add(row.userId());
+            postIds.add(row.postId());
+        }
+        Map<Integer, User> authors = userCache.getUsers(authorIds);
+        ViewerMarks marks = viewerStateService.getMarks(viewerUserId);
+        Map<Integer, Integer> pendingHearts = toggleWriteBehindService.getPendingHeartDeltas(postIds);
+
+        List<Post> posts = new ArrayList<Post>(rows.size());
+        for (PostRow row : rows) {
+            User author = authors.get(row.userId());
+            if (author == null) {
+                continue;
+            }
+            posts.add(new Post(
+                String.valueOf(row.postId()),
+                row.postText(),
+                row.postDate(),
+                author,
+                Math.max(row.heartsCount() + pendingHearts.getOrDefault(row.postId(), 0), 0),
+                row.commentsCount(),
+                marks.isHearted(row.postId()),
+                marks.isBookmarked(row.postId())
+            ));
+        }
+        return posts;
+    }
+
+    /**
+     * Loads the posts with the given ids as seen by viewerUserId.
+     * The returned list follows the order of postIds. Ids of posts that
+     * do not exist are skipped. The caller names the QueryScope.
+     */
+    public List<Post> getPostsByIds(List<Integer> postIds, String viewerUserId) {
+        if (postIds.isEmpty()) {
+            return new ArrayList<Post>();
+        }
+
+        Map<Integer, PostRow> rowsById = new HashMap<>();
+        try (Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("posts-by-ids", postIds.size()))) {
+            QueryRegistry.bind(pstmt, 1, postIds);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                for (PostRow row : readRows(rs)) {
+                    rowsById.put(row.postId(), row);
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Failed to load posts {}", postIds, e);
+        }
+
+        List<PostRow> rows = new ArrayList<>(postIds.size());
+        for (int postId : postIds) {
+            PostRow row = rowsById.get(postId);
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        return toPosts(rows, viewerUserId);
+    }
+
+    /**
+     * Returns the hearts count of a post, including hearts still waiting
+     * in ToggleWriteBehindService. Returns null if it cannot be read.
+     */
+    public Integer getHeartsCount(int postId) {
+        int heartsCount = 0;
+        try (QueryScope scope = QueryScope.open("heart-count");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("heart-count"))) {
+            pstmt.setInt(1, postId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                // A post without a stats row has no hearts yet.
+                if (rs.next()) {
+                    heartsCount = rs.getInt("heartsCount");
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Failed to read the hearts count of postId={}", postId, e);
+            return null;
+        }
+        int pending = toggleWriteBehindService.getPendingHeartDeltas(List.of(postId)).getOrDefault(postId, 0);
+        return Math.max(heartsCount + pending, 0);
+    }
+
+    /**
+     * Loads a post together with one page of its comments, oldest comment
+     * first, as seen by viewerUserId. The rows are shared with concurrent
+     * views of the same page, see above. The authors of the post and of
+     * every comment are resolved with one cache lookup.
+     * Returns null if the post does not exist.
+     */
+    public ExpandedPost getExpandedPost(String postId, String viewerUserId,
+            CommentCursor commentsCursor, int commentsPageSize) {
+        // One more than the page size, to know whether there is a next page.
+        PostPageRows rows = getPostPageRows(postId, commentsCursor, commentsPageSize + 1);
+        if (rows == null) {
+            return null;
+        }
+        PostRow postRow = rows.post();
+        List<CommentRow> commentRows = rows.comments();
+
+        CommentCursor nextCommentsCursor = null;
+        if (commentRows.size() > commentsPageSize) {
+            commentRows = commentRows.subList(0, commentsPageSize);
+            CommentRow last = commentRows.get(commentsPageSize - 1);
+            nextCommentsCursor = new CommentCursor(last.createdAt(), Integer.parseInt(last.commentId()));
+        }
+
+        Set<Integer> authorIds = new HashSet<>();
+        authorIds.add(postRow.userId());
+        for (CommentRow commentRow : commentRows) {
+            authorIds.add(commentRow.userId());
+        }
+        Map<Integer, User> authors = userCache.getUsers(authorIds);
+        ViewerMarks marks = viewerStateService.getMarks(viewerUserId);
+        int pendingHearts = toggleWriteBehindService.getPendingHeartDeltas(List.of(postRow.postId()))
+                .getOrDefault(postRow.postId(), 0);
+
+        User user = authors.get(postRow.userId());
+        if (user == null) {
+            return null;
+        }
+        List<Comment> comments = new ArrayList<Comment>(commentRows.size());
+        for (CommentRow commentRow : commentRows) {
+            User commentUser = authors.get(commentRow.userId());
+            if (commentUser != null) {
+                comments.add(new Comment(
+                    commentRow.commentId(),
+                    commentRow.commentText(),
+                    commentRow.commentDate(),
+                    commentUser
+                ));
+            }
+        }
+
+        // Construct the whole post
+        return new ExpandedPost(
+            String.valueOf(postRow.postId()),
+            postRow.postText(),
+            postRow.postDate(),
+            user,
+            Math.max(postRow.heartsCount() + pendingHearts, 0),
+            postRow.commentsCount(),
+            marks.isHearted(postRow.postId()),
+            marks.isBookmarked(postRow.postId()),
+            comments,
+            commentsCursor,
+            nextCommentsCursor
+        );
+    }
+
+    /**
+     * Returns the rows of a post page, reading them only if no view of the
+     * same page and post version is reading them or has just read them.
+     * Returns null if the post does not exist or cannot be read.
+     */
+    private PostPageRows getPostPageRows(String postId, CommentCursor commentsCursor, int limit) {
+        if (postPages == null) {
+            executedLoads.increment();
+            return readPostPageRows(postId, commentsCursor, limit);
+        }
+        // The version is read before the rows, as for ETags. A read shared
+        // under it is at least as new as the version.
+        long postVersion;
+        try {
+            postVersion = contentVersionService.getPostVersion(Integer.parseInt(postId));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        PostPageKey key = new PostPageKey(postId, postVersion, commentsCursor.encode(), limit);
+
+        CompletableFuture<PostPageRows> read = new CompletableFuture<>();
+        CompletableFuture<PostPageRows> shared = postPages.asMap().putIfAbsent(key, read);
+        if (shared != null) {
+            (shared.isDone() ? cachedLoads : coalescedLoads).increment();
+            return shared.join();
+        }
+
+        executedLoads.increment();
+        PostPageRows rows;
+        try {
+            rows = readPostPageRows(postId, commentsCursor, limit);
+        } catch (RuntimeException e) {
+            read.completeExceptionally(e);
+            throw e;
+        }
+        // Caffeine drops an entry completed with null, so a failed read or
+        // a missing post is read again by the next view.
+        read.complete(rows);
+        return rows;
+    }
+
+    /**
+     * Reads the post and a page of its comments at the same time through
+     * QueryFanOutService.
+     */
+    private PostPageRows readPostPageRows(String postId, CommentCursor commentsCursor, int limit) {
+        CompletableFuture<List<CommentRow>> commentsFuture =
+                queryFanOutService.supply(() -> getCommentRows(postId, commentsCursor, limit));
+        PostRow postRow = getPostRow(postId);
+        List<CommentRow> commentRows = commentsFuture.join();
+        if (postRow == null || commentRows == null) {
+            return null;
+        }
+        return new PostPageRows(postRow, commentRows);
+    }
+
+    /**
+     * Reads the post of an expanded post. Returns null if the post does
+     * not exist or cannot be read.
+     */
+    private PostRow getPostRow(String postId) {
+        try (QueryScope scope = QueryScope.open("post-detail");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement postStmt = conn.prepareStatement(QueryRegistry.get("post-detail"))) {
+            postStmt.setString(1, postId);
+
+            try (ResultSet postRs = postStmt.executeQuery()) {
+                List<PostRow> rows = readRows(postRs);
+                return rows.isEmpty() ? null : rows.get(0);
+            }
+        } catch (SQLException e) {
+            log.error("Failed to load postId={}", postId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads up to limit comments of a post after the cursor, oldest first.
+     * Returns null if they cannot be read.
+     * The commentDate >= bound lets the database start the range scan of
+     * the comment_post_date index at the cursor, and ordering by the whole
+     * index lets it stop after limit rows instead of sorting every comment.
+     */
+    private List<CommentRow> getCommentRows(String postId, CommentCursor cursor, int limit) {
+        List<CommentRow> commentRows = new ArrayList<>();
+        try (QueryScope scope = QueryScope.open("comment-list");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement commentStmt = conn.prepareStatement(QueryRegistry.get("comment-list"))) {
+            commentStmt.setString(1, postId);
+            commentStmt.setObject(2, cursor.getCommentDate());
+            commentStmt.setObject(3, cursor.getCommentDate());
+            commentStmt.setInt(4, cursor.getCommentId());
+            commentStmt.setInt(5, limit);
+
+            try (ResultSet commentRs = commentStmt.executeQuery()) {
+                while (commentRs.next()) {
+                    commentRows.add(new CommentRow(
+                        commentRs.getString("commentId"),
+                        commentRs.getString("commentText"),
+                        commentRs.getString("commentDate"),
+                        commentRs.getObject("commentDate", LocalDateTime.class),
+                        commentRs.getInt("userId")
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Failed to load the comments of postId={}", postId, e);
+            return null;
+        }
+        return commentRows;
+    }
+
+}
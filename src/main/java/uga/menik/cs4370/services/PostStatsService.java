@@ -0,0 +1,158 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.services;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
+
+/**
+ * This service maintains the materialized heart and comment counters
+ * stored in the post_stats table.
+ * Write paths call the adjust functions with the connection
+ * of their own transaction so the counter changes commit or roll back
+ * together with the heart or comment rows they describe.
+ * Feed queries read the counters with a LEFT JOIN on post_stats.
+ */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
+@Service
+public class PostStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(PostStatsService.class);
+
+    private final DataSource dataSource;
+    private final ContentVersionService contentVersionService;
+
+    // Number of posts reconciled per statement. Keeps each statement short
+    // so the job never holds locks on a large part of post_stats.
+    private final int reconcileBatchSize;
+
+    public PostStatsService(DataSource dataSource, ContentVersionService contentVersionService,
+            @Value("${microblog.post-stats.reconcile-batch-size:1000}") int reconcileBatchSize) {
+        this.dataSource = dataSource;
+        this.contentVersionService = contentVersionService;
+        this.reconcileBatchSize = reconcileBatchSize;
+    }
+
+    /**
+     * Adds delta to the comments counter of the post.
+     * Must be called with the connection of the transaction that
+     * inserted or deleted the comment row.
+     */
+    public void adjustCommentsCount(Connection conn, String postId, int delta) throws SQLException {
+        adjust(conn, QueryRegistry.get("post-stats-adjust-comments"), postId, delta);
+    }
+
+    private void adjust(Connection conn, String sql, String postId, int delta) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, postId);
+            pstmt.setString(2, postId);
+            pstmt.setString(3, postId);
+            pstmt.setInt(4, delta);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Adds the given post id to delta changes to the hearts counters.
+     * Must be called with the connection of the transaction that
+     * inserted or deleted the heart rows, after it did. Posts that do not
+     * exist are skipped.
+     */
+    public void adjustHeartsCounts(Connection conn, Map<Integer, Integer> deltas) throws SQLException {
+        // Nearly every post changes by 1 or -1, so this is one or two
+        // statements per flush.
+        Map<Integer, List<Integer>> postIdsByDelta = new HashMap<>();
+        deltas.forEach((postId, delta) -> postIdsByDelta.computeIfAbsent(delta, d -> new ArrayList<>()).add(postId));
+        for (Map.Entry<Integer, List<Integer>> entry : postIdsByDelta.entrySet()) {
+            List<Integer> postIds = entry.getValue();
+            for (int from = 0; from < postIds.size(); from += reconcileBatchSize) {
+                List<Integer> chunk = postIds.subList(from, Math.min(from + reconcileBatchSize, postIds.size()));
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        QueryRegistry.get("post-stats-adjust-hearts", chunk.size()))) {
+                    int index = QueryRegistry.bind(pstmt, 1, chunk);
+                    pstmt.setInt(index, entry.getKey());
+                    pstmt.executeUpdate();
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds drifted counters from the heart and comment tables.
+     * Runs once when the application starts, which also fills post_stats
+     * for databases created before the table existed, and then periodically.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${microblog.post-stats.reconcile-interval-ms:3600000}",
+            fixedDelayString = "${microblog.post-stats.reconcile-interval-ms:3600000}")
+    public void reconcile() {
+        int driftedPosts = 0;
+        try (QueryScope scope = QueryScope.open("post-stats-reconcile");
+                Connection conn = dataSource.getConnection()) {
+            int maxPostId = 0;
+            try (PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("post-stats-max-post-id"));
+                    ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    maxPostId = rs.getInt(1);
+                }
+            }
+
+            // The affected row count of an upsert cannot tell the drifted
+            // rows apart: with useAffectedRows=false, the driver default,
+            // MySQL counts a row set to its current values too. So the
+            // drifted posts are read first and only they are written.
+            try (PreparedStatement drifted = conn.prepareStatement(QueryRegistry.get("post-stats-drifted-range"))) {
+                for (int low = 0; low < maxPostId; low += reconcileBatchSize) {
+                    drifted.setInt(1, low);
+                    drifted.setInt(2, low + reconcileBatchSize);
+                    List<Integer> postIds = new ArrayList<>();
+                    try (ResultSet rs = drifted.executeQuery()) {
+                        while (rs.next()) {
+                            postIds.add(rs.getInt(1));
+                        }
+                    }
+                    if (postIds.isEmpty()) {
+                        continue;
+                    }
+                    try (PreparedStatement pstmt = conn.prepareStatement(
+                            QueryRegistry.get("post-stats-reconcile-posts", postIds.size()))) {
+                        QueryRegistry.bind(pstmt, 1, postIds);
+                        pstmt.executeUpdate();
+                    }
+                    // Pages showing these posts must not be answered with
+                    // 304. See ContentVersionService.java.
+                    postIds.forEach(contentVersionService::postChanged);
+                    driftedPosts += postIds.size();
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Post stats reconciliation failed", e);
+            return;
+        }
+        log.info("Post stats reconciliation finished. Drifted posts: {}", driftedPosts);
+    }
+
+}
@@ -0,0 +1,76 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.services;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * This service runs independent queries of one page at the same time,
+ * so the page waits for its slowest query instead of the sum of them.
+ *
+ * The queries run on a small dedicated pool. At most threads queries run
+ * at once and at most queue-depth more may wait. When the pool is
+ * saturated a query runs on the calling thread instead, so a busy server
+ * falls back to running a page's queries one after the other rather than
+ * turning the page away. Each query takes its own connection, so threads
+ * should stay well below the connection pool size.
+ *
+ * Metrics:
+ *   microblog.query-fan-out.queue.depth    queries waiting for a pool thread
+ *   microblog.query-fan-out.active         queries currently running
+ */
+@Service
+public class QueryFanOutService implements DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+
+    public QueryFanOutService(MeterRegistry meterRegistry,
+            @Value("${microblog.query-fan-out.threads:4}") int threads,
+            @Value("${microblog.query-fan-out.queue-depth:32}") int queueDepth) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueDepth),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "query-fan-out-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        Gauge.builder("microblog.query-fan-out.queue.depth", executor, e -> e.getQueue().size())
+                .register(meterRegistry);
+        Gauge.builder("microblog.query-fan-out.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts a query on the pool, or runs it right away on the calling
+     * thread if the pool is saturated. The query must open its own
+     * QueryScope and connection, as it may run on another thread.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> query) {
+        return CompletableFuture.supplyAsync(query, executor);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,380 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.services;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import uga.menik.cs4370.models.FeedCursor;
+import uga.menik.cs4370.models.FeedPage;
+import uga.menik.cs4370.models.Post;
+import uga.menik.cs4370.services.PostService.PostRow;
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
+
+/**
+ * This service maintains the precomputed home feeds in the timeline table.
+ * New posts are pushed to the timeline of every follower of the author
+ * (fan-out on write) and each timeline is capped at a fixed number of entries.
+ * Authors with more followers than the fan-out limit are skipped on write.
+ * Their posts are read straight from the post table when a follower loads
+ * the home page (fan-out on read), so one post of a very popular user does
+ * not turn into a huge insert while the author waits. Those authors are
+ * recorded in the timeline_read_author table with the time they crossed the
+ * limit. When one drops back under it, the posts made since then are copied
+ * to the followers' timelines, so they stay in the home feed.
+ * The number of entries of every timeline is counted once at startup and
+ * then tracked as entries are written, so trimming only touches the
+ * timelines that grew past their capacity.
+ * Every change to a user's home feed bumps the user's feed version in
+ * ContentVersionService, see getFeedVersion.
+ */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
+@Service
+public class TimelineService {
+
+    private static final Logger log = LoggerFactory.getLogger(TimelineService.class);
+
+    private final DataSource dataSource;
+    private final PostService postService;
+    private final ContentVersionService contentVersionService;
+    private final FollowGraphService followGraphService;
+
+    // Maximum number of entries kept per timeline.
+    private final int capacity;
+
+    // Authors with more followers than this are read on demand instead of fanned out.
+    private final int fanOutFollowerLimit;
+
+    // Authors that currently exceed fanOutFollowerLimit. Replaced as a whole on refresh.
+    private volatile Set<Integer> fanOutOnReadAuthors = Collections.emptySet();
+
+    // userId -> number of entries in the user's timeline. Approximate: an
+    // entry the database ignored as a duplicate may be counted.
+    private final Map<Integer, Integer> timelineSizes = new ConcurrentHashMap<>();
+
+    public TimelineService(DataSource dataSource, PostService postService,
+            ContentVersionService contentVersionService, FollowGraphService followGraphService,
+            @Value("${microblog.timeline.capacity:800}") int capacity,
+            @Value("${microblog.timeline.fan-out-follower-limit:5000}") int fanOutFollowerLimit) {
+        this.dataSource = dataSource;
+        this.postService = postService;
+        this.contentVersionService = contentVersionService;
+        this.followGraphService = followGraphService;
+        this.capacity = capacity;
+        this.fanOutFollowerLimit = fanOutFollowerLimit;
+    }
+
+    /**
+     * Returns the version of the home feed of userId. It changes whenever
+     * a post arrives in the user's timeline, the user follows or unfollows
+     * someone, or a fan-out on read author posts.
+     */
+    public long getFeedVersion(int userId) {
+        long version = contentVersionService.getFeedVersion(userId);
+        // Posts of fan-out on read authors never touch the timeline, so
+        // their author versions count towards every user's feed.
+        for (int authorUserId : fanOutOnReadAuthors) {
+            version += contentVersionService.getAuthorVersion(authorUserId);
+        }
+        return version;
+    }
+
+    /**
+     * Pushes a newly committed post to the timelines of the author's followers.
+     * Does nothing for authors that are served by fan-out on read.
+     */
+    public void onPostCreated(int authorUserId, int postId, LocalDateTime createdAt) {
+        if (fanOutOnReadAuthors.contains(authorUserId)) {
+            return;
+        }
+        try (QueryScope scope = QueryScope.open("timeline-fan-out");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("timeline-fan-out"))) {
+            pstmt.setInt(1, postId);
+            pstmt.setInt(2, authorUserId);
+            pstmt.setObject(3, createdAt);
+            pstmt.setInt(4, authorUserId);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            // The post itself is committed. It is only missing from the
+            // followers' precomputed feeds.
+            log.error("Failed to fan out postId={} of userId={}", postId, authorUserId, e);
+            return;
+        }
+        // The followers' feeds changed.
+        for (int followerUserId : followGraphService.getFollowers(authorUserId)) {
+            contentVersionService.feedChanged(followerUserId);
+            timelineSizes.merge(followerUserId, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Copies the most recent posts of the followee into the follower's timeline.
+     * Also done for fan-out on read authors, whose posts are then read from
+     * both places until they drop back under the limit.
+     */
+    public void onFollow(int followerUserId, int followeeUserId) {
+        try (QueryScope scope = QueryScope.open("timeline-follow");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("timeline-backfill"))) {
+            pstmt.setInt(1, followerUserId);
+            pstmt.setInt(2, followeeUserId);
+            pstmt.setInt(3, capacity);
+            timelineSizes.merge(followerUserId, pstmt.executeUpdate(), Integer::sum);
+        } catch (SQLException e) {
+            log.error("Failed to backfill the timeline of userId={} with userId={}", followerUserId, followeeUserId, e);
+        }
+        contentVersionService.feedChanged(followerUserId);
+    }
+
+    /**
+     * Removes the posts of the unfollowed user from the follower's timeline.
+     */
+    public void onUnfollow(int followerUserId, int followeeUserId) {
+        try (QueryScope scope = QueryScope.open("timeline-unfollow");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("timeline-prune"))) {
+            pstmt.setInt(1, followerUserId);
+            pstmt.setInt(2, followeeUserId);
+            timelineSizes.merge(followerUserId, -pstmt.executeUpdate(), Integer::sum);
+        } catch (SQLException e) {
+            log.error("Failed to remove userId={} from the timeline of userId={}", followeeUserId, followerUserId, e);
+        }
+        contentVersionService.feedChanged(followerUserId);
+    }
+
+    /**
+     * Returns one page of the home feed of userId, newest first, starting
+     * right after the given cursor.
+     * Post ids come from the precomputed timeline plus, if the user follows
+     * any fan-out on read authors, those authors' own posts. Both branches are
+     * limited to one page before the posts are joined with their details.
+     * Which fan-out on read authors the user follows is answered by
+     * FollowGraphService, so the query does not join the follow table.
+     */
+    public FeedPage getHomeFeed(String userId, FeedCursor cursor, int limit) {
+        int followerUserId = Integer.parseInt(userId);
+        List<Integer> readAuthors = new ArrayList<>();
+        for (int authorUserId : fanOutOnReadAuthors) {
+            if (followGraphService.isFollowing(followerUserId, authorUserId)) {
+                readAuthors.add(authorUserId);
+            }
+        }
+
+        String query = readAuthors.isEmpty()
+                ? QueryRegistry.get("home-feed")
+                : QueryRegistry.get("home-feed-with-authors", readAuthors.size());
+
+        List<PostRow> rows = new ArrayList<>();
+
+        try (QueryScope scope = QueryScope.open("home-feed");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(query)) {
+            int index = 1;
+            pstmt.setString(index++, userId);
+            pstmt.setObject(index++, cursor.getCreatedAt());
+            pstmt.setObject(index++, cursor.getCreatedAt());
+            pstmt.setInt(index++, cursor.getPostId());
+            pstmt.setInt(index++, limit + 1);
+            if (!readAuthors.isEmpty()) {
+                index = QueryRegistry.bind(pstmt, index, readAuthors);
+                pstmt.setObject(index++, cursor.getCreatedAt());
+                pstmt.setObject(index++, cursor.getCreatedAt());
+                pstmt.setInt(index++, cursor.getPostId());
+                pstmt.setInt(index++, limit + 1);
+            }
+            // One extra row tells whether an older page exists.
+            pstmt.setInt(index, limit + 1);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rows = postService.readRows(rs);
+            }
+        } catch (SQLException e) {
+            log.error("Failed to load the home feed of userId={}", userId, e);
+        }
+
+        // The row past the page only tells that an older page exists.
+        FeedCursor nextCursor = null;
+        if (rows.size() > limit) {
+            rows = rows.subList(0, limit);
+            PostRow last = rows.get(limit - 1);
+            nextCursor = new FeedCursor(last.createdAt(), last.postId());
+        }
+        List<Post> posts = postService.toPosts(rows, userId);
+
+        return new FeedPage(posts, nextCursor);
+    }
+
+    /**
+     * Rebuilds the timelines from the follow and post tables when the
+     * timeline table is empty, e.g. on a database created before it existed.
+     * Then counts the entries of every timeline, loads the fan-out on read
+     * authors and trims the timelines.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        try (QueryScope scope = QueryScope.open("timeline-initialize");
+                Connection conn = dataSource.getConnection()) {
+            boolean isEmpty = false;
+            try (PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("timeline-is-empty"));
+                    ResultSet rs = pstmt.executeQuery()) {
+                isEmpty = rs.next() && rs.getBoolean(1);
+            }
+            if (isEmpty) {
+                try (PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("timeline-rebuild"))) {
+                    int rows = pstmt.executeUpdate();
+                    log.info("Timelines rebuilt. Entries: {}", rows);
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("timeline-sizes"));
+                    ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    timelineSizes.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Failed to rebuild the timelines", e);
+        }
+        maintain();
+    }
+
+    /**
+     * Refreshes the set of fan-out on read authors from FollowGraphService,
+     * backfills the timelines of the followers of authors that dropped back
+     * under the limit, and trims the timelines that grew past their capacity.
+     */
+    @Scheduled(initialDelayString = "${microblog.timeline.maintenance-interval-ms:300000}",
+            fixedDelayString = "${microblog.timeline.maintenance-interval-ms:300000}")
+    public void maintain() {
+        try (QueryScope scope = QueryScope.open("timeline-maintenance");
+                Connection conn = dataSource.getConnection()) {
+            refreshReadAuthors(conn);
+
+            List<Integer> overfull = new ArrayList<>();
+            timelineSizes.forEach((userId, size) -> {
+                if (size > capacity) {
+                    overfull.add(userId);
+                }
+            });
+            for (int userId : overfull) {
+                trim(conn, userId);
+            }
+        } catch (SQLException e) {
+            log.error("Timeline maintenance failed", e);
+        }
+    }
+
+    private void refreshReadAuthors(Connection conn) throws SQLException {
+        Set<Integer> authors = followGraphService.getUsersWithMoreFollowersThan(fanOutFollowerLimit);
+
+        Map<Integer, LocalDateTime> recorded = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("timeline-read-authors"));
+                ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                recorded.put(rs.getInt("userId"), rs.getObject("since", LocalDateTime.class));
+            }
+        }
+
+        // A minute early: a post whose createdAt was taken just before this,
+        // but whose fan-out already sees the new set, is still copied when
+        // the author drops back under the limit.
+        LocalDateTime since = LocalDateTime.now().withNano(0).minusMinutes(1);
+        try (PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("timeline-read-author-insert"))) {
+            for (int authorUserId : authors) {
+                if (!recorded.containsKey(authorUserId)) {
+                    pstmt.setInt(1, authorUserId);
+                    pstmt.setObject(2, since);
+                    pstmt.executeUpdate();
+                }
+            }
+        }
+
+        // New posts of the authors that left are fanned out on write from
+        // here. The backfill below may copy some of them again, which the
+        // timeline primary key ignores.
+        fanOutOnReadAuthors = Collections.unmodifiableSet(authors);
+
+        for (Map.Entry<Integer, LocalDateTime> entry : recorded.entrySet()) {
+            int authorUserId = entry.getKey();
+            if (authors.contains(authorUserId)) {
+                continue;
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("timeline-author-backfill"))) {
+                pstmt.setInt(1, authorUserId);
+                pstmt.setObject(2, entry.getValue());
+                pstmt.setInt(3, capacity);
+                int rows = pstmt.executeUpdate();
+                log.info("Fan-out on write resumed for userId={}. Timeline entries copied: {}", authorUserId, rows);
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("timeline-read-author-delete"))) {
+                pstmt.setInt(1, authorUserId);
+                pstmt.executeUpdate();
+            }
+            int[] followers = followGraphService.getFollowers(authorUserId);
+            for (int followerUserId : followers) {
+                contentVersionService.feedChanged(followerUserId);
+                // At most capacity entries each; trim recounts.
+                timelineSizes.merge(followerUserId, capacity, Integer::sum);
+            }
+        }
+    }
+
+    private void trim(Connection conn, int userId) throws SQLException {
+        LocalDateTime oldestCreatedAt = null;
+        int oldestPostId = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("timeline-oldest-kept"))) {
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, capacity - 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    oldestCreatedAt = rs.getObject("createdAt", LocalDateTime.class);
+                    oldestPostId = rs.getInt("postId");
+                }
+            }
+        }
+        if (oldestCreatedAt != null) {
+            try (PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("timeline-trim"))) {
+                pstmt.setInt(1, userId);
+                pstmt.setObject(2, oldestCreatedAt);
+                pstmt.setObject(3, oldestCreatedAt);
+                pstmt.setInt(4, oldestPostId);
+                pstmt.executeUpdate();
+            }
+            // Only the oldest pages lose posts, but their keys are not known here.
+            contentVersionService.feedChanged(userId);
+        }
+        // The tracked size may have counted ignored duplicates.
+        try (PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("timeline-size"))) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                timelineSizes.put(userId, rs.next() ? rs.getInt(1) : 0);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,465 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.services;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
+
+/**
+ * This service buffers heart and bookmark toggles in memory and writes
+ * them to the heart and bookmark tables in periodic multi row batches.
+ * Toggles of the same user on the same post coalesce: only the latest
+ * state is written, so liking and unliking ten times costs nothing.
+ *
+ * Pending toggles are visible right away. ViewerStateService overlays
+ * them on the flags it loads, and PostService adds their effect to the
+ * displayed heart counts.
+ *
+ * A toggle is only queued for a post that exists. Each flush runs in one
+ * transaction and adds the net change of every touched post's hearts to
+ * its counter in post_stats, without counting the heart table. A toggle
+ * whose wasOn did not match the database makes the counter drift by one
+ * until the next reconciliation, see PostStatsService.reconcile.
+ *
+ * A flush that fails on the data, e.g. a post deleted after its toggle
+ * was queued, is written again one toggle per transaction, and the
+ * toggles that still fail are dropped, so one bad toggle does not hold
+ * up the others. A flush that fails otherwise, e.g. while the database is
+ * down, leaves the toggles pending for the next one. On shutdown the
+ * queue is flushed. If that fails, the toggles are written to a spool
+ * file, which is loaded again at the next start. Toggles of at most one
+ * flush interval are lost if the process dies without shutting down.
+ *
+ * The queue holds at most maxPending toggles. A new toggle that finds it
+ * full flushes right away, on the caller's thread, and is rejected if the
+ * queue is still full, e.g. while the database is down.
+ */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
+@Service
+public class ToggleWriteBehindService implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ToggleWriteBehindService.class);
+
+    /**
+     * The two kinds of toggles.
+     */
+    public enum Kind {
+        HEART("heart"), BOOKMARK("bookmark");
+
+        private final String table;
+
+        Kind(String table) {
+            this.table = table;
+        }
+    }
+
+    /**
+     * What became of a toggle.
+     */
+    public enum Outcome {
+        QUEUED,
+        // The post does not exist.
+        NO_SUCH_POST,
+        // The queue is full or the post could not be looked up.
+        UNAVAILABLE
+    }
+
+    /**
+     * One user's toggle on one post.
+     */
+    public record ToggleKey(Kind kind, int userId, int postId) {
+    }
+
+    /**
+     * The state to write and the state the database had before the first
+     * pending toggle of the key. Pending toggles that restore the database
+     * state are still written; they are harmless no-ops.
+     */
+    private record PendingToggle(boolean isOn, boolean wasOn) {
+
+        // Change of the post's heart count once written.
+        int delta() {
+            return isOn == wasOn ? 0 : isOn ? 1 : -1;
+        }
+    }
+
+    private final DataSource dataSource;
+    private final PostStatsService postStatsService;
+    private final ContentVersionService contentVersionService;
+    // Rows per multi row statement.
+    private final int batchSize;
+    // Most toggles the queue holds.
+    private final int maxPending;
+    private final Path spoolFile;
+
+    private final ConcurrentHashMap<ToggleKey, PendingToggle> pending = new ConcurrentHashMap<>();
+
+    // The keys of pending, by userId and, for hearts, by postId, so page
+    // renders look up a few keys instead of scanning the queue. Updated
+    // inside the compute calls on pending, so a key is indexed exactly
+    // while it is pending.
+    private final ConcurrentHashMap<Integer, Set<ToggleKey>> pendingByUser = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Set<ToggleKey>> pendingHeartsByPost = new ConcurrentHashMap<>();
+
+    public ToggleWriteBehindService(DataSource dataSource, PostStatsService postStatsService,
+            ContentVersionService contentVersionService,
+            @Value("${microblog.toggles.batch-size:500}") int batchSize,
+            @Value("${microblog.toggles.max-pending:100000}") int maxPending,
+            @Value("${microblog.toggles.spool-file:pending-toggles.spool}") String spoolFile) {
+        this.dataSource = dataSource;
+        this.postStatsService = postStatsService;
+        this.contentVersionService = contentVersionService;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.spoolFile = Path.of(spoolFile);
+    }
+
+    /**
+     * Queues a heart or bookmark toggle.
+     * wasOn is the state the user saw before the toggle. It is only used
+     * if no toggle of this user on this post is pending yet, in which case
+     * it is the state of the database.
+     */
+    public Outcome toggle(Kind kind, int userId, int postId, boolean isOn, boolean wasOn) {
+        ToggleKey toggleKey = new ToggleKey(kind, userId, postId);
+        // A toggle of a pending key coalesces, takes no room and was
+        // checked when it was queued.
+        if (!pending.containsKey(toggleKey)) {
+            Outcome outcome = checkPost(postId);
+            if (outcome != Outcome.QUEUED) {
+                return outcome;
+            }
+            if (pending.size() >= maxPending) {
+                flush();
+                if (pending.size() >= maxPending) {
+                    return Outcome.UNAVAILABLE;
+                }
+            }
+        }
+        pending.compute(toggleKey, (key, current) -> {
+            if (current == null) {
+                index(key);
+            }
+            return new PendingToggle(isOn, current == null ? wasOn : current.wasOn());
+        });
+        return Outcome.QUEUED;
+    }
+
+    private Outcome checkPost(int postId) {
+        try (QueryScope scope = QueryScope.open("post-exists");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("post-exists"))) {
+            pstmt.setInt(1, postId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? Outcome.QUEUED : Outcome.NO_SUCH_POST;
+            }
+        } catch (SQLException e) {
+            log.error("Failed to look up postId={} for a toggle", postId, e);
+            return Outcome.UNAVAILABLE;
+        }
+    }
+
+    /**
+     * Returns the pending toggles of a user as post id to state.
+     */
+    public Map<Integer, Boolean> getPending(Kind kind, int userId) {
+        Set<ToggleKey> keys = pendingByUser.get(userId);
+        if (keys == null) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, Boolean> result = new HashMap<>();
+        for (ToggleKey key : keys) {
+            PendingToggle toggle = pending.get(key);
+            if (key.kind() == kind && toggle != null) {
+                result.put(key.postId(), toggle.isOn());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns how much the pending heart toggles change the heart count of
+     * each of the given posts. Posts without pending hearts are omitted.
+     */
+    public Map<Integer, Integer> getPendingHeartDeltas(Collection<Integer> postIds) {
+        if (pendingHeartsByPost.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, Integer> deltas = new HashMap<>();
+        for (int postId : postIds) {
+            Set<ToggleKey> keys = pendingHeartsByPost.get(postId);
+            if (keys == null) {
+                continue;
+            }
+            int delta = 0;
+            for (ToggleKey key : keys) {
+                PendingToggle toggle = pending.get(key);
+                if (toggle != null) {
+                    delta += toggle.delta();
+                }
+            }
+            if (delta != 0) {
+                deltas.put(postId, delta);
+            }
+        }
+        return deltas;
+    }
+
+    // Called from the compute calls on pending that add or remove key.
+    private void index(ToggleKey key) {
+        add(pendingByUser, key.userId(), key);
+        if (key.kind() == Kind.HEART) {
+            add(pendingHeartsByPost, key.postId(), key);
+        }
+    }
+
+    private void unindex(ToggleKey key) {
+        remove(pendingByUser, key.userId(), key);
+        if (key.kind() == Kind.HEART) {
+            remove(pendingHeartsByPost, key.postId(), key);
+        }
+    }
+
+    private static void add(ConcurrentHashMap<Integer, Set<ToggleKey>> index, int id, ToggleKey key) {
+        index.compute(id, (k, keys) -> {
+            Set<ToggleKey> result = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+            result.add(key);
+            return result;
+        });
+    }
+
+    private static void remove(ConcurrentHashMap<Integer, Set<ToggleKey>> index, int id, ToggleKey key) {
+        index.computeIfPresent(id, (k, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /**
+     * Writes all pending toggles in one transaction.
+     */
+    @Scheduled(initialDelayString = "${microblog.toggles.flush-interval-ms:1000}",
+            fixedDelayString = "${microblog.toggles.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<ToggleKey, PendingToggle> batch = new HashMap<>(pending);
+        try {
+            write(batch);
+        } catch (SQLException e) {
+            if (!isDataError(e)) {
+                // Everything stays pending and is retried by the next flush.
+                log.error("Failed to flush {} toggles, retrying with the next flush", batch.size(), e);
+                return;
+            }
+            log.warn("Failed to flush {} toggles, writing them one by one", batch.size(), e);
+            writeOneByOne(batch);
+            return;
+        }
+        written(batch);
+    }
+
+    // Writes each toggle in a transaction of its own and drops the ones
+    // that fail on their data. Stops at any other failure, the rest stays
+    // pending.
+    private void writeOneByOne(Map<ToggleKey, PendingToggle> batch) {
+        for (Map.Entry<ToggleKey, PendingToggle> entry : batch.entrySet()) {
+            Map<ToggleKey, PendingToggle> single = Map.of(entry.getKey(), entry.getValue());
+            try {
+                write(single);
+            } catch (SQLException e) {
+                if (!isDataError(e)) {
+                    log.error("Failed to flush toggles, retrying with the next flush", e);
+                    return;
+                }
+                log.error("Dropping toggle {} that cannot be written", entry.getKey(), e);
+                pending.computeIfPresent(entry.getKey(), (k, current) -> {
+                    unindex(k);
+                    return null;
+                });
+                contentVersionService.viewerChanged(entry.getKey().userId());
+                continue;
+            }
+            written(single);
+        }
+    }
+
+    // Class 22 is bad data, class 23 a broken constraint, e.g. a foreign
+    // key to a deleted post. Writing the toggle again fails the same way.
+    private static boolean isDataError(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && (state.startsWith("22") || state.startsWith("23"));
+    }
+
+    private void write(Map<ToggleKey, PendingToggle> batch) throws SQLException {
+        Map<Kind, List<ToggleKey>> adds = new HashMap<>();
+        Map<Kind, List<ToggleKey>> removes = new HashMap<>();
+        Map<Integer, Integer> heartDeltas = new HashMap<>();
+        batch.forEach((key, toggle) -> {
+            (toggle.isOn() ? adds : removes).computeIfAbsent(key.kind(), kind -> new ArrayList<>()).add(key);
+            if (key.kind() == Kind.HEART && toggle.delta() != 0) {
+                heartDeltas.merge(key.postId(), toggle.delta(), Integer::sum);
+            }
+        });
+        heartDeltas.values().removeIf(delta -> delta == 0);
+
+        try (QueryScope scope = QueryScope.open("toggle-flush");
+                Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (Kind kind : Kind.values()) {
+                    insertRows(conn, kind, adds.getOrDefault(kind, List.of()));
+                    deleteRows(conn, kind, removes.getOrDefault(kind, List.of()));
+                }
+                postStatsService.adjustHeartsCounts(conn, heartDeltas);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void written(Map<ToggleKey, PendingToggle> batch) {
+        // Drop what was written. A toggle that came in meanwhile stays
+        // pending, now relative to the state just written.
+        batch.forEach((key, written) -> pending.computeIfPresent(key, (k, current) -> {
+            if (current == written) {
+                unindex(k);
+                return null;
+            }
+            return new PendingToggle(current.isOn(), written.isOn());
+        }));
+
+        // Pages built between the commit and the line above may have counted
+        // a heart twice, and the bookmarks page reads the bookmark table.
+        batch.keySet().forEach(key -> {
+            contentVersionService.viewerChanged(key.userId());
+            if (key.kind() == Kind.HEART) {
+                contentVersionService.postChanged(key.postId());
+            }
+        });
+    }
+
+    private void insertRows(Connection conn, Kind kind, List<ToggleKey> keys) throws SQLException {
+        // IGNORE skips rows that exist already or whose post was deleted.
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            List<ToggleKey> chunk = keys.subList(from, Math.min(from + batchSize, keys.size()));
+            executeRows(conn, QueryRegistry.get(kind.table + "-insert-rows", chunk.size()), chunk, false);
+        }
+    }
+
+    private void deleteRows(Connection conn, Kind kind, List<ToggleKey> keys) throws SQLException {
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            List<ToggleKey> chunk = keys.subList(from, Math.min(from + batchSize, keys.size()));
+            executeRows(conn, QueryRegistry.get(kind.table + "-delete-rows", chunk.size()), chunk, true);
+        }
+    }
+
+    // The statement has places for QueryRegistry.bucket(keys.size()) rows.
+    // The ones past the keys repeat the last key, which inserts or deletes
+    // nothing more. The delete statements list the postIds before the rows.
+    private static void executeRows(Connection conn, String sql, List<ToggleKey> keys, boolean postIdsFirst)
+            throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (postIdsFirst) {
+                for (int i = 0; i < QueryRegistry.bucket(keys.size()); i++) {
+                    pstmt.setInt(index++, keys.get(Math.min(i, keys.size() - 1)).postId());
+                }
+            }
+            for (int i = 0; i < QueryRegistry.bucket(keys.size()); i++) {
+                ToggleKey key = keys.get(Math.min(i, keys.size() - 1));
+                pstmt.setInt(index++, key.postId());
+                pstmt.setInt(index++, key.userId());
+            }
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Loads toggles spooled by a previous shutdown.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (!Files.exists(spoolFile)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(spoolFile, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                String[] fields = line.split(",");
+                if (fields.length != 5) {
+                    continue;
+                }
+                ToggleKey key = new ToggleKey(Kind.valueOf(fields[0]), Integer.parseInt(fields[1]),
+                        Integer.parseInt(fields[2]));
+                if (pending.put(key, new PendingToggle(Boolean.parseBoolean(fields[3]),
+                        Boolean.parseBoolean(fields[4]))) == null) {
+                    index(key);
+                }
+            }
+            Files.delete(spoolFile);
+            log.info("Spooled toggles loaded: {}", pending.size());
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Failed to load spooled toggles from {}", spoolFile, e);
+        }
+    }
+
+    /**
+     * Flushes on shutdown and spools whatever could not be written.
+     */
+    @Override
+    public void destroy() {
+        flush();
+        if (pending.isEmpty()) {
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(spoolFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<ToggleKey, PendingToggle> entry : pending.entrySet()) {
+                ToggleKey key = entry.getKey();
+                PendingToggle toggle = entry.getValue();
+                writer.write(key.kind() + "," + key.userId() + "," + key.postId() + ","
+                        + toggle.isOn() + "," + toggle.wasOn());
+                writer.newLine();
+            }
+            log.info("Pending toggles spooled to {}: {}", spoolFile.toAbsolutePath(), pending.size());
+        } catch (IOException e) {
+            log.error("Failed to spool {} pending toggles, they are lost", pending.size(), e);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.services;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import uga.menik.cs4370.models.User;
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
+
+/**
+ * Application wide cache of the display records of users, keyed by userId.
+ * Feed queries only select the author ids and resolve the authors here,
+ * so the same few hundred authors are loaded and allocated once instead
+ * of once per row. The cache is size bounded with Caffeine's W-TinyLFU
+ * eviction. User objects are immutable and compute their avatar path once
+ * when they are created, so cached instances are shared freely.
+ */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
+@Service
+public class UserCache {
+
+    private static final Logger log = LoggerFactory.getLogger(UserCache.class);
+
+    private final DataSource dataSource;
+    private final Cache<Integer, User> cache;
+
+    public UserCache(DataSource dataSource,
+            @Value("${microblog.user-cache.maximum-size:10000}") long maximumSize) {
+        this.dataSource = dataSource;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the user with the given id or null if there is none.
+     */
+    public User getUser(int userId) {
+        return getUsers(Set.of(userId)).get(userId);
+    }
+
+    /**
+     * Returns the users with the given ids, keyed by id.
+     * All ids missing from the cache are loaded with one query.
+     * Ids of users that do not exist are absent from the result.
+     */
+    public Map<Integer, User> getUsers(Collection<Integer> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return cache.getAll(userIds, this::loadUsers);
+    }
+
+    /**
+     * Drops the cached record of a user. Must be called whenever the
+     * name of a user changes or a user is registered.
+     */
+    public void invalidate(int userId) {
+        cache.invalidate(userId);
+    }
+
+    private Map<Integer, User> loadUsers(Set<? extends Integer> userIds) {
+        Map<Integer, User> users = new HashMap<>();
+        try (QueryScope scope = QueryScope.open("user-cache-load");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(
+                        QueryRegistry.get("user-cache-load", userIds.size()))) {
+            QueryRegistry.bind(pstmt, 1, userIds);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    users.put(rs.getInt("userId"), new User(
+                        rs.getString("userId"),
+                        rs.getString("firstName"),
+                        rs.getString("lastName")
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            // Nothing is cached for the ids, the next lookup retries.
+            log.error("Failed to load users {}", userIds, e);
+        }
+        return users;
+    }
+
+}
@@ -9,103 +9,196 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.sql.DataSource;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.web.context.annotation.SessionScope;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import uga.menik.cs4370.models.Post;
 import uga.menik.cs4370.models.User;
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
 
 /**
  * This is a service class that enables user related functions.
  * The class interacts with the database through a dataSource instance.
  * See authenticate and registerUser functions for examples.
- * This service object is spcial. It's lifetime is limited to a user session.
- * Usual services generally have application lifetime.
+ * The service has application lifetime like the other services.
+ * The only per session state is the id of the logged in user, kept as
+ * an Integer session attribute. The User object itself comes from the
+ * shared UserCache.
  */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
 @Service
-@SessionScope
 public class UserService {
 
+    private static final Logger log = LoggerFactory.getLogger(UserService.class);
+
+    // Name of the session attribute holding the logged in user's id.
+    public static final String SESSION_USER_ID = "microblog.userId";
+
     // dataSource enables talking to the database.
     private final DataSource dataSource;
-    // passwordEncoder is used for password security.
-    private final BCryptPasswordEncoder passwordEncoder;
-    // This holds 
-    private User loggedInUser = null;
+    // postService builds posts from feed query rows.
+    private final PostService postService;
+    // userCache holds the display records of users.
+    private final UserCache userCache;
+    // passwordHashingService runs BCrypt off the request threads.
+    private final PasswordHashingService passwordHashingService;
 
     /**
      * See AuthInterceptor notes regarding dependency injection and
      * inversion of control.
      */
     @Autowired
-    public UserService(DataSource dataSource) {
+    public UserService(DataSource dataSource, PostService postService, UserCache userCache,
+            PasswordHashingService passwordHashingService) {
         this.dataSource = dataSource;
-        this.passwordEncoder = new BCryptPasswordEncoder();
+        this.postService = postService;
+        this.userCache = userCache;
+        this.passwordHashingService = passwordHashingService;
     }
 
     /**
      * Authenticate user given the username and the password and
-     * stores user object for the logged in user in session scope.
+     * stores the id of the logged in user in the current session.
      * Returns true if authentication is succesful. False otherwise.
+     * The password check runs on the PasswordHashingService pool and throws
+     * RejectedExecutionException if that pool is saturated.
+     * A hash made with an older, lower cost factor is replaced after a
+     * successful login, so raising the cost needs no migration.
      */
     public boolean authenticate(String username, String password) throws SQLException {
-        // Note the ? mark in the query. It is a place holder that we will later replace.
-        final String sql = "select * from user where username = ?";
-        try (Connection conn = dataSource.getConnection();
+        // Note the ? mark in the login query of queries.sql. It is a place
+        // holder that we will later replace.
+        final String sql = QueryRegistry.get("login");
+        int userId;
+        String storedPasswordHash;
+        try (QueryScope scope = QueryScope.open("login");
+                Connection conn = dataSource.getConnection();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             // Following line replaces the first place holder with username.
             pstmt.setString(1, username);
 
             try (ResultSet rs = pstmt.executeQuery()) {
-                // Traverse the result rows one at a time.
-                // Note: This specific while loop will only run at most once 
-                // since username is unique.
-                while (rs.next()) {
-                    // Note: rs.get.. functions access attributes of the current row.
-                    String storedPasswordHash = rs.getString("password");
-                    boolean isPassMatch = passwordEncoder.matches(password, storedPasswordHash);
-                    // Note: 
-                    if (isPassMatch) {
-                        String userId = rs.getString("userId");
-                        String firstName = rs.getString("firstName");
-                        String lastName = rs.getString("lastName");
-
-                        // Initialize and retain the logged in user.
-                        loggedInUser = new User(userId, firstName, lastName);
-                    }
-                    return isPassMatch;
+                // Note: There is at most one row since username is unique.
+                if (!rs.next()) {
+                    return false;
                 }
+                // Note: rs.get.. functions access attributes of the current row.
+                userId = rs.getInt("userId");
+                storedPasswordHash = rs.getString("password");
+            }
+        }
+
+        // The connection is returned to the pool before the slow hash check.
+        boolean isPassMatch = passwordHashingService.matches(password, storedPasswordHash);
+        if (isPassMatch) {
+            if (passwordHashingService.needsRehash(storedPasswordHash)) {
+                rehashPassword(userId, password, storedPasswordHash);
+            }
+            // Retain only the id of the logged in user.
+            logIn(userId);
+        }
+        return isPassMatch;
+    }
+
+    /**
+     * Replaces the stored hash of a user with one made with the current
+     * cost factor. Only replaces the hash the login was checked against,
+     * so a password change made in the meantime is never overwritten.
+     * A failure only means the upgrade is retried at the next login.
+     */
+    private void rehashPassword(int userId, String password, String oldPasswordHash) {
+        final String sql = QueryRegistry.get("password-rehash");
+        try {
+            String newPasswordHash = passwordHashingService.encode(password);
+            try (QueryScope scope = QueryScope.open("password-rehash");
+                    Connection conn = dataSource.getConnection();
+                    PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, newPasswordHash);
+                pstmt.setInt(2, userId);
+                pstmt.setString(3, oldPasswordHash);
+                pstmt.executeUpdate();
             }
+        } catch (SQLException | RejectedExecutionException e) {
+            log.error("Failed to upgrade the password hash of userId={}", userId, e);
         }
-        return false;
+    }
+
+    /**
+     * Stores userId as the logged in user of the current session.
+     * The session id is changed so an id handed out before the login
+     * cannot be used to take over the logged in session.
+     */
+    private void logIn(int userId) {
+        HttpServletRequest request = currentRequest();
+        if (request.getSession(false) != null) {
+            request.changeSessionId();
+        }
+        request.getSession().setAttribute(SESSION_USER_ID, userId);
     }
 
     /**
      * Logs out the user.
      */
     public void unAuthenticate() {
-        loggedInUser = null;
+        HttpSession session = currentRequest().getSession(false);
+        if (session != null) {
+            session.removeAttribute(SESSION_USER_ID);
+        }
     }
 
     /**
      * Checks if a user is currently authenticated.
      */
     public boolean isAuthenticated() {
-        return loggedInUser != null;
+        return getLoggedInUserId(currentRequest()) != null;
+    }
+
+    /**
+     * Checks if the request belongs to a session with a logged in user.
+     * Never creates a session. Used by AuthInterceptor on every request.
+     */
+    public boolean isAuthenticated(HttpServletRequest request) {
+        return getLoggedInUserId(request) != null;
     }
 
     /**
      * Retrieves the currently logged-in user.
+     * Returns null if no user is logged in.
      */
     public User getLoggedInUser() {
-        return loggedInUser;
+        Integer userId = getLoggedInUserId(currentRequest());
+        return userId == null ? null : userCache.getUser(userId);
+    }
+
+    private static Integer getLoggedInUserId(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return null;
+        }
+        return (Integer) session.getAttribute(SESSION_USER_ID);
+    }
+
+    // The request handled by the current thread.
+    private static HttpServletRequest currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.currentRequestAttributes();
+        return ((ServletRequestAttributes) attributes).getRequest();
     }
 
     /**
@@ -117,18 +210,29 @@ public class UserService {
     public boolean registerUser(String username, String password, String firstName, String lastName)
             throws SQLException {
         // Note the ? marks in the SQL statement. They are placeholders like mentioned above.
-        final String registerSql = "insert into user (username, password, firstName, lastName) values (?, ?, ?, ?)";
+        final String registerSql = QueryRegistry.get("register");
+        // Hash before taking a connection. Throws RejectedExecutionException
+        // if the hashing pool is saturated.
+        String passwordHash = passwordHashingService.encode(password);
 
-        try (Connection conn = dataSource.getConnection();
-                PreparedStatement registerStmt = conn.prepareStatement(registerSql)) {
+        try (QueryScope scope = QueryScope.open("register");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement registerStmt = conn.prepareStatement(registerSql,
+                        Statement.RETURN_GENERATED_KEYS)) {
             // Following lines replace the placeholders 1-4 with values.
             registerStmt.setString(1, username);
-            registerStmt.setString(2, passwordEncoder.encode(password));
+            registerStmt.setString(2, passwordHash);
             registerStmt.setString(3, firstName);
             registerStmt.setString(4, lastName);
 
             // Execute the statement and check if rows are affected.
             int rowsAffected = registerStmt.executeUpdate();
+            // Make sure no stale display record is cached for the new id.
+            try (ResultSet keys = registerStmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    userCache.invalidate(keys.getInt(1));
+                }
+            }
             return rowsAffected > 0;
         }
     }
@@ -141,49 +245,20 @@ public class UserService {
     public List<Post> getBookmarkedPosts(String userId) {
         List<Post> bookmarkedPosts = new ArrayList<Post>();
 
-        String query = """
-            SELECT p.postId, p.userId, p.postDate, p.postText, u.username, u.firstName, u.lastName,
-                (SELECT COUNT(*) FROM heart h WHERE h.postId = p.postId) AS heartsCount,
-                (SELECT COUNT(*) FROM comment c WHERE c.postId = p.postId) AS commentsCount,
-                EXISTS (SELECT 1 FROM heart h WHERE h.postId = p.postId AND h.userId = ?) AS isHearted,
-                EXISTS (SELECT 1 FROM bookmark b WHERE b.postId = p.postId AND b.userId = ?) AS isBookmarked
-            FROM bookmark b
-            JOIN post p ON b.postId = p.postId
-            JOIN user u ON p.userId = u.userId
-            WHERE b.userId = ?
-            ORDER BY p.postDate DESC
-        """;
-
-        try (Connection conn = dataSource.getConnection();
+        String query = QueryRegistry.get("bookmark-list");
+
+        try (QueryScope scope = QueryScope.open("bookmark-list");
+                Connection conn = dataSource.getConnection();
         PreparedStatement pstmt = conn.prepareStatement(query)) {
 
             pstmt.setString(1, userId);
-            pstmt.setString(2, userId);
-            pstmt.setString(3, userId);
 
             try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    User postUser = new User(
-                        rs.getString("userId"), 
-                        rs.getString("firstName"), 
-                        rs.getString("lastName")
-                    );
-
-                    Post post = new Post( 
-                        rs.getString("postId"),
-                        rs.getString("postText"),
-                        rs.getString("postDate"),
-                        postUser,
-                        rs.getInt("heartsCount"),
-                        rs.getInt("commentsCount"),
-                        rs.getBoolean("isHearted"),
-                        rs.getBoolean("isBookmarked")
-                    );
-                    bookmarkedPosts.add(post);
-                }
+                // Authors are resolved through the shared user cache.
+                bookmarkedPosts = postService.toPosts(postService.readRows(rs), userId);
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            log.error("Failed to load the bookmarks of userId={}", userId, e);
         }
 
             
@@ -193,53 +268,22 @@ public class UserService {
     public List<Post> getPostsByUserId(String userId) {
         List<Post> posts = new ArrayList<>();
     
-        String query = """
-            SELECT p.postId, p.userId, p.postDate, p.postText, 
-                   u.username, u.firstName, u.lastName,
-                   (SELECT COUNT(*) FROM heart h WHERE h.postId = p.postId) AS heartsCount,
-                   (SELECT COUNT(*) FROM comment c WHERE c.postId = p.postId) AS commentsCount,
-                   EXISTS (SELECT 1 FROM heart h WHERE h.postId = p.postId AND h.userId = ?) AS isHearted,
-                   EXISTS (SELECT 1 FROM bookmark b WHERE b.postId = p.postId AND b.userId = ?) AS isBookmarked
-            FROM post p
-            JOIN user u ON p.userId = u.userId
-            WHERE p.userId = ?
-            ORDER BY p.postDate DESC
-        """;
+        String query = QueryRegistry.get("profile-posts");
     
-        try (Connection conn = dataSource.getConnection();
+        try (QueryScope scope = QueryScope.open("profile-posts");
+                Connection conn = dataSource.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(query)) {
     
             // Set the current user's ID for isHearted and isBookmarked flags
             String currentUserId = getLoggedInUser() != null ? getLoggedInUser().getUserId() : "0";
-            pstmt.setString(1, currentUserId);
-            pstmt.setString(2, currentUserId);
-            pstmt.setString(3, userId);
+            pstmt.setString(1, userId);
     
             try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    User postUser = new User(
-                        rs.getString("userId"),
-                        rs.getString("username"),
-                        rs.getString("firstName"),
-                        rs.getString("lastName")
-                    );
-    
-                    Post post = new Post(
-                        rs.getString("postId"),
-                        rs.getString("postText"),
-                        rs.getString("postDate"),
-                        postUser,
-                        rs.getInt("heartsCount"),
-                        rs.getInt("commentsCount"),
-                        rs.getBoolean("isHearted"),
-                        rs.getBoolean("isBookmarked")
-                    );
-    
-                    posts.add(post);
-                }
+                // Authors are resolved through the shared user cache.
+                posts = postService.toPosts(postService.readRows(rs), currentUserId);
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            log.error("Failed to load the posts of userId={}", userId, e);
         }
     
         return posts;
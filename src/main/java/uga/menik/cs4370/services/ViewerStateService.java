@@ -0,0 +1,205 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.services;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import uga.menik.cs4370.services.ToggleWriteBehindService.Kind;
+import uga.menik.cs4370.utility.QueryRegistry;
+import uga.menik.cs4370.utility.QueryScope;
+
+/**
+ * This service answers "has the viewer hearted / bookmarked this post"
+ * for every post on a page without a query per post.
+ * The ids of all posts a user hearted and bookmarked are loaded with one
+ * query on the heart_user and bookmark_user indexes and cached as two
+ * sorted int arrays. A lookup is a binary search.
+ * PostController keeps cached entries current when a heart or bookmark is
+ * toggled. Toggles still waiting in ToggleWriteBehindService are applied
+ * on top of freshly loaded ids. The cache is bounded by the total number of ids it holds and
+ * drops users that stay inactive.
+ */
+// QueryScope resources are opened for their effect only.
+@SuppressWarnings("try")
+@Service
+public class ViewerStateService {
+
+    private static final Logger log = LoggerFactory.getLogger(ViewerStateService.class);
+
+    private final DataSource dataSource;
+    private final ToggleWriteBehindService toggleWriteBehindService;
+    private final Cache<Integer, ViewerMarks> cache;
+
+    public ViewerStateService(DataSource dataSource, ToggleWriteBehindService toggleWriteBehindService,
+            @Value("${microblog.viewer-state.maximum-ids:5000000}") long maximumIds,
+            @Value("${microblog.viewer-state.expire-after-access-minutes:60}") long expireAfterAccessMinutes) {
+        this.dataSource = dataSource;
+        this.toggleWriteBehindService = toggleWriteBehindService;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumIds)
+                .weigher((Integer userId, ViewerMarks marks) -> marks.weight())
+                .expireAfterAccess(Duration.ofMinutes(expireAfterAccessMinutes))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the hearts and bookmarks of a viewer.
+     * If they cannot be loaded the viewer is shown as having none,
+     * and nothing is cached.
+     */
+    public ViewerMarks getMarks(String viewerUserId) {
+        int userId;
+        try {
+            userId = Integer.parseInt(viewerUserId);
+        } catch (NumberFormatException e) {
+            return ViewerMarks.NONE;
+        }
+        ViewerMarks marks = cache.get(userId, this::load);
+        return marks == null ? ViewerMarks.NONE : marks;
+    }
+
+    /**
+     * Records a heart or unheart of the viewer.
+     * Users that are not cached are loaded fresh on their next page.
+     */
+    public void setHearted(String viewerUserId, String postId, boolean isHearted) {
+        int id = Integer.parseInt(postId);
+        cache.asMap().computeIfPresent(Integer.parseInt(viewerUserId),
+                (userId, marks) -> marks.withHearted(id, isHearted));
+    }
+
+    /**
+     * Records a bookmark or unbookmark of the viewer.
+     */
+    public void setBookmarked(String viewerUserId, String postId, boolean isBookmarked) {
+        int id = Integer.parseInt(postId);
+        cache.asMap().computeIfPresent(Integer.parseInt(viewerUserId),
+                (userId, marks) -> marks.withBookmarked(id, isBookmarked));
+    }
+
+    private ViewerMarks load(int userId) {
+        // Taken before the query: a toggle flushed in between is then
+        // either still in the snapshot or already in the query result.
+        Map<Integer, Boolean> pendingHearts = toggleWriteBehindService.getPending(Kind.HEART, userId);
+        Map<Integer, Boolean> pendingBookmarks = toggleWriteBehindService.getPending(Kind.BOOKMARK, userId);
+        int[] hearted = new int[16];
+        int[] bookmarked = new int[16];
+        int heartedCount = 0;
+        int bookmarkedCount = 0;
+        try (QueryScope scope = QueryScope.open("viewer-state-load");
+                Connection conn = dataSource.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(QueryRegistry.get("viewer-marks"))) {
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int postId = rs.getInt("postId");
+                    if (rs.getInt("kind") == 1) {
+                        if (heartedCount == hearted.length) {
+                            hearted = Arrays.copyOf(hearted, heartedCount * 2);
+                        }
+                        hearted[heartedCount++] = postId;
+                    } else {
+                        if (bookmarkedCount == bookmarked.length) {
+                            bookmarked = Arrays.copyOf(bookmarked, bookmarkedCount * 2);
+                        }
+                        bookmarked[bookmarkedCount++] = postId;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Failed to load the hearts and bookmarks of userId={}", userId, e);
+            return null;
+        }
+        hearted = Arrays.copyOf(hearted, heartedCount);
+        bookmarked = Arrays.copyOf(bookmarked, bookmarkedCount);
+        Arrays.sort(hearted);
+        Arrays.sort(bookmarked);
+        ViewerMarks marks = new ViewerMarks(hearted, bookmarked);
+        for (Map.Entry<Integer, Boolean> entry : pendingHearts.entrySet()) {
+            marks = marks.withHearted(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<Integer, Boolean> entry : pendingBookmarks.entrySet()) {
+            marks = marks.withBookmarked(entry.getKey(), entry.getValue());
+        }
+        return marks;
+    }
+
+    /**
+     * Immutable sets of the post ids a viewer hearted and bookmarked.
+     */
+    public static final class ViewerMarks {
+
+        static final ViewerMarks NONE = new ViewerMarks(new int[0], new int[0]);
+
+        private final int[] hearted;
+        private final int[] bookmarked;
+
+        private ViewerMarks(int[] hearted, int[] bookmarked) {
+            this.hearted = hearted;
+            this.bookmarked = bookmarked;
+        }
+
+        public boolean isHearted(int postId) {
+            return Arrays.binarySearch(hearted, postId) >= 0;
+        }
+
+        public boolean isBookmarked(int postId) {
+            return Arrays.binarySearch(bookmarked, postId) >= 0;
+        }
+
+        ViewerMarks withHearted(int postId, boolean isHearted) {
+            return new ViewerMarks(with(hearted, postId, isHearted), bookmarked);
+        }
+
+        ViewerMarks withBookmarked(int postId, boolean isBookmarked) {
+            return new ViewerMarks(hearted, with(bookmarked, postId, isBookmarked));
+        }
+
+        int weight() {
+            return 1 + hearted.length + bookmarked.length;
+        }
+
+        // Returns a copy of the sorted ids with postId added or removed.
+        private static int[] with(int[] ids, int postId, boolean isPresent) {
+            int position = Arrays.binarySearch(ids, postId);
+            if ((position >= 0) == isPresent) {
+                return ids;
+            }
+            int[] copy;
+            if (isPresent) {
+                int insertAt = -position - 1;
+                copy = new int[ids.length + 1];
+                System.arraycopy(ids, 0, copy, 0, insertAt);
+                copy[insertAt] = postId;
+                System.arraycopy(ids, insertAt, copy, insertAt + 1, ids.length - insertAt);
+            } else {
+                copy = new int[ids.length - 1];
+                System.arraycopy(ids, 0, copy, 0, position);
+                System.arraycopy(ids, position + 1, copy, position, ids.length - position - 1);
+            }
+            return copy;
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.utility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Build step that turns the files under static/ into immutable assets.
+ * It is run by the exec-maven-plugin in the process-classes phase, see
+ * pom.xml, with the classes directory as its only argument.
+ *
+ * Each file static/dir/name.ext is copied to assets/dir/name.hash.ext,
+ * where hash is taken from the file's content. A changed file gets a new
+ * URL, so browsers may keep an asset forever (see WebConfig). Text files
+ * also get a name.hash.ext.gz copy compressed at the highest level, which
+ * is sent as is to browsers that accept gzip. The original URL of every
+ * file and its hashed URL are written to asset-manifest.properties, which
+ * AssetManifest reads at startup.
+ */
+public final class AssetPipeline {
+
+    public static final String ASSETS_DIR = "assets";
+    public static final String MANIFEST = "asset-manifest.properties";
+
+    // Images are compressed already and gain nothing from gzip.
+    private static final Set<String> COMPRESSIBLE = Set.of("css", "js", "svg", "html", "txt", "json", "ico");
+
+    private static final int HASH_BYTES = 5;
+
+    private AssetPipeline() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: AssetPipeline <classes directory>");
+        }
+        Path classes = Paths.get(args[0]);
+        Path staticDir = classes.resolve("static");
+        Path assetsDir = classes.resolve(ASSETS_DIR);
+
+        // Assets of earlier builds would otherwise pile up.
+        deleteRecursively(assetsDir);
+
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(staticDir)) {
+            try (Stream<Path> walk = Files.walk(staticDir)) {
+                walk.filter(Files::isRegularFile).sorted().forEach(files::add);
+            }
+        }
+
+        TreeMap<String, String> manifest = new TreeMap<>();
+        for (Path file : files) {
+            String relative = staticDir.relativize(file).toString().replace('\\', '/');
+            byte[] content = Files.readAllBytes(file);
+            String hashed = hashedName(relative, content);
+
+            Path target = assetsDir.resolve(hashed);
+            Files.createDirectories(target.getParent());
+            Files.write(target, content);
+
+            if (COMPRESSIBLE.contains(extension(relative))) {
+                byte[] gzipped = gzip(content);
+                if (gzipped.length < content.length) {
+                    Files.write(target.resolveSibling(target.getFileName() + ".gz"), gzipped);
+                }
+            }
+            manifest.put("/" + relative, "/" + ASSETS_DIR + "/" + hashed);
+        }
+
+        StringBuilder properties = new StringBuilder("# Generated by AssetPipeline. Original URL=hashed URL.\n");
+        manifest.forEach((from, to) -> properties.append(from).append('=').append(to).append('\n'));
+        Files.writeString(classes.resolve(MANIFEST), properties);
+    }
+
+    /**
+     * Returns dir/name.hash.ext for dir/name.ext.
+     */
+    private static String hashedName(String relative, byte[] content) {
+        String hash = HexFormat.of().formatHex(sha256(content), 0, HASH_BYTES);
+        int slash = relative.lastIndexOf('/');
+        int dot = relative.lastIndexOf('.');
+        if (dot <= slash + 1) {
+            return relative + "." + hash;
+        }
+        return relative.substring(0, dot) + "." + hash + relative.substring(dot);
+    }
+
+    private static String extension(String relative) {
+        int dot = relative.lastIndexOf('.');
+        return dot < 0 ? "" : relative.substring(dot + 1).toLowerCase();
+    }
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length);
+        try (OutputStream out = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+}
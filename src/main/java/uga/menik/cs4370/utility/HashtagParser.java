@@ -0,0 +1,88 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.utility;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts and normalizes hashtags.
+ * Posts and hashtag searches go through the same normalization so that
+ * #Fireworks, #fireworks and #fireworks! all refer to the same tag.
+ * Like the accent insensitive collation of the hashtag column, #café and
+ * #cafe are the same tag too.
+ */
+public class HashtagParser {
+
+    /**
+     * Longest tag that fits in the hashtag.hashTag column.
+     */
+    public static final int MAX_TAG_LENGTH = 100;
+
+    private static final Pattern hashtagPattern = Pattern.compile("#(\\S+)");
+
+    // Punctuation that commonly trails a tag in text, e.g. "#2025!" or "#fun,".
+    private static final Pattern edgePunctuation = Pattern.compile("^[\\p{Punct}&&[^_]]+|[\\p{Punct}&&[^_]]+$");
+
+    // Accents and other combining marks left after decomposition.
+    private static final Pattern marks = Pattern.compile("\\p{M}+");
+
+    private HashtagParser() {
+    }
+
+    /**
+     * Returns the distinct normalized hashtags in the text in the order
+     * they first appear.
+     *
+     * @param text the text of a post
+     * @return the normalized hashtags without duplicates
+     */
+    public static List<String> extract(String text) {
+        // The collation of the hashtag column (utf8mb4_0900_ai_ci) folds
+        // more than normalize does, e.g. ß and ss. Tags it takes for one
+        // would fail the insert of the post's tags, so they are compared
+        // the same way, case and accent insensitively.
+        Collator collator = Collator.getInstance(Locale.ROOT);
+        collator.setStrength(Collator.PRIMARY);
+        Set<CollationKey> seen = new HashSet<CollationKey>();
+        List<String> hashtags = new ArrayList<String>();
+        Matcher mat = hashtagPattern.matcher(text);
+        while (mat.find()) {
+            String hashtag = normalize(mat.group(1));
+            if (!hashtag.isEmpty() && seen.add(collator.getCollationKey(hashtag))) {
+                hashtags.add(hashtag);
+            }
+        }
+        return hashtags;
+    }
+
+    /**
+     * Normalizes one tag: drops a leading #, trims surrounding punctuation,
+     * strips accents, lower cases it and cuts it to the column length.
+     * Returns an empty string if nothing is left.
+     *
+     * @param tag the raw tag
+     * @return the normalized tag
+     */
+    public static String normalize(String tag) {
+        String normalized = tag.startsWith("#") ? tag.substring(1) : tag;
+        normalized = edgePunctuation.matcher(normalized).replaceAll("");
+        normalized = marks.matcher(Normalizer.normalize(normalized, Normalizer.Form.NFKD)).replaceAll("");
+        normalized = normalized.toLowerCase(Locale.ROOT);
+        if (normalized.length() > MAX_TAG_LENGTH) {
+            normalized = normalized.substring(0, MAX_TAG_LENGTH);
+        }
+        return normalized;
+    }
+}
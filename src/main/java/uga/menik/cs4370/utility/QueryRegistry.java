@@ -0,0 +1,254 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.utility;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Holds the named queries of queries.sql, loaded once when the class is
+ * first used. Statements are prepared by name:
+ *
+ *   conn.prepareStatement(QueryRegistry.get("home-feed"))
+ *
+ * so every call sends the same SQL text and the driver's statement cache
+ * (cachePrepStmts) prepares it once per connection.
+ *
+ * A query with a list part, e.g. IN ({?}), is prepared with get(name, size).
+ * The list part is repeated bucket(size) times, the next power of two, and
+ * bind fills the places past the list with its last element, so a list of
+ * 5 ids and one of 7 share the text for 8. Expanded texts are kept, and
+ * how often a lookup found one already is counted in getHits and getMisses.
+ * Those count the registry's own expansions. Whether the driver still has
+ * a text prepared depends on getTextCount staying under its cache size,
+ * see QueryRegistryValidator.
+ */
+public final class QueryRegistry {
+
+    /**
+     * Classpath location of the queries.
+     */
+    public static final String RESOURCE = "queries.sql";
+
+    // First line of a query's doc comment: "* name vN - description".
+    private static final Pattern HEADER = Pattern.compile("\\*\\s*([a-z][a-z0-9-]*) v(\\d+) - .*");
+
+    private static final Map<String, NamedQuery> queries = load();
+
+    // "name#bucket" -> expanded SQL of list queries.
+    private static final Map<String, String> expanded = new ConcurrentHashMap<>();
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    private QueryRegistry() {
+    }
+
+    /**
+     * A query of queries.sql. A list query has parts in braces, all
+     * repeated for the same list.
+     */
+    public record NamedQuery(String name, int version, String sql) {
+
+        public boolean isList() {
+            return sql.indexOf('{') >= 0;
+        }
+
+        /**
+         * Returns the SQL with each list part repeated count times.
+         */
+        public String expand(int count) {
+            StringBuilder expanded = new StringBuilder();
+            int from = 0;
+            for (int open = sql.indexOf('{'); open >= 0; open = sql.indexOf('{', from)) {
+                int close = sql.indexOf('}', open);
+                String group = sql.substring(open + 1, close);
+                expanded.append(sql, from, open).append(String.join(", ", Collections.nCopies(count, group)));
+                from = close + 1;
+            }
+            return expanded.append(sql.substring(from)).toString();
+        }
+    }
+
+    /**
+     * Returns the SQL of a query without a list part.
+     *
+     * @throws IllegalArgumentException if there is no such query or it
+     *         has a list part
+     */
+    public static String get(String name) {
+        NamedQuery query = find(name);
+        if (query.isList()) {
+            throw new IllegalArgumentException("Query " + name + " needs a list size");
+        }
+        return query.sql();
+    }
+
+    /**
+     * Returns the SQL of a list query for a list of size elements. The
+     * list part is repeated bucket(size) times, bind the list with bind.
+     *
+     * @throws IllegalArgumentException if there is no such query or it
+     *         has no list part
+     */
+    public static String get(String name, int size) {
+        String key = name + '#' + bucket(size);
+        String sql = expanded.get(key);
+        if (sql != null) {
+            hits.increment();
+            return sql;
+        }
+        NamedQuery query = find(name);
+        if (!query.isList()) {
+            throw new IllegalArgumentException("Query " + name + " has no list part");
+        }
+        misses.increment();
+        return expanded.computeIfAbsent(key, k -> query.expand(bucket(size)));
+    }
+
+    /**
+     * Returns the number of list elements the SQL for a list of size
+     * elements has places for: the smallest power of two not below size.
+     */
+    public static int bucket(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("A list needs at least one element");
+        }
+        return size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    /**
+     * Binds ids to a list part of one ? starting at index, padded with
+     * the last id to bucket(ids.size()) places.
+     *
+     * @return the index of the first parameter after the list
+     */
+    public static int bind(PreparedStatement pstmt, int index, Collection<? extends Integer> ids)
+            throws SQLException {
+        int last = 0;
+        for (int id : ids) {
+            pstmt.setInt(index++, id);
+            last = id;
+        }
+        for (int i = ids.size(); i < bucket(ids.size()); i++) {
+            pstmt.setInt(index++, last);
+        }
+        return index;
+    }
+
+    /**
+     * Returns every query, in the order of queries.sql.
+     */
+    public static Collection<NamedQuery> getQueries() {
+        return queries.values();
+    }
+
+    /**
+     * Returns the number of list lookups that found the expanded SQL.
+     */
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of list lookups that had to expand the SQL.
+     */
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of distinct SQL texts handed out so far: every
+     * query without a list part and every expanded text.
+     */
+    public static int getTextCount() {
+        return (int) queries.values().stream().filter(query -> !query.isList()).count() + expanded.size();
+    }
+
+    private static NamedQuery find(String name) {
+        NamedQuery query = queries.get(name);
+        if (query == null) {
+            throw new IllegalArgumentException("No query named " + name + " in " + RESOURCE);
+        }
+        return query;
+    }
+
+    private static Map<String, NamedQuery> load() {
+        try (InputStream in = QueryRegistry.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException(RESOURCE + " is not on the classpath");
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            return parse(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, NamedQuery> parse(BufferedReader reader) throws IOException {
+        Map<String, NamedQuery> parsed = new LinkedHashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.startsWith("/*")) {
+                if (!line.isEmpty()) {
+                    throw new IllegalStateException("Unexpected line in " + RESOURCE + ": " + line);
+                }
+                continue;
+            }
+            boolean isQuery = line.equals("/**");
+            String header = null;
+            while ((line = reader.readLine()) != null && !line.trim().equals("*/")) {
+                if (header == null) {
+                    header = line.trim();
+                }
+            }
+            if (!isQuery) {
+                // A section comment.
+                continue;
+            }
+            Matcher matcher = HEADER.matcher(header == null ? "" : header);
+            if (!matcher.matches()) {
+                throw new IllegalStateException("Bad query header in " + RESOURCE + ": " + header);
+            }
+            StringBuilder sql = new StringBuilder();
+            while ((line = reader.readLine()) != null) {
+                sql.append(line).append('\n');
+                if (line.trim().endsWith(";")) {
+                    break;
+                }
+            }
+            String name = matcher.group(1);
+            String text = sql.toString().trim();
+            if (!text.endsWith(";")) {
+                throw new IllegalStateException("Query " + name + " does not end with a semicolon");
+            }
+            text = text.substring(0, text.length() - 1);
+            if (!text.replaceAll("[^{}]", "").matches("(\\{})*")) {
+                throw new IllegalStateException("Query " + name + " has unbalanced or nested braces");
+            }
+            if (parsed.put(name, new NamedQuery(name, Integer.parseInt(matcher.group(2)), text)) != null) {
+                throw new IllegalStateException("Query " + name + " is defined twice in " + RESOURCE);
+            }
+        }
+        return parsed;
+    }
+
+}
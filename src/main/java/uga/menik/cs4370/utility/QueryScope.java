@@ -0,0 +1,68 @@
+/**
+Copyright (c) 2024 Sami Menik, PhD. All rights reserved.
+
+This is a project developed by Dr. Menik to give the students an opportunity to apply database concepts learned in the class in a real world project. Permission is granted to host a running version of this software and to use images or videos of this work solely for the purpose of demonstrating the work to potential employers. Any form of reproduction, distribution, or transmission of the software's source code, in part or whole, without the prior written consent of the copyright owner, is strictly prohibited.
+*/
+package uga.menik.cs4370.utility;
+
+/**
+ * Names the database work of the current thread for TimingDataSource.
+ * Open a scope around the code that gets a connection and runs the
+ * statements, usually as the first resource of the same try:
+ *
+ *   try (QueryScope scope = QueryScope.open("home-feed");
+ *           Connection conn = dataSource.getConnection()) {
+ *
+ * Scopes nest. Closing one restores the name of the enclosing scope.
+ * Statements run outside of any scope are recorded as "unnamed".
+ *
+ * The body of the try never refers to the scope, which javac's [try]
+ * lint reports. Classes that open scopes suppress it with
+ * {@code @SuppressWarnings("try")}.
+ */
+public final class QueryScope implements AutoCloseable {
+
+    /**
+     * Name of statements run outside of any scope.
+     */
+    public static final String UNNAMED = "unnamed";
+
+    private static final ThreadLocal<String> current = new ThreadLocal<>();
+
+    private final String previous;
+
+    private QueryScope(String previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * Names the statements of this thread until the scope is closed.
+     *
+     * @param name the logical query name, e.g. home-feed
+     * @return the scope to close
+     */
+    public static QueryScope open(String name) {
+        QueryScope scope = new QueryScope(current.get());
+        current.set(name);
+        return scope;
+    }
+
+    /**
+     * Returns the name of the innermost open scope of this thread.
+     *
+     * @return the query name or UNNAMED
+     */
+    public static String current() {
+        String name = current.get();
+        return name == null ? UNNAMED : name;
+    }
+
+    @Override
+    public void close() {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+* Schema migrations, applied in order at startup by SchemaMigrator.
+*
+* Each migration is a doc comment whose first line is "N - description",
+* followed by one or more statements, each ending with a semicolon. Numbers
+* only grow and an applied migration is never edited; change the schema
+* with a new one. Applied migrations are recorded in the schema_migration
+* table.
+*
+* Statements must be safe to run while the application serves requests.
+* Columns and indexes are added with ALGORITHM=INPLACE, LOCK=NONE, so MySQL
+* builds them while reads and writes go on, and refuses rather than locking
+* the table if it cannot. Databases other than MySQL run the statement
+* without those two clauses. A statement that fills a column is an UPDATE
+* of one table ending in "WHERE key > ? AND key <= ?", with key the
+* table's integer primary key. It is run once per range of keys, each
+* range in its own transaction, so it never locks the whole table.
+*
+* A migration whose first statement adds a column or an index, or creates
+* a table, that exists already is recorded without running any of its
+* statements, as in a database made with database_setup.sql. So a column
+* and the statement that fills it belong in one migration.
+*
+* Tables that are derived from other tables are created empty. The
+* services that own them fill them at startup: TimelineService rebuilds an
+* empty timeline table, PostStatsService reconciles post_stats and
+* FollowSuggestionService computes follow_suggestion.
+*/
+
+/**
+* 1 - Add post.createdAt
+* The sort key of every feed. Existing posts get the time of their display date
+*/
+ALTER TABLE post ADD COLUMN createdAt DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP AFTER postText,
+    ALGORITHM=INPLACE, LOCK=NONE;
+UPDATE post SET createdAt = STR_TO_DATE(postDate, '%b %d, %Y, %h:%i %p')
+WHERE postId > ? AND postId <= ?;
+
+/**
+* 2 - Add user.lastActiveAt
+* Orders the people list. Existing users get the time of their latest post or comment
+*/
+ALTER TABLE user ADD COLUMN lastActiveAt DATETIME NOT NULL DEFAULT '1970-01-01 00:00:00' AFTER lastName,
+    ALGORITHM=INPLACE, LOCK=NONE;
+UPDATE user u SET lastActiveAt = GREATEST(
+    COALESCE((SELECT MAX(p.createdAt) FROM post p WHERE p.userId = u.userId), '1970-01-01 00:00:00'),
+    COALESCE((SELECT MAX(c.commentDate) FROM comment c WHERE c.userId = u.userId), '1970-01-01 00:00:00'))
+WHERE u.userId > ? AND u.userId <= ?;
+
+/**
+* 3 - Create post_stats
+* Materialized heart and comment counts, filled by PostStatsService at startup
+*/
+CREATE TABLE IF NOT EXISTS post_stats (
+    postId INT NOT NULL,
+    heartsCount INT NOT NULL DEFAULT 0,
+    commentsCount INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (postId),
+    FOREIGN KEY (postId) REFERENCES post(postId) ON DELETE CASCADE
+);
+
+/**
+* 4 - Create timeline
+* Precomputed home feeds, rebuilt by TimelineService at startup while empty
+*/
+CREATE TABLE IF NOT EXISTS timeline (
+    userId INT NOT NULL,
+    postId INT NOT NULL,
+    authorUserId INT NOT NULL,
+    createdAt DATETIME NOT NULL,
+    PRIMARY KEY (userId, createdAt, postId),
+    INDEX timeline_user_author (userId, authorUserId),
+    FOREIGN KEY (userId) REFERENCES user(userId) ON DELETE CASCADE,
+    FOREIGN KEY (postId) REFERENCES post(postId) ON DELETE CASCADE,
+    FOREIGN KEY (authorUserId) REFERENCES user(userId) ON DELETE CASCADE
+);
+
+/**
+* 5 - Create follow_suggestion
+* "Who to follow" suggestions, computed by FollowSuggestionService at startup
+*/
+CREATE TABLE IF NOT EXISTS follow_suggestion (
+    userId INT NOT NULL,
+    position SMALLINT NOT NULL,
+    suggestedUserId INT NOT NULL,
+    PRIMARY KEY (userId, position),
+    FOREIGN KEY (userId) REFERENCES user(userId) ON DELETE CASCADE,
+    FOREIGN KEY (suggestedUserId) REFERENCES user(userId) ON DELETE CASCADE
+);
+
+/**
+* 6 - Index the posts of an author by time
+* Profile pages, fan-out on read authors of the home feed and timeline backfills
+*/
+ALTER TABLE post ADD INDEX post_user_created (userId, createdAt, postId), ALGORITHM=INPLACE, LOCK=NONE;
+
+/**
+* 7 - Index the comments of a post by time
+* Comment pages of the post page, see comment-list in queries.sql
+*/
+ALTER TABLE comment ADD INDEX comment_post_date (postId, commentDate, commentId), ALGORITHM=INPLACE, LOCK=NONE;
+
+/**
+* 8 - Index the followers of a user
+* Fan-out of a new post to the timelines of the author's followers
+*/
+ALTER TABLE follow ADD INDEX follow_followee (followeeUserId, followerUserId), ALGORITHM=INPLACE, LOCK=NONE;
+
+/**
+* 9 - Index the hearts of a user
+* Viewer state of every post page, see viewer-marks in queries.sql
+*/
+ALTER TABLE heart ADD INDEX heart_user (userId, postId), ALGORITHM=INPLACE, LOCK=NONE;
+
+/**
+* 10 - Index the bookmarks of a user
+* Viewer state and the bookmarks page
+*/
+ALTER TABLE bookmark ADD INDEX bookmark_user (userId, postId), ALGORITHM=INPLACE, LOCK=NONE;
+
+/**
+* 11 - Index the hashtags of a post
+* Cascading deletes of posts and hashtag lookups by post
+*/
+ALTER TABLE hashtag ADD INDEX hashtag_post (postId, hashTag), ALGORITHM=INPLACE, LOCK=NONE;
+
+/**
+* 12 - Index the users by activity
+* Keyset pages of the people list, see people-list in queries.sql
+*/
+ALTER TABLE user ADD INDEX user_last_active (lastActiveAt, userId), ALGORITHM=INPLACE, LOCK=NONE;
+
+/**
+* 13 - Index the users by first name
+* Name prefix search of the people page
+*/
+ALTER TABLE user ADD INDEX user_first_name (firstName), ALGORITHM=INPLACE, LOCK=NONE;
+
+/**
+* 14 - Index the users by last name
+* Name prefix search of the people page
+*/
+ALTER TABLE user ADD INDEX user_last_name (lastName), ALGORITHM=INPLACE, LOCK=NONE;
+
+/**
+* 15 - Create timeline_read_author
+* The authors whose posts are read on demand, so their posts are fanned out once they are not
+*/
+CREATE TABLE IF NOT EXISTS timeline_read_author (
+    userId INT NOT NULL,
+    since DATETIME NOT NULL,
+    PRIMARY KEY (userId),
+    FOREIGN KEY (userId) REFERENCES user(userId) ON DELETE CASCADE
+);
@@ -0,0 +1,534 @@
+/*
+* Named queries of the application, loaded at startup by QueryRegistry.
+*
+* Each query is a doc comment whose first line is "name vN - description",
+* followed by the statement, which ends with a semicolon. Code prepares the
+* statement by name, so the SQL text of a query is the same on every call
+* and is prepared once per connection by the driver's statement cache.
+* Bump the version when a statement changes meaning.
+*
+* A part in braces is repeated for each element of a list, e.g. IN ({?}).
+* The number of repetitions is rounded up to a power of two (1, 2, 4, 8 ...)
+* and the list is padded with its last element, so a handful of texts
+* covers every list size. Only lists where a repeated element changes
+* nothing may be padded: IN lists, INSERT IGNORE and DELETE. A query may
+* have several parts in braces; each is repeated for the same list.
+*
+* Every query is prepared once against the schema at startup, see
+* QueryRegistryValidator.java.
+*/
+
+/*
+* HOME ENDPOINTS
+*/
+
+/**
+* post-insert v1 - Create Post endpoint
+* Users can upload a post at the top of the home page and it will enter the DB
+* Runs in one transaction with the hashtag batch. The postId comes back through getGeneratedKeys()
+* and is used to attach the hashtags to the post as a foreign key
+* Used on home page: http://localhost:8080/
+*/
+INSERT INTO post (userId, postDate, postText, createdAt) VALUES (?, ?, ?, ?);
+
+/**
+* home-feed v1 - Gets one page of the posts made by users followed by current user
+* These are placed on the homepage for viewing
+* Post ids are read from the precomputed timeline of the user
+* Keyset paginated on (createdAt, postId). The cursor is the last post of the previous page
+* and the first page uses a cursor after every post. Reads limit + 1 rows to detect a next page
+* Used on home page: http://localhost:8080/?cursor=[cursor]
+*/
+SELECT p.postId, p.userId, p.postText, p.postDate, p.createdAt,
+    COALESCE(ps.heartsCount, 0) AS heartsCount,
+    COALESCE(ps.commentsCount, 0) AS commentsCount
+FROM ((SELECT t.postId
+    FROM timeline t
+    WHERE t.userId = ?
+        AND (t.createdAt < ? OR (t.createdAt = ? AND t.postId < ?))
+    ORDER BY t.createdAt DESC, t.postId DESC
+    LIMIT ?)) ids
+JOIN post p ON p.postId = ids.postId
+LEFT JOIN post_stats ps ON ps.postId = p.postId
+ORDER BY p.createdAt DESC, p.postId DESC
+LIMIT ?;
+
+/**
+* home-feed-with-authors v1 - home-feed for users who follow authors that are too popular to fan out on write
+* Those authors' posts are merged in with a second branch. Which of them the user follows is looked
+* up in FollowGraphService, not the follow table
+* Used on home page: http://localhost:8080/?cursor=[cursor]
+*/
+SELECT p.postId, p.userId, p.postText, p.postDate, p.createdAt,
+    COALESCE(ps.heartsCount, 0) AS heartsCount,
+    COALESCE(ps.commentsCount, 0) AS commentsCount
+FROM ((SELECT t.postId
+    FROM timeline t
+    WHERE t.userId = ?
+        AND (t.createdAt < ? OR (t.createdAt = ? AND t.postId < ?))
+    ORDER BY t.createdAt DESC, t.postId DESC
+    LIMIT ?)
+    UNION
+    (SELECT p2.postId
+    FROM post p2
+    WHERE p2.userId IN ({?})
+        AND (p2.createdAt < ? OR (p2.createdAt = ? AND p2.postId < ?))
+    ORDER BY p2.createdAt DESC, p2.postId DESC
+    LIMIT ?)) ids
+JOIN post p ON p.postId = ids.postId
+LEFT JOIN post_stats ps ON ps.postId = p.postId
+ORDER BY p.createdAt DESC, p.postId DESC
+LIMIT ?;
+
+/**
+* timeline-fan-out v1 - Pushes a new post to the timelines of the author's followers
+* Runs after the post is committed, skipped for fan-out on read authors
+* Used on home page: http://localhost:8080/createpost
+*/
+INSERT IGNORE INTO timeline (userId, postId, authorUserId, createdAt)
+SELECT f.followerUserId, ?, ?, ?
+FROM follow f
+WHERE f.followeeUserId = ?;
+
+/*
+* TIMELINE MAINTENANCE
+*/
+
+/**
+* timeline-is-empty v1 - Tells whether the timelines must be rebuilt at startup
+* See TimelineService.java
+*/
+SELECT NOT EXISTS (SELECT 1 FROM timeline);
+
+/**
+* timeline-rebuild v1 - Rebuilds every timeline from the follow and post tables
+* Only run when the timeline table is empty
+*/
+INSERT IGNORE INTO timeline (userId, postId, authorUserId, createdAt)
+SELECT f.followerUserId, p.postId, p.userId, p.createdAt
+FROM follow f
+JOIN post p ON p.userId = f.followeeUserId;
+
+/**
+* timeline-sizes v1 - Counts the entries of every timeline
+* Run once at startup. From then on TimelineService tracks the sizes as it writes
+*/
+SELECT t.userId, COUNT(*)
+FROM timeline t
+GROUP BY t.userId;
+
+/**
+* timeline-size v1 - Counts the entries of one timeline after it was trimmed
+*/
+SELECT COUNT(*) FROM timeline WHERE userId = ?;
+
+/**
+* timeline-oldest-kept v1 - Finds the oldest entry an overfull timeline keeps
+*/
+SELECT t.createdAt, t.postId
+FROM timeline t
+WHERE t.userId = ?
+ORDER BY t.createdAt DESC, t.postId DESC
+LIMIT 1 OFFSET ?;
+
+/**
+* timeline-trim v1 - Removes the entries older than the oldest kept one
+*/
+DELETE FROM timeline
+WHERE userId = ? AND (createdAt < ? OR (createdAt = ? AND postId < ?));
+
+/**
+* timeline-read-authors v1 - Loads the authors that are read on demand and since when
+* A small table, one row per author with more followers than the fan-out limit
+*/
+SELECT userId, since FROM timeline_read_author;
+
+/**
+* timeline-read-author-insert v1 - Records that an author's new posts are no longer fanned out
+*/
+INSERT IGNORE INTO timeline_read_author (userId, since) VALUES (?, ?);
+
+/**
+* timeline-read-author-delete v1 - Records that an author's new posts are fanned out again
+*/
+DELETE FROM timeline_read_author WHERE userId = ?;
+
+/**
+* timeline-author-backfill v1 - Pushes the posts an author made while read on demand to the followers' timelines
+* Run when the author drops back under the fan-out limit. Only the most recent posts are copied,
+* older ones would be trimmed right away
+*/
+INSERT IGNORE INTO timeline (userId, postId, authorUserId, createdAt)
+SELECT f.followerUserId, p.postId, p.userId, p.createdAt
+FROM (SELECT p2.postId, p2.userId, p2.createdAt
+    FROM post p2
+    WHERE p2.userId = ? AND p2.createdAt >= ?
+    ORDER BY p2.createdAt DESC, p2.postId DESC
+    LIMIT ?) p
+JOIN follow f ON f.followeeUserId = p.userId;
+
+/*
+* HASHTAG ENDPOINTS
+*/
+
+/**
+* hashtag-insert v1 - Create hashtag endpoint
+* This is used to put hashtags from a post into their own table
+* Tags are deduplicated and normalized, then sent as one JDBC batch that the driver
+* rewrites into a single multi row insert (rewriteBatchedStatements=true)
+* Used on home page: http://localhost:8080/
+*/
+INSERT INTO hashtag (hashTag, postId) VALUES (?, ?);
+
+/**
+* hashtag-index-load v1 - Loads the in memory hashtag index at startup
+* Hashtag search intersects the posting lists of the index instead of aggregating in SQL
+* See HashtagIndexService.java
+*/
+SELECT hashTag, postId FROM hashtag ORDER BY postId;
+
+/**
+* posts-by-ids v1 - Hydrates one page of posts whose ids are already known
+* Used for the hashtag search result page after the posting lists are intersected
+* Used on: http://localhost:8080/hashtagsearch?hashtags=%23[hashTag]&before=[postId]
+*/
+SELECT p.postId, p.userId, p.postText, p.postDate, p.createdAt,
+    COALESCE(ps.heartsCount, 0) AS heartsCount,
+    COALESCE(ps.commentsCount, 0) AS commentsCount
+FROM post p
+LEFT JOIN post_stats ps ON ps.postId = p.postId
+WHERE p.postId IN ({?});
+
+/*
+* VIEWER STATE
+*/
+
+/**
+* viewer-marks v1 - Loads the ids of all posts a user hearted and bookmarked
+* Cached per user as sorted int arrays. Post queries no longer carry per row EXISTS probes
+* for isHearted and isBookmarked; the flags of a whole page come from this cache
+* Uses the heart_user and bookmark_user indexes
+* See ViewerStateService.java
+*/
+SELECT postId, 1 AS kind FROM heart WHERE userId = ?
+UNION ALL
+SELECT postId, 2 AS kind FROM bookmark WHERE userId = ?;
+
+/*
+* USER CACHE
+*/
+
+/**
+* user-cache-load v1 - Loads the authors missing from the shared user cache in one query
+* Post and comment queries select only the author's userId. The authors of a whole page
+* are resolved through UserCache and only cache misses reach the database
+* See UserCache.java
+*/
+SELECT userId, firstName, lastName FROM user WHERE userId IN ({?});
+
+/*
+* FOLLOW ENDPOINTS
+*/
+
+/**
+* follow-insert v1 - Used to follow another user
+* Activates once the follow button is clicked
+* Used on people page: http://localhost:8080/people
+*/
+INSERT INTO follow (followerUserId, followeeUserId) VALUES (?, ?);
+
+/**
+* follow-delete v1 - Used to unfollow another user
+* Activates once the follow button is clicked
+* Used on people page: http://localhost:8080/people
+*/
+DELETE FROM follow WHERE followerUserId = ? AND followeeUserId = ?;
+
+/**
+* timeline-backfill v1 - Copies the recent posts of a followed user into the follower's timeline
+* Activates after a follow
+* Used on people page: http://localhost:8080/people
+*/
+INSERT IGNORE INTO timeline (userId, postId, authorUserId, createdAt)
+SELECT ?, p.postId, p.userId, p.createdAt
+FROM post p
+WHERE p.userId = ?
+ORDER BY p.createdAt DESC, p.postId DESC
+LIMIT ?;
+
+/**
+* timeline-prune v1 - Removes the posts of an unfollowed user from the follower's timeline
+* Activates after an unfollow
+* Used on people page: http://localhost:8080/people
+*/
+DELETE FROM timeline WHERE userId = ? AND authorUserId = ?;
+
+/*
+* POST ENDPOINTS
+*/
+
+/**
+* post-detail v1 - Used in getting data for displaying an expanded post
+* Activates as a user selects a post
+* Used on http://localhost:8080/post/[postId]
+*/
+SELECT p.postId, p.userId, p.postDate, p.postText, p.createdAt,
+    COALESCE(ps.heartsCount, 0) AS heartsCount,
+    COALESCE(ps.commentsCount, 0) AS commentsCount
+FROM post p
+LEFT JOIN post_stats ps ON ps.postId = p.postId
+WHERE p.postId = ?;
+
+/**
+* comment-list v1 - Used in getting one page of comments for displaying an expanded post
+* Activates as a user selects a post or follows its "More comments" link
+* Runs at the same time as post-detail, on a connection of its own
+* Keyset paged on the comment_post_date index: returns the comments strictly after
+* the cursor's (commentDate, commentId), one more than the page size to tell
+* whether there is a next page. The index range starts at the cursor and is read
+* in order, so a page reads page size + 1 rows however long the thread is
+* Used on http://localhost:8080/post/[postId] and http://localhost:8080/post/[postId]?comments=[cursor]
+*/
+SELECT c.commentId, c.commentText, c.commentDate, c.userId
+FROM comment c
+WHERE c.postId = ?
+    AND c.commentDate >= ? AND (c.commentDate > ? OR c.commentId > ?)
+ORDER BY c.postId, c.commentDate, c.commentId
+LIMIT ?;
+
+/**
+* comment-insert v1 - Adds a comment to a post
+* Runs in one transaction with post-stats-adjust-comments and touch-last-active
+* Used on http://localhost:8080/post/[postId]/comment
+*/
+INSERT INTO comment (postId, userId, commentDate, commentText) VALUES (?, ?, ?, ?);
+
+/**
+* heart-insert-rows v1 - Writes the queued likes of all users in one statement
+* Heart and bookmark toggles are queued in memory by ToggleWriteBehindService and
+* flushed every second, one transaction per flush. Repeated toggles of the same post
+* by the same user are coalesced, only the last state is written
+* The statement holds one (?, ?) pair per row, up to microblog.toggles.batch-size
+* Used on http://localhost:8080/post/[postId]/heart/[isAdd]
+*/
+INSERT IGNORE INTO heart (postId, userId) VALUES {(?, ?)};
+
+/**
+* bookmark-insert-rows v1 - Writes the queued bookmarks of all users in one statement
+* Same as heart-insert-rows
+* Used on http://localhost:8080/post/[postId]/bookmark/[isAdd]
+*/
+INSERT IGNORE INTO bookmark (postId, userId) VALUES {(?, ?)};
+
+/**
+* heart-delete-rows v2 - Removes the queued unlikes in one statement
+* Runs in the same flush transaction as heart-insert-rows
+* The postIds come first and then the (postId, userId) pairs. postId IN reads a range of the
+* primary key on every database, H2 does not use an index for the row comparison alone
+*/
+DELETE FROM heart WHERE postId IN ({?}) AND (postId, userId) IN ({(?, ?)});
+
+/**
+* bookmark-delete-rows v2 - Removes the queued unbookmarks in one statement
+* Same as heart-delete-rows
+*/
+DELETE FROM bookmark WHERE postId IN ({?}) AND (postId, userId) IN ({(?, ?)});
+
+/**
+* post-stats-adjust-hearts v2 - Adds the net heart change of a flush to the hearts counters of posts
+* Runs in the same flush transaction as, and after, the heart inserts and deletes. One statement
+* per distinct change, with the posts that changed by it. Like post-stats-adjust-comments, a post
+* without a stats row gets one with its counts, which already include the flush, and posts that
+* do not exist drop out. Exact counts are left to the reconciliation, see post-stats-drifted-range
+*/
+INSERT INTO post_stats (postId, heartsCount, commentsCount)
+SELECT p.postId,
+    (SELECT COUNT(*) FROM heart h WHERE h.postId = p.postId),
+    (SELECT COUNT(*) FROM comment c WHERE c.postId = p.postId)
+FROM post p
+WHERE p.postId IN ({?})
+ON DUPLICATE KEY UPDATE heartsCount = GREATEST(heartsCount + ?, 0);
+
+/**
+* post-exists v1 - Tells whether a post exists before a heart or bookmark toggle of it is queued
+* Used on http://localhost:8080/post/[postId]/heart/[isAdd] and /post/[postId]/bookmark/[isAdd]
+*/
+SELECT 1 FROM post WHERE postId = ?;
+
+/**
+* heart-count v1 - Reads the hearts counter of one post for the JSON heart endpoint
+* Pending toggles of the write-behind queue are added on top
+* Used on POST http://localhost:8080/post/[postId]/heart/[isAdd]
+*/
+SELECT heartsCount FROM post_stats WHERE postId = ?;
+
+/**
+* post-stats-adjust-comments v1 - Keeps the materialized comments counter of a post current
+* Runs in the same transaction as the comment insert
+* Used on http://localhost:8080/post/[postId]/comment
+*/
+INSERT INTO post_stats (postId, heartsCount, commentsCount)
+SELECT ?,
+    (SELECT COUNT(*) FROM heart h WHERE h.postId = ?),
+    (SELECT COUNT(*) FROM comment c WHERE c.postId = ?)
+ON DUPLICATE KEY UPDATE commentsCount = GREATEST(commentsCount + ?, 0);
+
+/**
+* post-stats-max-post-id v1 - Finds the end of the range the reconciliation walks
+*/
+SELECT COALESCE(MAX(postId), 0) FROM post;
+
+/**
+* post-stats-drifted-range v1 - Finds the posts of a range whose counters differ from the counts
+* Posts without a stats row count as drifted. Run at startup and periodically by PostStatsService,
+* which rewrites only these posts, so pages of posts whose counters were right stay cached
+*/
+SELECT p.postId
+FROM post p
+LEFT JOIN post_stats s ON s.postId = p.postId
+WHERE p.postId > ? AND p.postId <= ?
+    AND (s.postId IS NULL
+        OR s.heartsCount <> (SELECT COUNT(*) FROM heart h WHERE h.postId = p.postId)
+        OR s.commentsCount <> (SELECT COUNT(*) FROM comment c WHERE c.postId = p.postId));
+
+/**
+* post-stats-reconcile-posts v1 - Rebuilds the counters of the posts found by post-stats-drifted-range
+*/
+INSERT INTO post_stats (postId, heartsCount, commentsCount)
+SELECT p.postId,
+    (SELECT COUNT(*) FROM heart h WHERE h.postId = p.postId),
+    (SELECT COUNT(*) FROM comment c WHERE c.postId = p.postId)
+FROM post p
+WHERE p.postId IN ({?})
+ON DUPLICATE KEY UPDATE heartsCount = VALUES(heartsCount),
+    commentsCount = VALUES(commentsCount);
+
+/*
+* USER ENDPOINTS
+*/
+
+/**
+* login v1 - Reads the password hash of a user at login
+* Used on http://localhost:8080/login
+*/
+SELECT userId, password FROM user WHERE username = ?;
+
+/**
+* password-rehash v1 - Replaces a password hash made with an older cost factor after a login
+* Only replaces the hash the login was checked against
+*/
+UPDATE user SET password = ? WHERE userId = ? AND password = ?;
+
+/**
+* register v1 - Registers a new user
+* Used on http://localhost:8080/register
+*/
+INSERT INTO user (username, password, firstName, lastName) VALUES (?, ?, ?, ?);
+
+/**
+* bookmark-list v1 - Used tto retreive bookmarked posts from DB
+* Used to display the bookamrks on the bookmark page
+* Used on http://localhost:8080/bookmarks
+*/
+SELECT p.postId, p.userId, p.postDate, p.postText, p.createdAt,
+    COALESCE(ps.heartsCount, 0) AS heartsCount,
+    COALESCE(ps.commentsCount, 0) AS commentsCount
+FROM bookmark b
+JOIN post p ON b.postId = p.postId
+LEFT JOIN post_stats ps ON ps.postId = p.postId
+WHERE b.userId = ?
+ORDER BY p.createdAt DESC, p.postId DESC;
+
+/**
+* profile-posts v1 - Gets the posts of one user, newest first
+* Used on http://localhost:8080/profile/[userId]
+*/
+SELECT p.postId, p.userId, p.postDate, p.postText, p.createdAt,
+    COALESCE(ps.heartsCount, 0) AS heartsCount,
+    COALESCE(ps.commentsCount, 0) AS commentsCount
+FROM post p
+LEFT JOIN post_stats ps ON ps.postId = p.postId
+WHERE p.userId = ?
+ORDER BY p.createdAt DESC, p.postId DESC;
+
+/*
+* PEOPLE ENDPOINTS
+*/
+
+/**
+* people-list v2 - Finds one page of the users that are not the current user
+* Most recently active first, keyset paginated on (lastActiveAt, userId) over the user_last_active index.
+* The cursor is lastActiveAt <= ? AND (lastActiveAt < ? OR userId < ?), the same rows as
+* (lastActiveAt, userId) < (?, ?), written so the index range starts at the cursor instead of a scan.
+* Reads limit + 1 rows to detect a next page
+* Used on http://localhost:8080/people?cursor=[cursor]
+*/
+SELECT u.userId, u.firstName, u.lastName, u.lastActiveAt
+FROM `user` u
+WHERE u.userId != ?
+    AND u.lastActiveAt <= ? AND (u.lastActiveAt < ? OR u.userId < ?)
+ORDER BY u.lastActiveAt DESC, u.userId DESC
+LIMIT ?;
+
+/**
+* people-search v2 - people-list limited to the users whose first or last name starts with a prefix
+* The patterns are 'prefix%' with the LIKE wildcards of the prefix escaped
+* Used on http://localhost:8080/people?q=[namePrefix]&cursor=[cursor]
+*/
+SELECT u.userId, u.firstName, u.lastName, u.lastActiveAt
+FROM `user` u
+WHERE u.userId != ?
+    AND u.lastActiveAt <= ? AND (u.lastActiveAt < ? OR u.userId < ?)
+    AND (u.firstName LIKE ? OR u.lastName LIKE ?)
+ORDER BY u.lastActiveAt DESC, u.userId DESC
+LIMIT ?;
+
+/**
+* people-suggestions v1 - The "who to follow" suggestions of the current user, best first
+* One range read on the follow_suggestion primary key, run at the same time as people-list
+* Used on the first page of http://localhost:8080/people
+*/
+SELECT u.userId, u.firstName, u.lastName, u.lastActiveAt
+FROM follow_suggestion s
+JOIN `user` u ON u.userId = s.suggestedUserId
+WHERE s.userId = ?
+ORDER BY s.position
+LIMIT ?;
+
+/**
+* touch-last-active v1 - Records the latest post or comment time of a user
+* Runs in the transaction of the post or comment insert
+* Used on http://localhost:8080/createpost and http://localhost:8080/post/[postId]/comment
+*/
+UPDATE user SET lastActiveAt = GREATEST(lastActiveAt, ?) WHERE userId = ?;
+
+/*
+* FOLLOW GRAPH AND SUGGESTIONS
+*/
+
+/**
+* follow-graph-load v1 - Reads every follow edge into FollowGraphService at startup
+* Follow state on the people page, the followers of a new post's author and the followed fan-out
+* on read authors of the home feed are then answered from memory
+* Rows are streamed, see HashtagIndexService
+*/
+SELECT followerUserId, followeeUserId FROM follow;
+
+/**
+* follow-suggestions-activity v1 - Reads the last activity of every user for the suggestion ranking
+* Rows are streamed, see HashtagIndexService
+*/
+SELECT userId, lastActiveAt FROM `user`;
+
+/**
+* follow-suggestions-delete v1 - Removes the suggestions of a batch of users before they are replaced
+* The suggestions are ranked friends of friends, computed from FollowGraphService on a fork/join pool
+* Run for every user at startup and daily, and every 10 minutes for users whose follows changed
+*/
+DELETE FROM follow_suggestion WHERE userId IN ({?});
+
+/**
+* follow-suggestions-insert v1 - Writes the new suggestions of the batch
+* Sent as one JDBC batch in the transaction of follow-suggestions-delete
+*/
+INSERT INTO follow_suggestion (userId, position, suggestedUserId) VALUES (?, ?, ?);
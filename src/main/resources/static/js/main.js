@@ -20,4 +20,49 @@ document.addEventListener('DOMContentLoaded', function () {
             }
         });
     }
+
+    // Heart, bookmark and follow forms post to the JSON version of their
+    // URL and update the page in place. If that fails the form is
+    // submitted the old way, which shows the error message.
+    document.addEventListener('submit', function (e) {
+        var form = e.target;
+        if (!form.classList.contains('toggle')) {
+            return;
+        }
+        e.preventDefault();
+        var button = form.querySelector('button');
+        if (button.disabled) {
+            return; // A toggle of this button is still in flight.
+        }
+        button.disabled = true;
+        fetch(form.action, { method: 'POST', headers: { 'Accept': 'application/json' } })
+            .then(function (response) {
+                // A redirect means the session ran out and the login page came back.
+                if (!response.ok || response.redirected) {
+                    throw new Error('Toggle failed with status ' + response.status);
+                }
+                return response.json();
+            })
+            .then(function (state) {
+                button.disabled = false;
+                updateToggle(form, button, state);
+            })
+            .catch(function (error) {
+                console.log(error);
+                form.submit();
+            });
+    });
 });
+
+// Shows the state returned by a toggle endpoint.
+function updateToggle(form, button, state) {
+    // The next click undoes this one.
+    form.action = form.action.replace(/(true|false)$/, String(!state.active));
+    button.className = state.active ? form.dataset.activeClass : form.dataset.inactiveClass;
+    if (state.count !== undefined) {
+        var count = form.parentElement.querySelector('.hearts-count');
+        if (count) {
+            count.textContent = state.count;
+        }
+    }
+}